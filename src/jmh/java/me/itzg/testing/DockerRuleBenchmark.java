@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of {@link DockerRule} itself by running it against a {@link FakeDockerDaemon}
+ * that responds without latency unless configured otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DockerRuleBenchmark {
+    private static final Statement NO_OP = new Statement() {
+        @Override
+        public void evaluate() throws Throwable {
+        }
+    };
+
+    /**
+     * The number of log lines written before the line that {@link #lifecycleWaitingForLog()} waits for.
+     */
+    @Param({"10", "10000"})
+    public int logLinesBeforeReady;
+
+    /**
+     * The latency of every fake Docker API call.
+     */
+    @Param({"0"})
+    public long apiLatency;
+
+    private FakeDockerDaemon daemon;
+    private DockerRule startedRule;
+    private DockerRule.Evaluation startedEvaluation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        final String[] lines = new String[logLinesBeforeReady + 1];
+        for (int i = 0; i < logLinesBeforeReady; ++i) {
+            lines[i] = "INFO [main] initializing component " + i;
+        }
+        lines[logLinesBeforeReady] = "INFO [main] ready to accept connections";
+
+        daemon = new FakeDockerDaemon()
+                .logLines(lines)
+                .exposedPorts(5432, 8080, 9200);
+        for (FakeDockerDaemon.Operation operation : FakeDockerDaemon.Operation.values()) {
+            daemon.latency(operation, apiLatency);
+        }
+        daemon.start();
+
+        startedRule = newRule();
+        startedEvaluation = startedRule.connect(null);
+        startedRule.start(startedEvaluation, true);
+        // the benchmark threads read the only active evaluation
+        startedRule.bind(startedEvaluation);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        startedRule.stop(startedEvaluation);
+        daemon.stop();
+    }
+
+    @Benchmark
+    public void lifecycle() throws Throwable {
+        newRule().apply(NO_OP, Description.EMPTY).evaluate();
+    }
+
+    @Benchmark
+    public void lifecycleWaitingForLog() throws Throwable {
+        newRule().waitForLog("ready to accept connections")
+                .apply(NO_OP, Description.EMPTY).evaluate();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public InetSocketAddress getAccessToPort() throws Exception {
+        return startedRule.getAccessToPort(8080);
+    }
+
+    private DockerRule newRule() {
+        return new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .pullPolicy(PullPolicy.IF_NOT_PRESENT);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly a {@link LogCondition} scans container log output that does not satisfy it.
+ * The score is the time to scan 1 MiB of log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogMatcherBenchmark {
+    private static final int LOG_SIZE = 1024 * 1024;
+    private static final int FRAME_SIZE = 4096;
+
+    @Param({"contains", "allOf", "regex"})
+    public String condition;
+
+    private LogCondition logCondition;
+    private ByteBuffer[] frames;
+
+    @Setup
+    public void setUp() {
+        switch (condition) {
+            case "allOf":
+                logCondition = LogCondition.allOf("started", "listening on port", "ready to accept connections");
+                break;
+            case "regex":
+                logCondition = LogCondition.matches("ready to accept connections on port \\d+");
+                break;
+            case "contains":
+            default:
+                logCondition = LogCondition.contains("ready to accept connections");
+                break;
+        }
+
+        final StringBuilder log = new StringBuilder(LOG_SIZE + 100);
+        for (int i = 0; log.length() < LOG_SIZE; ++i) {
+            log.append("2017-01-01 00:00:00.000 INFO [main] o.e.s.Component - initializing component ")
+                    .append(i).append('\n');
+        }
+        final byte[] bytes = log.substring(0, LOG_SIZE).getBytes(StandardCharsets.UTF_8);
+
+        frames = new ByteBuffer[LOG_SIZE / FRAME_SIZE];
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = ByteBuffer.wrap(bytes, i * FRAME_SIZE, FRAME_SIZE).slice();
+        }
+    }
+
+    @Benchmark
+    public boolean scan() {
+        final LogMatcher matcher = logCondition.newMatcher();
+        boolean satisfied = false;
+        for (ByteBuffer frame : frames) {
+            satisfied |= matcher.feed(frame);
+        }
+        return satisfied;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admits container starts against a budget of host memory and CPUs, so that enabling parallel test execution
+ * does not start more large containers at once than the host can run without swapping. Starts are admitted in
+ * the order requested, so a large container is not starved by a stream of smaller ones, and a container that
+ * needs more than the whole budget is admitted once nothing else holds any of it.
+ *
+ * <p>The budget applies to every {@link DockerRule} in the JVM and is shared with the other JVMs on the host that
+ * use the same <code>dockerRule.shareDir</code>, such as forked test runs, through a {@link HostBudget}. It is
+ * configured by the <code>dockerRule.budget.memory</code> system property, in bytes or with a <code>k</code>,
+ * <code>m</code>, or <code>g</code> suffix, such as <code>1.5g</code>, and the <code>dockerRule.budget.cpus</code>
+ * system property. The JVMs sharing a host should be given the same budget. Starts wait up to the
+ * <code>dockerRule.budget.timeout</code> system property in milliseconds, which defaults to 10 minutes.</p>
+ *
+ * @since 1.4
+ */
+class AdmissionControl {
+    static final String MEMORY_PROPERTY = "dockerRule.budget.memory";
+    static final String CPUS_PROPERTY = "dockerRule.budget.cpus";
+    static final String TIMEOUT_PROPERTY = "dockerRule.budget.timeout";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private static final AdmissionControl GLOBAL = createGlobal(System.getProperty(MEMORY_PROPERTY),
+            System.getProperty(CPUS_PROPERTY), Long.getLong(TIMEOUT_PROPERTY, TimeUnit.MINUTES.toMillis(10)));
+
+    private final long memoryBudget;
+    private final double cpuBudget;
+    private final long timeoutMillis;
+    private final HostBudget hostBudget;
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private long memoryInUse;
+    private double cpusInUse;
+
+    /**
+     * Holds part of the budget until released.
+     */
+    final class Permit {
+        private final long memory;
+        private final double cpus;
+        private boolean released;
+
+        private Permit(long memory, double cpus) {
+            this.memory = memory;
+            this.cpus = cpus;
+        }
+
+        /**
+         * Returns the held part of the budget, if not already returned.
+         */
+        void release() {
+            synchronized (AdmissionControl.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                memoryInUse -= memory;
+                cpusInUse -= cpus;
+                publish();
+                AdmissionControl.this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @param memoryBudget the bytes of memory that admitted containers may use in total, or 0 for no limit
+     * @param cpuBudget the CPUs that admitted containers may use in total, or 0 for no limit
+     * @param timeoutMillis the time to wait for admission
+     */
+    AdmissionControl(long memoryBudget, double cpuBudget, long timeoutMillis) {
+        this(memoryBudget, cpuBudget, timeoutMillis, null);
+    }
+
+    /**
+     * @param hostBudget shares the budget with other JVMs or null to apply it to this JVM alone
+     */
+    AdmissionControl(long memoryBudget, double cpuBudget, long timeoutMillis, HostBudget hostBudget) {
+        this.memoryBudget = memoryBudget;
+        this.cpuBudget = cpuBudget;
+        this.timeoutMillis = timeoutMillis;
+        this.hostBudget = hostBudget;
+    }
+
+    /**
+     * @return the admission control configured by system properties or null if no budget is configured
+     */
+    static AdmissionControl global() {
+        return GLOBAL;
+    }
+
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Waits until the given resources are available and it is the turn of this request.
+     * @param memory the bytes of memory expected to be used
+     * @param cpus the CPUs expected to be used
+     * @return the permit to release once the resources are no longer used or null if not admitted within the timeout
+     */
+    synchronized Permit acquire(long memory, double cpus) throws InterruptedException {
+        final long admittedMemory = memoryBudget > 0 ? Math.min(memory, memoryBudget) : 0;
+        final double admittedCpus = cpuBudget > 0 ? Math.min(cpus, cpuBudget) : 0;
+        final Object ticket = new Object();
+        queue.addLast(ticket);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (queue.peekFirst() != ticket || !fits(admittedMemory, admittedCpus)
+                    || !fitsHost(admittedMemory, admittedCpus)) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                // other JVMs do not notify this one when they release their part of the budget
+                TimeUnit.NANOSECONDS.timedWait(this, hostBudget != null ?
+                        Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(HostBudget.POLL_INTERVAL)) : remaining);
+            }
+            memoryInUse += admittedMemory;
+            cpusInUse += admittedCpus;
+            return new Permit(admittedMemory, admittedCpus);
+        } finally {
+            queue.remove(ticket);
+            // the next request may now be at the head of the queue
+            notifyAll();
+        }
+    }
+
+    private boolean fits(long memory, double cpus) {
+        return (memoryBudget <= 0 || memoryInUse + memory <= memoryBudget)
+                && (cpuBudget <= 0 || cpusInUse + cpus <= cpuBudget + 1e-9);
+    }
+
+    /**
+     * Checks the other JVMs' use of the budget and, if the request fits, publishes this JVM's use including it.
+     * When the budget cannot be shared, the request is admitted against this JVM's use alone.
+     */
+    private boolean fitsHost(long memory, double cpus) throws InterruptedException {
+        if (hostBudget == null) {
+            return true;
+        }
+        try {
+            return hostBudget.admit(memoryInUse + memory, cpusInUse + cpus, memoryBudget, cpuBudget);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to share the budget with other JVMs, admitting against this JVM's use alone", e);
+            return true;
+        }
+    }
+
+    private void publish() {
+        if (hostBudget == null) {
+            return;
+        }
+        try {
+            hostBudget.publish(memoryInUse, cpusInUse);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to share the budget with other JVMs", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "memory %d of %d bytes and %.2f of %.2f CPUs in use, %d waiting",
+                memoryInUse, memoryBudget, cpusInUse, cpuBudget, queue.size());
+    }
+
+    static AdmissionControl createGlobal(String memory, String cpus, long timeoutMillis) {
+        final long memoryBudget = memory != null && !memory.isEmpty() ? parseBytes(memory) : 0;
+        final double cpuBudget = cpus != null && !cpus.isEmpty() ? Double.parseDouble(cpus) : 0;
+        if (memoryBudget <= 0 && cpuBudget <= 0) {
+            return null;
+        }
+        LOGGER.info("Admitting containers within a budget of {} bytes of memory and {} CPUs",
+                memoryBudget, cpuBudget);
+        return new AdmissionControl(memoryBudget, cpuBudget, timeoutMillis,
+                new HostBudget(CrossJvmContainers.SHARE_DIR.resolve("budget")));
+    }
+
+    /**
+     * @param value a number of bytes, optionally followed by a <code>k</code>, <code>m</code>, or <code>g</code>
+     *              suffix, ignoring case. The number may have a fraction, such as <code>1.5g</code>.
+     */
+    static long parseBytes(String value) {
+        final String trimmed = value.trim().toLowerCase(Locale.ROOT);
+        final char suffix = trimmed.charAt(trimmed.length() - 1);
+        final int shift = suffix == 'k' ? 10 : suffix == 'm' ? 20 : suffix == 'g' ? 30 : 0;
+        final String number = (shift > 0 ? trimmed.substring(0, trimmed.length() - 1) : trimmed).trim();
+        if (number.indexOf('.') < 0) {
+            return Long.parseLong(number) << shift;
+        }
+        return new BigDecimal(number).multiply(BigDecimal.valueOf(1L << shift)).longValue();
+    }
+}
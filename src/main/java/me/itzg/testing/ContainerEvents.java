@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.spotify.docker.client.DockerClient.EventsParam.label;
+import static com.spotify.docker.client.DockerClient.EventsParam.since;
+import static com.spotify.docker.client.DockerClient.EventsParam.type;
+
+/**
+ * A single subscription per Docker endpoint to the events of the containers created by this library, which
+ * are fanned out to a {@link Tracker} per container. This lets rules wait on health status changes without polling
+ * and notice when their container exits.
+ *
+ * <p>If the daemon's events can't be subscribed to, {@link #track(DockerEndpoint, DockerClient, String)}
+ * returns null and callers fall back to inspecting the container.</p>
+ *
+ * @since 1.4
+ */
+class ContainerEvents {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContainerEvents.class);
+
+    private static final long RECONNECT_DELAY = 1000;
+
+    private static final ConcurrentMap<DockerEndpoint, ContainerEvents> SUBSCRIPTIONS = new ConcurrentHashMap<>();
+
+    private final DockerEndpoint endpoint;
+    private final DockerClient dockerClient;
+    private final ConcurrentMap<String, List<Tracker>> trackers = new ConcurrentHashMap<>();
+    private volatile boolean available;
+    private boolean unavailable;
+    private volatile long lastEventSeconds;
+
+    /**
+     * The state of one container as reported by its events.
+     */
+    class Tracker {
+        private final String containerId;
+        private final List<Runnable> exitListeners = new CopyOnWriteArrayList<>();
+        private String health;
+        private boolean exited;
+        private Integer exitCode;
+        private boolean oomKilled;
+
+        private Tracker(String containerId) {
+            this.containerId = containerId;
+        }
+
+        /**
+         * @return the most recently reported health status, such as <code>healthy</code>, or null if none yet
+         */
+        synchronized String health() {
+            return health;
+        }
+
+        synchronized boolean hasExited() {
+            return exited;
+        }
+
+        synchronized ContainerExitedException exitedException() {
+            return new ContainerExitedException(containerId, exitCode, oomKilled);
+        }
+
+        /**
+         * @return true once the health status is <code>healthy</code> or false if the deadline passed first
+         * @throws ContainerExitedException if the container exits first
+         */
+        synchronized boolean awaitHealthy(long deadlineNanos) throws InterruptedException, ContainerExitedException {
+            while (!"healthy".equals(health)) {
+                if (exited) {
+                    throw exitedException();
+                }
+                final long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        /**
+         * @param listener invoked on the event thread when the container exits
+         */
+        void addExitListener(Runnable listener) {
+            exitListeners.add(listener);
+        }
+
+        void removeExitListener(Runnable listener) {
+            exitListeners.remove(listener);
+        }
+
+        /**
+         * Stops tracking the container.
+         */
+        void close() {
+            trackers.computeIfPresent(containerId, (id, forContainer) -> {
+                forContainer.remove(this);
+                return forContainer.isEmpty() ? null : forContainer;
+            });
+        }
+
+        private void accept(String action, Map<String, String> attributes) {
+            synchronized (this) {
+                if (action.startsWith("health_status:")) {
+                    health = action.substring("health_status:".length()).trim();
+                } else if (action.equals("oom")) {
+                    oomKilled = true;
+                } else if (action.equals("die")) {
+                    exited = true;
+                    final String code = attributes != null ? attributes.get("exitCode") : null;
+                    if (code != null) {
+                        try {
+                            exitCode = Integer.valueOf(code);
+                        } catch (NumberFormatException e) {
+                            LOGGER.debug("Invalid exit code {} of container {}", code, containerId);
+                        }
+                    }
+                } else {
+                    return;
+                }
+                notifyAll();
+            }
+
+            if (action.equals("die")) {
+                for (Runnable listener : exitListeners) {
+                    listener.run();
+                }
+            }
+        }
+    }
+
+    private ContainerEvents(DockerEndpoint endpoint, DockerClient dockerClient) {
+        this.endpoint = endpoint;
+        this.dockerClient = dockerClient;
+    }
+
+    /**
+     * Starts tracking the given container. Should be called before the container is started so that
+     * no events are missed.
+     * @return the tracker, which must be closed when no longer needed, or null if events are not available
+     */
+    static Tracker track(DockerEndpoint endpoint, DockerClient dockerClient, String containerId)
+            throws InterruptedException {
+        final ContainerEvents events = SUBSCRIPTIONS.computeIfAbsent(endpoint,
+                key -> new ContainerEvents(key, dockerClient));
+        if (!events.subscribe()) {
+            return null;
+        }
+
+        final Tracker tracker = events.new Tracker(containerId);
+        events.trackers.compute(containerId, (id, forContainer) -> {
+            final List<Tracker> result = forContainer != null ? forContainer : new CopyOnWriteArrayList<>();
+            result.add(tracker);
+            return result;
+        });
+        return tracker;
+    }
+
+    /**
+     * @return true if subscribed, now or earlier
+     */
+    private synchronized boolean subscribe() throws InterruptedException {
+        if (available) {
+            return true;
+        }
+        if (unavailable) {
+            // subscribing failed before, so don't keep trying
+            return false;
+        }
+
+        final EventStream eventStream;
+        try {
+            eventStream = open();
+        } catch (DockerException | RuntimeException e) {
+            LOGGER.debug("Docker events of {} are not available", endpoint, e);
+            unavailable = true;
+            return false;
+        }
+
+        available = true;
+        final Thread reader = new Thread(() -> read(eventStream), "docker-rule-events");
+        reader.setDaemon(true);
+        reader.start();
+        return true;
+    }
+
+    private EventStream open() throws DockerException, InterruptedException {
+        if (lastEventSeconds > 0) {
+            return dockerClient.events(type(Event.Type.CONTAINER), label(ContainerLabels.LIBRARY),
+                    since(lastEventSeconds));
+        }
+        return dockerClient.events(type(Event.Type.CONTAINER), label(ContainerLabels.LIBRARY));
+    }
+
+    private void read(EventStream initial) {
+        EventStream eventStream = initial;
+        while (true) {
+            try {
+                while (eventStream.hasNext()) {
+                    dispatch(eventStream.next());
+                }
+                LOGGER.debug("Docker events of {} ended, reconnecting", endpoint);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed reading Docker events of {}, reconnecting", endpoint, e);
+            }
+
+            eventStream = null;
+            while (eventStream == null) {
+                try {
+                    Thread.sleep(RECONNECT_DELAY);
+                    eventStream = open();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (DockerException | RuntimeException e) {
+                    LOGGER.debug("Failed to resubscribe to Docker events of {}", endpoint, e);
+                }
+            }
+        }
+    }
+
+    private void dispatch(Event event) {
+        if (event.time() != null) {
+            lastEventSeconds = TimeUnit.MILLISECONDS.toSeconds(event.time().getTime());
+        }
+
+        final String containerId = event.actor() != null ? event.actor().id() : event.id();
+        final String action = event.action() != null ? event.action() : event.status();
+        if (containerId == null || action == null) {
+            return;
+        }
+
+        final List<Tracker> forContainer = trackers.get(containerId);
+        if (forContainer != null) {
+            LOGGER.debug("Container {} event {}", containerId, action);
+            for (Tracker tracker : forContainer) {
+                tracker.accept(action, event.actor() != null ? event.actor().attributes() : null);
+            }
+        }
+    }
+}
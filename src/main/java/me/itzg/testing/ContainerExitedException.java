@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.exceptions.DockerException;
+
+/**
+ * Indicates that a container exited, or was killed for running out of memory, while it was expected to be running.
+ *
+ * @since 1.4
+ */
+public class ContainerExitedException extends DockerException {
+    private final String containerId;
+    private final Integer exitCode;
+    private final boolean oomKilled;
+
+    ContainerExitedException(String containerId, Integer exitCode, boolean oomKilled) {
+        super(describe(containerId, exitCode, oomKilled));
+        this.containerId = containerId;
+        this.exitCode = exitCode;
+        this.oomKilled = oomKilled;
+    }
+
+    public String getContainerId() {
+        return containerId;
+    }
+
+    /**
+     * @return the exit code of the container or null if not known
+     */
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public boolean isOomKilled() {
+        return oomKilled;
+    }
+
+    static String describe(String containerId, Integer exitCode, boolean oomKilled) {
+        return "Container " + containerId
+                + (exitCode != null ? " exited with code " + exitCode : " exited")
+                + (oomKilled ? " after running out of memory" : "");
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+/**
+ * Performs one-time initialization of a container once it is ready, such as installing plugins,
+ * applying schema migrations, or creating index templates.
+ * See {@link DockerRule#initializeWith(ContainerInitializer)}.
+ *
+ * @since 1.4
+ */
+public interface ContainerInitializer {
+
+    /**
+     * @param rule the rule of the ready container, which can be used to access its ports,
+     *             container ID, and Docker client
+     * @throws Exception if initialization failed, which fails the rule
+     */
+    void initialize(DockerRule rule) throws Exception;
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The labels applied to every container created by {@link DockerRule}, which allow containers left behind by
+ * crashed or {@link DockerRule#leavingRunning(boolean) leaveRunning} runs to be found by {@link OrphanReaper}.
+ *
+ * @since 1.4
+ */
+class ContainerLabels {
+    static final String PREFIX = "me.itzg.junit-rule-docker";
+
+    /**
+     * Marks the container as created by this library.
+     */
+    static final String LIBRARY = PREFIX;
+    /**
+     * Identifies the JVM that created the container.
+     */
+    static final String SESSION = PREFIX + ".session";
+    /**
+     * The epoch milliseconds at which the container was created.
+     */
+    static final String CREATED = PREFIX + ".created";
+    /**
+     * The description of the test, or test class, that created the container.
+     */
+    static final String TEST = PREFIX + ".test";
+
+    /**
+     * Unique to this JVM.
+     */
+    static final String SESSION_ID = UUID.randomUUID().toString();
+
+    private ContainerLabels() {
+    }
+
+    /**
+     * @param description the test description or null if not known
+     * @return the labels for a container created now by this JVM
+     */
+    static Map<String, String> forContainer(String description) {
+        SessionLocks.holdCurrent();
+        final Map<String, String> labels = new HashMap<>();
+        labels.put(LIBRARY, "true");
+        labels.put(SESSION, SESSION_ID);
+        labels.put(CREATED, String.valueOf(System.currentTimeMillis()));
+        if (description != null) {
+            labels.put(TEST, description);
+        }
+        return labels;
+    }
+}
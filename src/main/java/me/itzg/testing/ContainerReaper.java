@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes containers in the background for rules configured with {@link DockerRule#asyncTeardown(boolean)}.
+ * Queued removals are taken in batches and removed concurrently. At JVM shutdown the queue is drained,
+ * waiting up to the <code>dockerRule.reaperShutdownTimeout</code> system property, in milliseconds,
+ * and any containers that could not be removed are reported.
+ *
+ * @since 1.4
+ */
+class ContainerReaper {
+    static final long DEFAULT_SHUTDOWN_TIMEOUT = 30000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContainerReaper.class);
+
+    private static final int PARALLELISM = 4;
+
+    private static final BlockingQueue<Removal> QUEUE = new LinkedBlockingQueue<>();
+    private static final List<String> FAILURES = new ArrayList<>();
+    private static final Object LOCK = new Object();
+    private static int pending;
+
+    private static final ExecutorService REMOVERS = Executors.newFixedThreadPool(PARALLELISM, r -> {
+        final Thread thread = new Thread(r, "docker-rule-reaper-remover");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        final Thread worker = new Thread(ContainerReaper::work, "docker-rule-reaper");
+        worker.setDaemon(true);
+        worker.start();
+
+        ShutdownTasks.register(ShutdownTasks.ORDER_CONTAINERS, "drain container reaper", ContainerReaper::drain);
+    }
+
+    private static class Removal {
+        final DockerClient dockerClient;
+        final String containerId;
+
+        Removal(DockerClient dockerClient, String containerId) {
+            this.dockerClient = dockerClient;
+            this.containerId = containerId;
+        }
+    }
+
+    private ContainerReaper() {
+    }
+
+    /**
+     * Queues the container to be killed and removed, along with its anonymous volumes.
+     */
+    static void remove(DockerClient dockerClient, String containerId) {
+        synchronized (LOCK) {
+            ++pending;
+        }
+        QUEUE.add(new Removal(dockerClient, containerId));
+    }
+
+    private static void work() {
+        final List<Removal> batch = new ArrayList<>();
+        final List<Future<?>> futures = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(QUEUE.take());
+                QUEUE.drainTo(batch);
+                LOGGER.debug("Removing batch of {} containers", batch.size());
+
+                for (Removal removal : batch) {
+                    futures.add(REMOVERS.submit(() -> removeNow(removal)));
+                }
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        LOGGER.warn("Unexpected failure while removing container", e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                synchronized (LOCK) {
+                    pending -= batch.size();
+                    LOCK.notifyAll();
+                }
+                batch.clear();
+                futures.clear();
+            }
+        }
+    }
+
+    private static void removeNow(Removal removal) {
+        try {
+            removal.dockerClient.removeContainer(removal.containerId,
+                    DockerClient.RemoveContainerParam.forceKill(),
+                    DockerClient.RemoveContainerParam.removeVolumes());
+            LOGGER.debug("Removed container {}", removal.containerId);
+        } catch (ContainerNotFoundException e) {
+            LOGGER.debug("Container {} was already removed", removal.containerId);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to remove container {}", removal.containerId, e);
+            synchronized (FAILURES) {
+                FAILURES.add(removal.containerId);
+            }
+        }
+    }
+
+    /**
+     * Waits for queued removals to complete, up to the configured timeout.
+     */
+    static void drain() {
+        final long timeout = Long.getLong("dockerRule.reaperShutdownTimeout", DEFAULT_SHUTDOWN_TIMEOUT);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        synchronized (LOCK) {
+            while (pending > 0) {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    LOCK.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (pending > 0) {
+                final List<String> remaining = new ArrayList<>();
+                for (Removal removal : QUEUE) {
+                    remaining.add(removal.containerId);
+                }
+                LOGGER.warn("Gave up after {} ms waiting to remove {} containers, still queued: {}",
+                        timeout, pending, remaining);
+            }
+        }
+
+        synchronized (FAILURES) {
+            if (!FAILURES.isEmpty()) {
+                LOGGER.warn("Unable to remove containers: {}", FAILURES);
+            }
+        }
+    }
+}
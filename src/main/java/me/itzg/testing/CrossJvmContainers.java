@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.spotify.docker.client.DockerClient.ListContainersParam.withLabel;
+
+/**
+ * Coordinates a shared container between JVMs on the same host, such as forked Surefire test runs.
+ * The JVMs must be given the same <code>dockerRule.sessionId</code> system property, which should be unique to
+ * the build so that unrelated builds on the same host and daemon do not attach to each other's containers. There
+ * is no default, since a JVM cannot tell which build it belongs to.
+ *
+ * <p>For each configuration key, an exclusive lock on a file in the shared directory, given by the
+ * <code>dockerRule.shareDir</code> system property, decides which JVM starts the container. The other JVMs
+ * find the container by its key and session labels. Each JVM holds a lock on its own reference file for as long
+ * as it uses the container, so references of JVMs that crashed are recognized by their lock having been released.
+ * The last JVM to release its reference removes the container. All of the locks are taken through
+ * {@link FileLocks}, so that checking a file never releases this JVM's own lock on it.</p>
+ *
+ * @since 1.4
+ */
+class CrossJvmContainers {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrossJvmContainers.class);
+
+    static final String LABEL_REUSE_KEY = ContainerLabels.PREFIX + ".reuse-key";
+    static final String LABEL_SHARE_SESSION = ContainerLabels.PREFIX + ".share-session";
+
+    static final String SESSION_PROPERTY = "dockerRule.sessionId";
+
+    static final Path SHARE_DIR = Paths.get(System.getProperty("dockerRule.shareDir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "junit-rule-docker").toString()));
+
+    /**
+     * This JVM's reference to a shared container.
+     */
+    static class Lease {
+        private final String session;
+        private final String key;
+        private final String containerId;
+        private final Path referenceFile;
+        private final FileLocks.Lock reference;
+
+        private Lease(String session, String key, String containerId, Path referenceFile,
+                      FileLocks.Lock reference) {
+            this.session = session;
+            this.key = key;
+            this.containerId = containerId;
+            this.referenceFile = referenceFile;
+            this.reference = reference;
+        }
+
+        String containerId() {
+            return containerId;
+        }
+    }
+
+    private CrossJvmContainers() {
+    }
+
+    /**
+     * Attaches to the container started by another JVM for the given key or starts it.
+     * @param starter starts a container labeled with {@link #labelsFor(String)}
+     */
+    static Lease acquire(String key, DockerClient dockerClient, SharedContainers.Starter starter) throws Exception {
+        Files.createDirectories(SHARE_DIR);
+        final String session = sessionId();
+        try (FileLocks.Lock ignored = FileLocks.lock(lockFile(session, key), StandardOpenOption.CREATE)) {
+            pruneDeadReferences(session, key);
+
+            String containerId = findContainer(dockerClient, key);
+            if (containerId != null) {
+                LOGGER.info("Attaching to container {} shared by another JVM", containerId);
+            } else {
+                containerId = starter.start();
+            }
+
+            final Path referenceFile = Files.createDirectories(referencesDir(session, key))
+                    .resolve(UUID.randomUUID().toString());
+            final FileLocks.Lock reference = FileLocks.lock(referenceFile, StandardOpenOption.CREATE_NEW);
+            return new Lease(session, key, containerId, referenceFile, reference);
+        }
+    }
+
+    /**
+     * Releases this JVM's reference and removes the container if no other JVM references it.
+     */
+    static void release(Lease lease, DockerClient dockerClient, boolean leaveRunning)
+            throws IOException, DockerException, InterruptedException {
+        try (FileLocks.Lock ignored = FileLocks.lock(lockFile(lease.session, lease.key), StandardOpenOption.CREATE)) {
+            lease.reference.close();
+            Files.deleteIfExists(lease.referenceFile);
+
+            if (pruneDeadReferences(lease.session, lease.key) > 0) {
+                LOGGER.info("Leaving container {} for the other JVMs using it", lease.containerId);
+            } else if (leaveRunning) {
+                LOGGER.info("Leaving shared container {} running", lease.containerId);
+            } else {
+                LOGGER.info("Stopping container {} shared across JVMs", lease.containerId);
+                dockerClient.killContainer(lease.containerId);
+                dockerClient.removeContainer(lease.containerId);
+            }
+        }
+    }
+
+    /**
+     * @return the labels that identify a container shared for the given key
+     */
+    static Map<String, String> labelsFor(String key) {
+        final Map<String, String> labels = new HashMap<>();
+        labels.put(LABEL_REUSE_KEY, key);
+        labels.put(LABEL_SHARE_SESSION, sessionId());
+        return labels;
+    }
+
+    /**
+     * @return the session given by the <code>{@value #SESSION_PROPERTY}</code> system property
+     * @throws IllegalStateException if the property is not set
+     */
+    static String sessionId() {
+        final String sessionId = System.getProperty(SESSION_PROPERTY);
+        if (sessionId == null || sessionId.isEmpty()) {
+            throw new IllegalStateException("Sharing containers across JVMs requires the " + SESSION_PROPERTY
+                    + " system property to identify the build, such as by a CI build ID or timestamp");
+        }
+        return sessionId;
+    }
+
+    private static String findContainer(DockerClient dockerClient, String key)
+            throws DockerException, InterruptedException {
+        final List<Container> containers = dockerClient.listContainers(
+                withLabel(LABEL_REUSE_KEY, key), withLabel(LABEL_SHARE_SESSION, sessionId()));
+        return containers.isEmpty() ? null : containers.get(0).id();
+    }
+
+    /**
+     * Determines if a shared container is provably no longer used: it was shared through this host's share directory,
+     * no JVM is attaching to or releasing it, and no JVM holds a reference to it.
+     * @param session the share session of the container
+     * @param key the configuration key of the container
+     */
+    static boolean isUnused(String session, String key) {
+        final Path lockFile = lockFile(session, key);
+        if (!Files.exists(lockFile)) {
+            return false;
+        }
+        // held while this JVM or another is attaching to or releasing the container
+        try (FileLocks.Lock lock = FileLocks.tryLock(lockFile)) {
+            return lock != null && pruneDeadReferences(session, key) == 0;
+        } catch (IOException e) {
+            LOGGER.debug("Unable to check the references of shared container {}", key, e);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the reference files whose lock is no longer held, since their JVM has exited.
+     * @return the number of live references remaining
+     */
+    private static int pruneDeadReferences(String session, String key) throws IOException {
+        final Path dir = referencesDir(session, key);
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+
+        int live = 0;
+        try (DirectoryStream<Path> references = Files.newDirectoryStream(dir)) {
+            for (Path reference : references) {
+                // the references of this JVM are held, so they are counted without being opened
+                try (FileLocks.Lock lock = FileLocks.tryLock(reference)) {
+                    if (lock == null) {
+                        ++live;
+                        continue;
+                    }
+                }
+                LOGGER.debug("Removing reference {} of an exited JVM", reference);
+                Files.deleteIfExists(reference);
+            }
+        }
+        return live;
+    }
+
+    private static Path lockFile(String session, String key) {
+        return SHARE_DIR.resolve(fileName(session, key) + ".lock");
+    }
+
+    private static Path referencesDir(String session, String key) {
+        return SHARE_DIR.resolve(fileName(session, key) + ".refs");
+    }
+
+    private static String fileName(String session, String key) {
+        return (session + "-" + key).replaceAll("[^A-Za-z0-9._-]+", "_");
+    }
+}
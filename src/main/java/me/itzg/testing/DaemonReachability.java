@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Info;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Determines once per JVM whether each Docker endpoint is reachable. Before requesting the daemon's info,
+ * the check confirms that the daemon's socket exists or that its TCP port accepts a connection within the
+ * timeout given by the <code>dockerRule.connectTimeout</code> system property, so an absent daemon is detected
+ * quickly. The outcome, success or failure, is reused by every later check of the same endpoint.
+ *
+ * @since 1.4
+ */
+class DaemonReachability {
+    static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonReachability.class);
+
+    private static final int CONNECT_TIMEOUT = Integer.getInteger("dockerRule.connectTimeout", DEFAULT_CONNECT_TIMEOUT);
+
+    private static final ConcurrentMap<DockerEndpoint, CompletableFuture<Info>> RESULTS = new ConcurrentHashMap<>();
+
+    private DaemonReachability() {
+    }
+
+    /**
+     * @return the info of the daemon, as obtained by the first check of the endpoint
+     * @throws DockerException if the daemon could not be reached, now or by an earlier check
+     */
+    static Info check(DockerEndpoint endpoint, DockerClient dockerClient) throws DockerException, InterruptedException {
+        final CompletableFuture<Info> ours = new CompletableFuture<>();
+        final CompletableFuture<Info> existing = RESULTS.putIfAbsent(endpoint, ours);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof DockerException) {
+                    throw (DockerException) e.getCause();
+                }
+                throw new DockerException(e.getCause());
+            }
+        }
+
+        try {
+            preflight(endpoint);
+            final Info info = dockerClient.info();
+            ours.complete(info);
+            return info;
+        } catch (DockerException e) {
+            LOGGER.debug("Docker daemon at {} is not reachable", endpoint, e);
+            ours.completeExceptionally(e);
+            throw e;
+        } catch (InterruptedException e) {
+            // not a verdict on the daemon, so allow a later check
+            RESULTS.remove(endpoint, ours);
+            ours.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            final DockerException wrapped = new DockerException(e);
+            ours.completeExceptionally(wrapped);
+            throw wrapped;
+        }
+    }
+
+    private static void preflight(DockerEndpoint endpoint) throws DockerException {
+        final URI uri = URI.create(endpoint.uri());
+        final String scheme = uri.getScheme() != null ? uri.getScheme() : "";
+        switch (scheme) {
+            case "unix":
+                if (!Files.exists(Paths.get(uri.getPath()))) {
+                    throw new DockerException("Docker socket " + uri.getPath() + " does not exist");
+                }
+                break;
+
+            case "tcp":
+            case "http":
+            case "https":
+                final int port = uri.getPort() != -1 ? uri.getPort() : (scheme.equals("https") ? 2376 : 2375);
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress(uri.getHost(), port), CONNECT_TIMEOUT);
+                } catch (IOException e) {
+                    throw new DockerException(String.format("Unable to connect to Docker daemon at %s within %d ms",
+                            endpoint.uri(), CONNECT_TIMEOUT), e);
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+}
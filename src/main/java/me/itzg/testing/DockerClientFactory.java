@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.google.common.base.Optional;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerCertificates;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerCertificateException;
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Provides the Docker clients used by {@link DockerRule}. One client, along with its connection pool
+ * and loaded certificates, is created per Docker endpoint and shared by every rule in the JVM.
+ * The clients are closed when the JVM shuts down.
+ *
+ * <p>The connection pool size of each client defaults to {@value #DEFAULT_CONNECTION_POOL_SIZE}
+ * and can be changed with the <code>dockerRule.connectionPoolSize</code> system property or
+ * {@link #setConnectionPoolSize(int)}.</p>
+ *
+ * @since 1.4
+ */
+public final class DockerClientFactory {
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 100;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerClientFactory.class);
+
+    private static final ConcurrentMap<DockerEndpoint, DockerClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private static volatile int connectionPoolSize =
+            Integer.getInteger("dockerRule.connectionPoolSize", DEFAULT_CONNECTION_POOL_SIZE);
+
+    static {
+        ShutdownTasks.register(ShutdownTasks.ORDER_CLIENTS, "close Docker clients", DockerClientFactory::closeAll);
+    }
+
+    private DockerClientFactory() {
+    }
+
+    /**
+     * Sets the connection pool size of clients created after this call. Should be called before any rule
+     * is evaluated.
+     * @param connectionPoolSize the maximum number of concurrent connections per Docker endpoint
+     */
+    public static void setConnectionPoolSize(int connectionPoolSize) {
+        if (connectionPoolSize <= 0) {
+            throw new IllegalArgumentException("connectionPoolSize must be positive");
+        }
+        DockerClientFactory.connectionPoolSize = connectionPoolSize;
+    }
+
+    /**
+     * @return the shared client for the given endpoint, created on first use
+     */
+    static DockerClient obtain(DockerEndpoint endpoint) throws DockerCertificateException {
+        final DockerClient existing = CLIENTS.get(endpoint);
+        if (existing != null) {
+            return existing;
+        }
+
+        synchronized (CLIENTS) {
+            final DockerClient raced = CLIENTS.get(endpoint);
+            if (raced != null) {
+                return raced;
+            }
+
+            final DockerClient created = build(endpoint);
+            CLIENTS.put(endpoint, created);
+            return created;
+        }
+    }
+
+    private static DockerClient build(DockerEndpoint endpoint) throws DockerCertificateException {
+        LOGGER.debug("Creating Docker client for {}", endpoint);
+
+        final DefaultDockerClient.Builder dockerClientBuilder = DefaultDockerClient.fromEnv()
+                .uri(endpoint.uri())
+                .connectionPoolSize(connectionPoolSize);
+
+        if (endpoint.dockerCertPath() != null) {
+            LOGGER.info("Using Docker certificates at {}", endpoint.dockerCertPath());
+            final Optional<DockerCertificates> certs = DockerCertificates.builder()
+                    .dockerCertPath(endpoint.dockerCertPath())
+                    .build();
+
+            if (certs.isPresent()) {
+                dockerClientBuilder.dockerCertificates(certs.get());
+            } else {
+                Assert.fail("Given certificates were not loaded");
+            }
+        }
+
+        return dockerClientBuilder.build();
+    }
+
+    static void closeAll() {
+        for (DockerClient dockerClient : CLIENTS.values()) {
+            dockerClient.close();
+        }
+        CLIENTS.clear();
+    }
+}
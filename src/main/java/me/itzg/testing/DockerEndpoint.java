@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.exceptions.DockerCertificateException;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Identifies a Docker daemon by its URI and the client certificates used to access it.
+ *
+ * @since 1.4
+ */
+final class DockerEndpoint {
+    private static volatile String environmentUri;
+
+    private final String uri;
+    private final Path dockerCertPath;
+
+    private DockerEndpoint(String uri, Path dockerCertPath) {
+        this.uri = uri;
+        this.dockerCertPath = dockerCertPath;
+    }
+
+    /**
+     * @param uri the daemon URI or null to use the one given by the environment
+     * @param dockerCertPath the certificate directory or null to use what the environment specifies
+     */
+    static DockerEndpoint of(String uri, Path dockerCertPath) throws DockerCertificateException {
+        return new DockerEndpoint(
+                uri != null ? uri : environmentUri(),
+                dockerCertPath != null ? dockerCertPath.toAbsolutePath().normalize() : null);
+    }
+
+    /**
+     * Resolves the daemon URI given by the environment once, since doing so also loads the certificates
+     * given by <code>DOCKER_CERT_PATH</code>.
+     */
+    private static String environmentUri() throws DockerCertificateException {
+        String resolved = environmentUri;
+        if (resolved == null) {
+            synchronized (DockerEndpoint.class) {
+                resolved = environmentUri;
+                if (resolved == null) {
+                    resolved = DefaultDockerClient.fromEnv().uri().toString();
+                    environmentUri = resolved;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    String uri() {
+        return uri;
+    }
+
+    /**
+     * @return the explicitly specified certificate directory or null when the environment is used
+     */
+    Path dockerCertPath() {
+        return dockerCertPath;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DockerEndpoint that = (DockerEndpoint) o;
+        return uri.equals(that.uri) && Objects.equals(dockerCertPath, that.dockerCertPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uri, dockerCertPath);
+    }
+
+    @Override
+    public String toString() {
+        return dockerCertPath != null ? uri + " (certs at " + dockerCertPath + ")" : uri;
+    }
+}
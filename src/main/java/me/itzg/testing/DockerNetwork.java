@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+/**
+ * Declares a user-defined bridge network for {@link DockerRule#network(DockerNetwork)}. The network is created
+ * the first time a rule needs it, or joined if it already exists, and containers attached to it reach each other
+ * by the names given with {@link DockerRule#networkAlias(String)} rather than through ports published on the host.
+ *
+ * <p>With direct access, which is enabled by default, tests reach the containers at their address on the network
+ * and at their internal ports, skipping port publishing and the userland proxy, whenever that address is routable
+ * from the test JVM. By default it is considered routable when the daemon runs on this Linux host and is accessed
+ * through its Unix socket. The <code>dockerRule.directAccess</code> system property can be set to true, such as when
+ * the tests themselves run in a container attached to the network, or false to always publish ports.</p>
+ *
+ * <pre>
+ *     static final DockerNetwork network = new DockerNetwork("it-network");
+ *
+ *     &#64;ClassRule
+ *     public static DockerRule db = new DockerRule("postgres:9.6")
+ *         .network(network).networkAlias("db");
+ * </pre>
+ *
+ * @since 1.4
+ */
+public class DockerNetwork {
+    private final String name;
+    private boolean directAccess = true;
+
+    /**
+     * @param name the name of the network to create or join
+     */
+    public DockerNetwork(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param directAccess true, the default, to access containers at their address on the network when routable,
+     *                     false to always access them through published ports
+     * @return this for chaining
+     */
+    public DockerNetwork directAccess(boolean directAccess) {
+        this.directAccess = directAccess;
+        return this;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isDirectAccess() {
+        return directAccess;
+    }
+
+    @Override
+    public String toString() {
+        return directAccess ? name : name + " (published ports)";
+    }
+}
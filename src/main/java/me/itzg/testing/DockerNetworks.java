@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.NetworkNotFoundException;
+import com.spotify.docker.client.messages.NetworkConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates the networks declared by {@link DockerNetwork}s, joining those that already exist. Like
+ * {@link ImageBuilds}, networks confirmed present are cached for the life of the JVM and concurrent requests for the
+ * same network wait for a single creation. Networks created here are removed when the JVM shuts down, after the
+ * containers, unless containers are still attached to them.
+ *
+ * @since 1.4
+ */
+class DockerNetworks {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerNetworks.class);
+
+    static final String DIRECT_ACCESS_PROPERTY = "dockerRule.directAccess";
+
+    private static final Set<String> PRESENT = ConcurrentHashMap.newKeySet();
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private DockerNetworks() {
+    }
+
+    /**
+     * @param dockerClient the client to use for inspecting and creating
+     * @param daemonKey identifies the Docker daemon, since presence on one daemon says nothing about another
+     * @param network the network to make available
+     */
+    static void ensureExists(DockerClient dockerClient, String daemonKey, DockerNetwork network)
+            throws DockerException, InterruptedException {
+        final String name = network.getName();
+        final String cacheKey = daemonKey + "|" + name;
+        if (PRESENT.contains(cacheKey)) {
+            return;
+        }
+
+        synchronized (LOCKS.computeIfAbsent(cacheKey, key -> new Object())) {
+            if (PRESENT.contains(cacheKey)) {
+                return;
+            }
+            try {
+                dockerClient.inspectNetwork(name);
+                LOGGER.debug("Joining existing network {}", name);
+            } catch (NetworkNotFoundException e) {
+                create(dockerClient, name);
+            }
+            PRESENT.add(cacheKey);
+        }
+    }
+
+    private static void create(DockerClient dockerClient, String name) throws DockerException, InterruptedException {
+        LOGGER.info("Creating network {}", name);
+        final String id;
+        try {
+            id = dockerClient.createNetwork(NetworkConfig.builder()
+                    .name(name)
+                    .driver("bridge")
+                    .checkDuplicate(true)
+                    .build()).id();
+        } catch (DockerRequestException e) {
+            if (e.status() == 409) {
+                // created concurrently by another JVM, which also removes it
+                LOGGER.debug("Joining network {} created concurrently", name);
+                return;
+            }
+            throw e;
+        }
+
+        ShutdownTasks.register(ShutdownTasks.ORDER_NETWORKS, "remove network " + name, () -> {
+            try {
+                dockerClient.removeNetwork(id);
+                LOGGER.info("Removed network {}", name);
+            } catch (DockerException e) {
+                LOGGER.info("Leaving network {} in place since it could not be removed: {}", name, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Determines if containers on user-defined networks of the daemon can be reached at their network address,
+     * according to the <code>{@value #DIRECT_ACCESS_PROPERTY}</code> system property or, when not set, whether the
+     * daemon runs on this Linux host.
+     */
+    static boolean directlyRoutable(DockerEndpoint endpoint) {
+        final String setting = System.getProperty(DIRECT_ACCESS_PROPERTY);
+        if (setting != null) {
+            return Boolean.parseBoolean(setting);
+        }
+        return System.getProperty("os.name", "").startsWith("Linux") && endpoint.uri().startsWith("unix:");
+    }
+}
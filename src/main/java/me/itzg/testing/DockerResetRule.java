@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A per-test companion of a class-scoped {@link DockerRule} that resets the rule's container after each
+ * test, giving tests isolation from each other without paying for a new container per test.
+ *
+ * <p>The following flushes Redis after each test:</p>
+ * <pre>
+ *     public class YourTest {
+ *         &#64;ClassRule
+ *         public static DockerRule redis = new DockerRule("redis:4").waitForLog("Ready to accept connections");
+ *
+ *         &#64;Rule
+ *         public DockerResetRule reset = new DockerResetRule(redis, ResetStrategies.exec("redis-cli", "FLUSHALL"));
+ *
+ *         &#64;Test
+ *         public void someTest() { ... }
+ * </pre>
+ *
+ * @since 1.4
+ */
+public class DockerResetRule implements TestRule {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerResetRule.class);
+
+    private final DockerRule dockerRule;
+    private final ResetStrategy strategy;
+
+    /**
+     * @param dockerRule the class-scoped rule whose container is reset
+     * @param strategy how to reset the container
+     */
+    public DockerResetRule(DockerRule dockerRule, ResetStrategy strategy) {
+        this.dockerRule = dockerRule;
+        this.strategy = strategy;
+    }
+
+    @Override
+    public Statement apply(Statement statement, Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final String containerId = dockerRule.getContainerId();
+                if (containerId == null) {
+                    throw new IllegalStateException(
+                            "The DockerRule of a DockerResetRule must be started first, such as by being a @ClassRule");
+                }
+                strategy.beforeTest(dockerRule);
+
+                Throwable failure = null;
+                try {
+                    statement.evaluate();
+                } catch (Throwable e) {
+                    failure = e;
+                    throw e;
+                } finally {
+                    final long started = System.nanoTime();
+                    try {
+                        strategy.reset(dockerRule);
+                        dockerRule.phaseCompleted(LifecyclePhase.RESET, containerId, started, true);
+                    } catch (Exception e) {
+                        dockerRule.phaseCompleted(LifecyclePhase.RESET, containerId, started, false);
+                        if (failure == null) {
+                            throw new AssertionError(String.format("Failed to reset container %s with %s",
+                                    containerId, strategy), e);
+                        }
+                        LOGGER.warn("Failed to reset container {} with {} after test failure", containerId, strategy, e);
+                    }
+                }
+            }
+        };
+    }
+}
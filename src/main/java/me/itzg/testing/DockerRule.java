@@ -16,41 +16,51 @@
 
 package me.itzg.testing;
 
-import com.google.common.base.Optional;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.net.HostAndPort;
-import com.spotify.docker.client.DefaultDockerClient;
-import com.spotify.docker.client.DockerCertificates;
 import com.spotify.docker.client.DockerClient;
-import com.spotify.docker.client.LogMessage;
-import com.spotify.docker.client.LogStream;
-import com.spotify.docker.client.ProgressHandler;
+import com.spotify.docker.client.exceptions.DockerCertificateException;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.AttachedNetwork;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
 import com.spotify.docker.client.messages.ContainerInfo;
 import com.spotify.docker.client.messages.HostConfig;
 import com.spotify.docker.client.messages.Info;
 import com.spotify.docker.client.messages.NetworkSettings;
-import com.spotify.docker.client.messages.PortBinding;
-import com.spotify.docker.client.messages.ProgressMessage;
 import org.junit.Assert;
 import org.junit.Assume;
+import org.junit.AssumptionViolatedException;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This is a JUnit rule that manages the lifecycle of a Docker container around a test case or suite.
- * The container is created with all <code>EXPOSE</code>d ports published. Use {@link #getHostAndPort(int)}
+ * The container is created with all <code>EXPOSE</code>d ports published, unless accessed directly on a
+ * {@link #network(DockerNetwork)}. Use {@link #getHostAndPort(int)}
  * or {@link #getAccessToPort(int)} to resolve the hostname and port of the specifically published port.
  *
  * <p>The following is an example use as a class rule:</p>
@@ -73,19 +83,102 @@ public class DockerRule implements TestRule {
     private static final Logger LOGGER = LoggerFactory.getLogger(DockerRule.class);
 
     private final String image;
+    private final DockerfileImage dockerfileImage;
+    private volatile String builtImage;
     private String[] command;
     private String[] parmeters = new String[]{};
-    private DockerClient dockerClient;
-    private ContainerCreation container;
     private boolean leaveRunning;
+    private boolean reuseContainer;
+    private boolean shareAcrossJvms;
+    private boolean asyncTeardown;
     private boolean skipWhenOffline;
     private String uri;
     private Path dockerCertPath;
-    private String waitForLog;
-    private long waitForLogTimeout = DEFAULT_WAIT_FOR_LOG_TIMEOUT;
+    private LogCondition waitForLog;
+    private final List<ReadinessProbe> readinessProbes = new ArrayList<>();
+    private long readinessTimeout = DEFAULT_WAIT_FOR_LOG_TIMEOUT;
+    private PullPolicy pullPolicy = PullPolicy.ALWAYS;
+    private ContainerInitializer initializer;
+    private String warmSnapshotVersion;
+    private ResourceProfile resources;
+    private DockerNetwork network;
+    private String networkAlias;
+    private final List<FixtureCopy> fixtures = new ArrayList<>();
+    private final List<LifecycleListener> lifecycleListeners = new ArrayList<>();
+    private int logCaptureCapacity;
+    private boolean interruptOnContainerExit;
+    private final ThreadLocal<Evaluation> bound = new InheritableThreadLocal<>();
+    private final Set<Evaluation> active = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The state of one evaluation of the rule, so that concurrent evaluations, such as of test methods run in
+     * parallel, each have their own container. An evaluation is read by the thread it is bound to, and threads
+     * started by it, while other threads read the most recently bound one.
+     */
+    static final class Evaluation {
+        private final String description;
+        private DockerEndpoint endpoint;
+        private DockerClient dockerClient;
+        private String containerId;
+        private SharedContainers.Entry sharedEntry;
+        private volatile PortBindings portBindings;
+        private String directNetwork;
+        private AdmissionControl.Permit permit;
+        private volatile long admissionWaitNanos;
+        private LogCapture logCapture;
+        private ContainerEvents.Tracker tracker;
+
+        private Evaluation(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return the endpoint resolved by {@link #connect(String)}
+         */
+        DockerEndpoint endpoint() {
+            return endpoint;
+        }
+    }
+
+    private static class FixtureCopy {
+        final Fixture fixture;
+        final String containerPath;
+
+        FixtureCopy(Fixture fixture, String containerPath) {
+            this.fixture = fixture;
+            this.containerPath = containerPath;
+        }
+
+        /**
+         * @return the description of this copy followed by a hash of the fixture's files, so that changing
+         * them is distinguished from an unchanged fixture
+         */
+        String describe() throws IOException {
+            final Hasher hasher = Hashing.sha256().newHasher();
+            putTree(hasher, fixture.directory());
+            return this + " " + hasher.hash();
+        }
+
+        @Override
+        public String toString() {
+            return fixture + " to " + containerPath;
+        }
+    }
 
     public DockerRule(String image) {
         this.image = image;
+        this.dockerfileImage = null;
+    }
+
+    /**
+     * Creates a rule whose image is built from a Dockerfile when the rule is evaluated. The build is skipped
+     * when the daemon already has an image built from identical context content, so the pull policy does not
+     * apply to these images.
+     * @param dockerfileImage the Dockerfile and context to build
+     */
+    public DockerRule(DockerfileImage dockerfileImage) {
+        this.image = dockerfileImage.toString();
+        this.dockerfileImage = dockerfileImage;
     }
 
     /**
@@ -131,10 +224,166 @@ public class DockerRule implements TestRule {
         return this;
     }
 
+    /**
+     * Configures when the image is pulled. The default is {@link PullPolicy#ALWAYS}.
+     * @param pullPolicy the policy to apply prior to creating the container
+     * @return this for chaining
+     */
+    public DockerRule pullPolicy(PullPolicy pullPolicy) {
+        this.pullPolicy = pullPolicy;
+        return this;
+    }
+
+    /**
+     * Specifies the resources given to the container, such as tmpfs mounts and memory, CPU, and ulimit settings.
+     * <p>
+     * When the <code>dockerRule.budget.memory</code> or <code>dockerRule.budget.cpus</code> system property is set,
+     * the container is not created until the memory and CPUs it is expected to use fit within that budget, along
+     * with the other containers started by this JVM. Starts are admitted in the order requested and wait up to the
+     * <code>dockerRule.budget.timeout</code> system property, 10 minutes by default, in milliseconds. The budget is
+     * held until the container is stopped, or until the JVM exits for a shared container. The time spent waiting
+     * is reported as {@link LifecyclePhase#ADMISSION} and by {@link #getAdmissionWaitMillis()}.
+     * </p>
+     * @param resources the resources of the container
+     * @return this for chaining
+     */
+    public DockerRule resources(ResourceProfile resources) {
+        this.resources = resources;
+        return this;
+    }
+
+    /**
+     * Attaches the container to a user-defined bridge network, which is created if it does not exist, rather than
+     * the default bridge. When the network allows direct access and its addresses are routable from this host,
+     * ports are not published and {@link #getAccessToPort(int)} resolves to the address of the container on the
+     * network and its exposed port, see {@link DockerNetwork}.
+     * @param network the network to attach the container to
+     * @return this for chaining
+     */
+    public DockerRule network(DockerNetwork network) {
+        this.network = network;
+        return this;
+    }
+
+    /**
+     * Names the container so that other containers on its {@link #network(DockerNetwork)} can reach it by the
+     * given name. Since container names are unique per daemon, only one container with a given alias can exist at
+     * a time, so rules with an alias should be class rules or combined with {@link #reuseContainer(boolean)} when
+     * tests run in parallel.
+     * @param networkAlias the host name of the container on its network
+     * @return this for chaining
+     */
+    public DockerRule networkAlias(String networkAlias) {
+        this.networkAlias = networkAlias;
+        return this;
+    }
+
+    /**
+     * Copies the files of a fixture into the container after it is created and before it starts, so that they are
+     * present before its entrypoint runs. This allows seeding images that load data from an init directory, such
+     * as <code>/docker-entrypoint-initdb.d</code>, at file copy speed rather than through requests once ready.
+     * This may be called more than once to copy several fixtures.
+     * @param fixture the files to copy
+     * @param containerPath the directory within the container that receives the files, which must exist in the image
+     * @return this for chaining
+     */
+    public DockerRule fixture(Fixture fixture, String containerPath) {
+        this.fixtures.add(new FixtureCopy(fixture, containerPath));
+        return this;
+    }
+
+    /**
+     * Specifies initialization to perform once the container is ready and before the test is evaluated.
+     * When combined with {@link #warmSnapshot(String)}, the initialization is only performed when creating
+     * the snapshot.
+     * @param initializer performs the initialization
+     * @return this for chaining
+     */
+    public DockerRule initializeWith(ContainerInitializer initializer) {
+        this.initializer = initializer;
+        return this;
+    }
+
+    /**
+     * Enables warm snapshots, where the container is committed to a locally tagged image once it is ready
+     * and initialized by {@link #initializeWith(ContainerInitializer)}. Later runs start from that image,
+     * skipping the one-time initialization. The snapshot is keyed by the digest of the image along with
+     * the parameters, command, and given version, so a change to any of them produces a new snapshot.
+     * Setting the <code>dockerRule.warmSnapshot.rebuild</code> system property to true replaces existing
+     * snapshots.
+     * <p>
+     * Note that content written to paths declared as <code>VOLUME</code>s by the image is not included
+     * in a snapshot.
+     * </p>
+     * @param initVersion identifies the version of the initialization, which should be changed
+     *                    whenever the initialization changes
+     * @return this for chaining
+     */
+    public DockerRule warmSnapshot(String initVersion) {
+        this.warmSnapshotVersion = initVersion;
+        return this;
+    }
+
+    /**
+     * Allows for removing the container in the background after the test rule has completed, so that the
+     * next test can proceed without waiting. Containers still queued for removal when the JVM shuts down
+     * are removed before it exits, waiting up to the <code>dockerRule.reaperShutdownTimeout</code> system
+     * property in milliseconds, which defaults to 30 seconds.
+     * @param asyncTeardown true to remove the container in the background
+     * @return this for chaining
+     */
+    public DockerRule asyncTeardown(boolean asyncTeardown) {
+        this.asyncTeardown = asyncTeardown;
+        return this;
+    }
+
+    /**
+     * Allows for sharing a single container across all rules in this JVM that have the same image,
+     * parameters, command, wait conditions, and Docker endpoint. The first rule to evaluate starts
+     * the container and subsequent rules attach to it rather than starting their own.
+     * Only the probes provided by {@link ReadinessProbes} are compared. Other probes given to
+     * {@link #waitFor(ReadinessProbe)} are instead run against the shared container when attaching to it.
+     * Shared containers are stopped and removed when the JVM shuts down, unless {@link #leavingRunning(boolean)}
+     * is also set.
+     * <p>
+     * Since the container is shared, tests using this option should not rely on state left behind
+     * by earlier tests or make changes that would interfere with later ones.
+     * </p>
+     * @param reuseContainer true to share the container with other rules of the same configuration
+     * @return this for chaining
+     */
+    public DockerRule reuseContainer(boolean reuseContainer) {
+        this.reuseContainer = reuseContainer;
+        return this;
+    }
+
+    /**
+     * Like {@link #reuseContainer(boolean)}, but also shares the container with other JVMs on this host that
+     * use the same Docker daemon and <code>dockerRule.sessionId</code> system property, such as forked Surefire
+     * test runs. The first JVM to evaluate the rule starts the container, the others attach to it, and the
+     * last JVM to shut down removes it. The session should be unique to the build, such as a CI build ID, and
+     * the rule fails if it is not set.
+     * <p>
+     * The JVMs coordinate through files in the directory given by the <code>dockerRule.shareDir</code>
+     * system property, which defaults to <code>junit-rule-docker</code> in the temporary directory.
+     * </p>
+     * @param shareAcrossJvms true to share the container with rules of the same configuration in any JVM
+     * @return this for chaining
+     */
+    public DockerRule shareAcrossJvms(boolean shareAcrossJvms) {
+        this.shareAcrossJvms = shareAcrossJvms;
+        return this;
+    }
+
     /**
      * Used to indicate that the test scenario should be skipped when unable to connect to the
      * Docker daemon. This option should be used with caution since it may cause an entire suite
      * to be skipped when used as a {@link org.junit.ClassRule}.
+     * <p>
+     * Reachability is checked once per Docker endpoint and JVM, so once the daemon is found to be offline
+     * every other rule using it is skipped immediately. The check waits up to the
+     * <code>dockerRule.connectTimeout</code> system property, 2000 milliseconds by default, to connect.
+     * </p>
      * @param skipWhenOffline true to use {@link Assume} to skip the test scenario when failing to connect
      * @return this for chaining
      */
@@ -162,19 +411,99 @@ public class DockerRule implements TestRule {
      * @return this for chaining
      */
     public DockerRule waitForLog(String snippet) {
-        this.waitForLog = snippet;
+        this.waitForLog = LogCondition.contains(snippet);
         return this;
     }
 
     /**
-     * Configures the amount of time that {@link #waitForLog(String)} will wait for the given snippet.
+     * This rule will wait to evaluate the test context until the given condition, such as multiple snippets
+     * or a regular expression, is satisfied by the stdout/stderr log of the container.
+     * It will wait up until the timeout specified by {@link #waitForLogTimeout(long)}.
+     *
+     * @param condition the condition to satisfy
+     * @return this for chaining
+     */
+    public DockerRule waitForLog(LogCondition condition) {
+        this.waitForLog = condition;
+        return this;
+    }
+
+    /**
+     * Configures the amount of time that {@link #waitForLog(String)} will wait for the given snippet
+     * or {@link #waitForLog(LogCondition)} will wait for the given condition.
+     * This is equivalent to {@link #readinessTimeout(long)}.
      * The default is {@value #DEFAULT_WAIT_FOR_LOG_TIMEOUT} milliseconds.
      *
      * @param timeout the amount of time to wait in milliseconds
      * @return this for chaining
      */
     public DockerRule waitForLogTimeout(long timeout) {
-        this.waitForLogTimeout = timeout;
+        return readinessTimeout(timeout);
+    }
+
+    /**
+     * This rule will wait to evaluate the test context until the given probe reports the container is ready.
+     * This may be called more than once, in which case all of the probes, along with any
+     * {@link #waitForLog(LogCondition)} condition, run concurrently and must all report ready.
+     *
+     * @param probe a probe such as those provided by {@link ReadinessProbes}
+     * @return this for chaining
+     */
+    public DockerRule waitFor(ReadinessProbe probe) {
+        this.readinessProbes.add(probe);
+        return this;
+    }
+
+    /**
+     * Configures the overall amount of time to wait for the container to become ready, as determined by
+     * {@link #waitForLog(LogCondition)} and {@link #waitFor(ReadinessProbe)}.
+     * The default is {@value #DEFAULT_WAIT_FOR_LOG_TIMEOUT} milliseconds.
+     *
+     * @param timeout the amount of time to wait in milliseconds
+     * @return this for chaining
+     */
+    public DockerRule readinessTimeout(long timeout) {
+        this.readinessTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * Registers a listener that receives the duration of each phase of this rule's lifecycle, such as
+     * pulling the image, starting the container, and evaluating the test. A {@link TimingReport} can also be
+     * enabled for all rules with the <code>dockerRule.timingReport</code> system property.
+     *
+     * @param listener the listener to add
+     * @return this for chaining
+     */
+    public DockerRule lifecycleListener(LifecycleListener listener) {
+        this.lifecycleListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Captures the stdout and stderr of the container, from when it starts until it stops, into an off-heap
+     * ring buffer that discards the oldest lines once full. The captured log can be queried with
+     * {@link #getLogs()} and is written to a file under the <code>dockerRule.logDumpDir</code> system property,
+     * <code>target/docker-logs</code> by default, when the container fails to become ready or the test fails.
+     *
+     * @param capacity the size of the buffer in bytes
+     * @return this for chaining
+     */
+    public DockerRule captureLogs(int capacity) {
+        this.logCaptureCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Interrupts the thread evaluating the test when the container exits during the test, such as by being
+     * killed for running out of memory, so that a test blocked waiting on the container fails right away.
+     * Regardless of this option, a test that fails after its container exited reports the container's exit.
+     *
+     * @param interruptOnContainerExit true to interrupt the test when the container exits
+     * @return this for chaining
+     */
+    public DockerRule interruptOnContainerExit(boolean interruptOnContainerExit) {
+        this.interruptOnContainerExit = interruptOnContainerExit;
         return this;
     }
 
@@ -182,146 +511,808 @@ public class DockerRule implements TestRule {
         return new Statement() {
             @Override
             public void evaluate() throws Throwable {
-//                final DefaultDockerClient.Builder dockerClientBuilder;
-                final DefaultDockerClient.Builder dockerClientBuilder = DefaultDockerClient.fromEnv();
-                if (uri != null || dockerCertPath != null) {
-                    LOGGER.debug("Using specified Docker access configuration");
+                final Evaluation evaluation = connect(description.getDisplayName());
+                bind(evaluation);
+                try {
+                    evaluate(evaluation);
+                } finally {
+                    unbind();
+                }
+            }
 
-//                    dockerClientBuilder = DefaultDockerClient.builder();
+            private void evaluate(Evaluation evaluation) throws Throwable {
+                start(evaluation, true);
 
-                    if (uri != null) {
-                        dockerClientBuilder.uri(uri);
+                final String containerId = evaluation.containerId;
+                Throwable failure = null;
+                final long testStarted = System.nanoTime();
+                final ContainerEvents.Tracker testTracker = evaluation.tracker;
+                final Thread testThread = Thread.currentThread();
+                final Runnable interrupter = testThread::interrupt;
+                if (testTracker != null && interruptOnContainerExit) {
+                    testTracker.addExitListener(interrupter);
+                }
+                try {
+                    statement.evaluate();
+                    phaseCompleted(evaluation, LifecyclePhase.TEST, containerId, testStarted, true);
+                } catch (Throwable e) {
+                    phaseCompleted(evaluation, LifecyclePhase.TEST, containerId, testStarted, false);
+                    dumpLogs(evaluation, containerId, e);
+                    failure = e;
+                    if (testTracker != null && testTracker.hasExited() && !(e instanceof AssumptionViolatedException)) {
+                        throw new AssertionError(testTracker.exitedException().getMessage() + " during the test", e);
                     }
-                    if (dockerCertPath != null) {
-                        LOGGER.info("Using Docker certificates at {}", dockerCertPath);
-                        final Optional<DockerCertificates> certs = DockerCertificates.builder()
-                                .dockerCertPath(dockerCertPath)
-                                .build();
-
-                        if (certs.isPresent()) {
-                            dockerClientBuilder.dockerCertificates(certs.get());
-                        } else {
-                            Assert.fail("Given certificates were not loaded");
+                    throw e;
+                } finally {
+                    if (testTracker != null && interruptOnContainerExit) {
+                        testTracker.removeExitListener(interrupter);
+                        if (testTracker.hasExited()) {
+                            // the interrupt was meant for the test only
+                            Thread.interrupted();
                         }
-
                     }
-                } else {
-                    LOGGER.debug("Loading Docker access configuration from environment");
-//                    dockerClientBuilder = DefaultDockerClient.fromEnv();
+                    try {
+                        stop(evaluation);
+                    } catch (Exception e) {
+                        if (failure == null) {
+                            throw e;
+                        }
+                        LOGGER.warn("Failed to stop container {} after test failure", containerId, e);
+                    }
                 }
+            }
+        };
+    }
 
-                dockerClient = dockerClientBuilder.build();
+    /**
+     * Obtains the Docker client and confirms the daemon is reachable. Whether the daemon is reachable
+     * is only determined once per endpoint, see {@link DaemonReachability}.
+     * @param description describes the test for reporting, if any
+     * @return a new evaluation to pass to the other lifecycle methods
+     */
+    Evaluation connect(String description) throws DockerException, InterruptedException, DockerCertificateException {
+        final Evaluation evaluation = new Evaluation(description);
+        final long connectStarted = System.nanoTime();
+        boolean connected = false;
+        try {
+            final DockerEndpoint endpoint = endpoint();
+            evaluation.endpoint = endpoint;
+            if (uri != null || dockerCertPath != null) {
+                LOGGER.debug("Using specified Docker access configuration");
+            } else {
+                LOGGER.debug("Loading Docker access configuration from environment");
+            }
+            evaluation.dockerClient = DockerClientFactory.obtain(endpoint);
+            connected = true;
+        } finally {
+            phaseCompleted(evaluation, LifecyclePhase.CONNECT, null, connectStarted, connected);
+        }
 
-                try {
-                    final Info info = dockerClient.info();
-                    LOGGER.info("Using Docker node {}", info.name());
-                } catch (DockerException|InterruptedException e) {
-                    if (skipWhenOffline) {
-                        Assume.assumeNoException(e);
-                    } else {
-                        throw e;
-                    }
-                }
+        final long infoStarted = System.nanoTime();
+        try {
+            final Info info = DaemonReachability.check(evaluation.endpoint, evaluation.dockerClient);
+            phaseCompleted(evaluation, LifecyclePhase.INFO, null, infoStarted, true);
+            LOGGER.info("Using Docker node {}", info.name());
+            OrphanReaper.reapAtStartup(evaluation.dockerClient, evaluation.endpoint);
+        } catch (DockerException|InterruptedException e) {
+            phaseCompleted(evaluation, LifecyclePhase.INFO, null, infoStarted, false);
+            if (skipWhenOffline) {
+                Assume.assumeNoException(e);
+            } else {
+                throw e;
+            }
+        }
+        return evaluation;
+    }
 
-                dockerClient.pull(image, new ProgressHandler() {
-                    @Override
-                    public void progress(ProgressMessage progressMessage) throws DockerException {
-                        if (progressMessage.id() != null && progressMessage.progress() == null) {
-                            LOGGER.info("Pulling {} : {} : {}", image, progressMessage.id(), progressMessage.status());
-                        } else if (progressMessage.id() == null) {
-                            LOGGER.info("Pulling {} : {}", image, progressMessage.status());
+    /**
+     * Makes the evaluation the one read by the calling thread, threads it starts, and, while it is the
+     * only active evaluation of this rule, by other threads that have none of their own.
+     */
+    void bind(Evaluation evaluation) {
+        bound.set(evaluation);
+        active.add(evaluation);
+    }
 
-                        }
-                    }
-                });
+    /**
+     * Unbinds the calling thread's evaluation, which is then no longer active.
+     */
+    void unbind() {
+        final Evaluation evaluation = bound.get();
+        bound.remove();
+        if (evaluation != null) {
+            active.remove(evaluation);
+        }
+    }
 
-                HostConfig.Builder hostConfigBuilder = HostConfig.builder();
-                hostConfigBuilder.publishAllPorts(true);
+    /**
+     * @return the evaluation bound to the calling thread or, if none, the only active one
+     * @throws IllegalStateException if the calling thread has none and there is not exactly one active
+     */
+    private Evaluation current() {
+        final Evaluation evaluation = bound.get();
+        // pool threads started during an evaluation inherit its binding and keep it after the evaluation ends
+        if (evaluation != null && active.contains(evaluation)) {
+            return evaluation;
+        }
+        final List<Evaluation> candidates = new ArrayList<>(active);
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException("The rule for " + image + " is not being evaluated");
+        }
+        throw new IllegalStateException("The rule for " + image + " has " + candidates.size()
+                + " concurrent evaluations and none belongs to the calling thread");
+    }
 
-                ContainerConfig.Builder configBuilder = ContainerConfig.builder()
-                        .image(image)
-                        .hostConfig(hostConfigBuilder.build())
-                        .env(parmeters)
-                        .cmd(command);
+    /**
+     * Makes the image available according to the pull policy, or builds it when declared by a
+     * {@link DockerfileImage}.
+     * @param evaluation the evaluation returned by {@link #connect(String)}
+     */
+    void pullImage(Evaluation evaluation) throws DockerException, InterruptedException {
+        final long started = System.nanoTime();
+        boolean fetched = false;
+        try {
+            fetchImage(evaluation.dockerClient, evaluation.endpoint);
+            fetched = true;
+        } finally {
+            phaseCompleted(evaluation, dockerfileImage != null ? LifecyclePhase.BUILD : LifecyclePhase.PULL,
+                    null, started, fetched);
+        }
+    }
 
-                container = dockerClient.createContainer(configBuilder.build());
-                final String id = container.id();
+    /**
+     * Does the work of {@link #pullImage(Evaluation)} through the given client without an evaluation, so that
+     * {@link ImagePrefetcher} avoids the daemon check and orphan reaping of {@link #connect(String)}.
+     * @param endpoint the endpoint returned by {@link #endpoint()}
+     */
+    void fetchImage(DockerClient dockerClient, DockerEndpoint endpoint) throws DockerException, InterruptedException {
+        if (dockerfileImage != null) {
+            builtImage = ImageBuilds.ensureBuilt(dockerClient, endpoint.uri(), dockerfileImage);
+        } else {
+            ImagePuller.ensureImage(dockerClient, endpoint.uri(), image, pullPolicy);
+        }
+    }
 
-                LOGGER.info("Starting container {}", id);
+    /**
+     * @return the endpoint of the configured or environment's Docker daemon
+     */
+    DockerEndpoint endpoint() throws DockerCertificateException {
+        return DockerEndpoint.of(uri, dockerCertPath);
+    }
 
-                dockerClient.startContainer(id);
+    /**
+     * Starts the container, or attaches to the shared one, and waits for it to be ready. The evaluation is bound
+     * to the calling thread while starting, so that a {@link ContainerInitializer} can access the container.
+     * @param evaluation the evaluation returned by {@link #connect(String)}
+     * @param pull true to first call {@link #pullImage(Evaluation)}
+     */
+    void start(Evaluation evaluation, boolean pull) throws Exception {
+        final Evaluation previous = bound.get();
+        bound.set(evaluation);
+        try {
+            startEvaluation(evaluation, pull);
+        } finally {
+            if (previous != null) {
+                bound.set(previous);
+            } else {
+                bound.remove();
+            }
+        }
+    }
 
-                if (waitForLog != null) {
-                    final Semaphore ready = new Semaphore(0);
-                    handleWaitingForLog(id, ready);
-                }
+    private void startEvaluation(Evaluation evaluation, boolean pull) throws Exception {
+        final boolean pullOnStart;
+        if (dockerfileImage != null && (pull || builtImage == null)) {
+            // the built image is part of the reuse key
+            pullImage(evaluation);
+            pullOnStart = false;
+        } else {
+            pullOnStart = pull;
+        }
+        evaluation.directNetwork = network != null && network.isDirectAccess()
+                && DockerNetworks.directlyRoutable(evaluation.endpoint) ? network.getName() : null;
+        if (reuseContainer || shareAcrossJvms) {
+            final DockerClient dockerClient = evaluation.dockerClient;
+            evaluation.sharedEntry = SharedContainers.acquire(reuseKey(), dockerClient, leaveRunning,
+                    shareAcrossJvms, () -> startContainer(evaluation, pullOnStart));
+            final String containerId = evaluation.sharedEntry.containerId();
+            evaluation.containerId = containerId;
+            final boolean attached = evaluation.tracker == null;
+            if (attached) {
+                // attached to a container started by another rule
+                evaluation.tracker = ContainerEvents.track(evaluation.endpoint, dockerClient, containerId);
+            }
+            refreshPortBindings(evaluation);
+            if (attached) {
+                awaitAttachedReadiness(evaluation);
+            }
+            if (logCaptureCapacity > 0) {
+                // share the capture of whichever rule started the container or start one now
+                final LogCapture started = evaluation.logCapture;
+                evaluation.logCapture = evaluation.sharedEntry.logCapture(started != null ? () -> started :
+                        () -> LogCapture.follow(dockerClient, containerId, logCaptureCapacity));
+            }
+        } else {
+            evaluation.containerId = startContainer(evaluation, pullOnStart);
+        }
+    }
 
-                statement.evaluate();
+    /**
+     * Stops and removes the container, unless leaving it running, or releases the shared container.
+     * @param evaluation the evaluation passed to {@link #start(Evaluation, boolean)}
+     */
+    void stop(Evaluation evaluation) throws DockerException, InterruptedException {
+        if (evaluation.tracker != null) {
+            evaluation.tracker.close();
+            evaluation.tracker = null;
+        }
+        if (evaluation.sharedEntry != null) {
+            SharedContainers.release(evaluation.sharedEntry);
+            evaluation.sharedEntry = null;
+            return;
+        }
 
-                if (!leaveRunning) {
-                    LOGGER.info("Stopping container {}", id);
-                    dockerClient.killContainer(id);
-                    dockerClient.removeContainer(id);
-                } else {
-                    LOGGER.info("Leaving container {} running", id);
-                }
+        try {
+            stopContainer(evaluation);
+        } finally {
+            releaseAdmission(evaluation);
+        }
+    }
 
-                dockerClient.close();
+    private void stopContainer(Evaluation evaluation) throws DockerException, InterruptedException {
+        final DockerClient dockerClient = evaluation.dockerClient;
+        final String id = evaluation.containerId;
+        if (leaveRunning) {
+            LOGGER.info("Leaving container {} running", id);
+        } else if (asyncTeardown) {
+            LOGGER.info("Queueing removal of container {}", id);
+            releaseAlias(dockerClient, id);
+            ContainerReaper.remove(dockerClient, id);
+        } else {
+            LOGGER.info("Stopping container {}", id);
+            final long killStarted = System.nanoTime();
+            boolean killed = false;
+            try {
+                dockerClient.killContainer(id);
+                killed = true;
+            } finally {
+                phaseCompleted(evaluation, LifecyclePhase.KILL, id, killStarted, killed);
             }
-        };
+
+            final long removeStarted = System.nanoTime();
+            boolean removed = false;
+            try {
+                dockerClient.removeContainer(id);
+                removed = true;
+            } finally {
+                phaseCompleted(evaluation, LifecyclePhase.REMOVE, id, removeStarted, removed);
+            }
+        }
+    }
+
+    /**
+     * @return the image name, or a description of the {@link DockerfileImage}, which remains the same once built
+     */
+    String getImage() {
+        return image;
+    }
+
+    /**
+     * @return the image to create the container from, which for a {@link DockerfileImage} is the built image
+     */
+    private String runImage() {
+        return builtImage != null ? builtImage : image;
+    }
+
+    PullPolicy getPullPolicy() {
+        return pullPolicy;
     }
 
-    private void handleWaitingForLog(String containerId, Semaphore ready) throws DockerException, InterruptedException {
-        final LogStream logStream = dockerClient.logs(containerId,
-                DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr(), DockerClient.LogsParam.follow());
+    /**
+     * @return the log captured since the container started or null if not enabled by {@link #captureLogs(int)}
+     */
+    public LogCapture getLogs() {
+        return current().logCapture;
+    }
 
-        LOGGER.debug("Waiting for log snippet '{}'", waitForLog);
+    /**
+     * @return the time the current evaluation of this rule waited for its container to be admitted within the host
+     * budget, which is 0 when no budget applies, see {@link #resources(ResourceProfile)}
+     */
+    public long getAdmissionWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(current().admissionWaitNanos);
+    }
 
-        new Thread(() -> {
+    /**
+     * @return the ID of the container started or attached to by the current evaluation of this rule
+     */
+    public String getContainerId() {
+        return current().containerId;
+    }
+
+    /**
+     * @return the client used to access the Docker daemon of the container, which is shared and must not be closed
+     */
+    public DockerClient getDockerClient() {
+        return current().dockerClient;
+    }
+
+    /**
+     * Creates and starts the container and waits for the container to be ready.
+     * @param pull true to first call {@link #pullImage(Evaluation)}
+     * @return the ID of the started container
+     */
+    private String startContainer(Evaluation evaluation, boolean pull) throws Exception {
+        if (pull) {
+            pullImage(evaluation);
+        }
+
+        final DockerClient dockerClient = evaluation.dockerClient;
+        String runImage = runImage();
+        String snapshotTag = null;
+        boolean fromSnapshot = false;
+        if (warmSnapshotVersion != null) {
+            snapshotTag = WarmSnapshots.tagFor(dockerClient.inspectImage(runImage).id(),
+                    parmeters, command, describeFixtures(),
+                    resources != null ? resources.toString() : null, warmSnapshotVersion);
+            final String snapshot = WarmSnapshots.find(dockerClient, snapshotTag);
+            if (snapshot != null) {
+                LOGGER.info("Starting from warm snapshot {}", snapshot);
+                runImage = snapshot;
+                fromSnapshot = true;
+            }
+        }
+
+        HostConfig.Builder hostConfigBuilder = HostConfig.builder();
+        hostConfigBuilder.publishAllPorts(evaluation.directNetwork == null);
+        if (network != null) {
+            hostConfigBuilder.networkMode(network.getName());
+        }
+        if (resources != null) {
+            resources.applyTo(hostConfigBuilder);
+        }
+
+        final Map<String, String> labels = ContainerLabels.forContainer(evaluation.description);
+        if (shareAcrossJvms) {
+            labels.putAll(CrossJvmContainers.labelsFor(reuseKey()));
+        }
+
+        ContainerConfig.Builder configBuilder = ContainerConfig.builder()
+                .image(runImage)
+                .labels(labels)
+                .hostConfig(hostConfigBuilder.build())
+                .env(parmeters)
+                .cmd(command);
+
+        final ContainerConfig containerConfig = configBuilder.build();
+        admit(evaluation);
+        final long createStarted = System.nanoTime();
+        final ContainerCreation container;
+        try {
+            if (network != null) {
+                DockerNetworks.ensureExists(dockerClient, evaluation.endpoint.uri(), network);
+            }
+            container = networkAlias != null ? dockerClient.createContainer(containerConfig, networkAlias)
+                    : dockerClient.createContainer(containerConfig);
+        } catch (Exception e) {
+            phaseCompleted(evaluation, LifecyclePhase.CREATE, null, createStarted, false);
+            releaseAdmission(evaluation);
+            throw e;
+        }
+        final String id = container.id();
+        phaseCompleted(evaluation, LifecyclePhase.CREATE, id, createStarted, true);
+        final ContainerEvents.Tracker startTracker = ContainerEvents.track(evaluation.endpoint, dockerClient, id);
+
+        LOGGER.info("Starting container {}", id);
+
+        LifecyclePhase phase = LifecyclePhase.START;
+        long phaseStarted = System.nanoTime();
+        try {
+            if (!fixtures.isEmpty()) {
+                phase = LifecyclePhase.COPY;
+                copyFixtures(dockerClient, id);
+                phaseCompleted(evaluation, phase, id, phaseStarted, true);
+                phase = LifecyclePhase.START;
+                phaseStarted = System.nanoTime();
+            }
+            dockerClient.startContainer(id);
+            if (logCaptureCapacity > 0) {
+                evaluation.logCapture = LogCapture.follow(dockerClient, id, logCaptureCapacity);
+            }
+
+            evaluation.portBindings = portBindings(evaluation, dockerClient.inspectContainer(id));
+            phaseCompleted(evaluation, phase, id, phaseStarted, true);
+
+            phase = LifecyclePhase.READY;
+            phaseStarted = System.nanoTime();
+            awaitReadiness(readinessProbe(), dockerClient, id, evaluation.portBindings, startTracker);
+            phaseCompleted(evaluation, phase, id, phaseStarted, true);
+            phase = null;
+
+            if (initializer != null && !fromSnapshot) {
+                evaluation.containerId = id;
+                initializer.initialize(this);
+            }
+            if (snapshotTag != null && !fromSnapshot) {
+                WarmSnapshots.commit(dockerClient, id, snapshotTag, containerConfig);
+            }
+        } catch (Exception | Error e) {
+            if (phase != null) {
+                phaseCompleted(evaluation, phase, id, phaseStarted, false);
+            }
+            dumpLogs(evaluation, id, e);
+            if (startTracker != null) {
+                startTracker.close();
+            }
+            if (!leaveRunning) {
+                removeFailed(dockerClient, id, e);
+            }
+            releaseAdmission(evaluation);
+            throw e;
+        }
+
+        evaluation.tracker = startTracker;
+        return id;
+    }
+
+    /**
+     * Waits for the expected resources of the container to fit within the host budget, if one is configured.
+     */
+    private void admit(Evaluation evaluation) throws InterruptedException {
+        final AdmissionControl admissionControl = AdmissionControl.global();
+        if (admissionControl == null || resources == null) {
+            return;
+        }
+        final long memory = resources.admissionMemory();
+        final double cpus = resources.admissionCpus();
+        if (memory <= 0 && cpus <= 0) {
+            return;
+        }
+
+        final long started = System.nanoTime();
+        AdmissionControl.Permit permit = null;
+        try {
+            permit = admissionControl.acquire(memory, cpus);
+        } finally {
+            evaluation.admissionWaitNanos = System.nanoTime() - started;
+            phaseCompleted(evaluation, LifecyclePhase.ADMISSION, null, started, permit != null);
+        }
+        if (permit == null) {
+            Assert.fail(String.format("Docker container of %s was not admitted within %d ms with %s",
+                    image, admissionControl.getTimeoutMillis(), admissionControl));
+        }
+        LOGGER.debug("Admitted container of {} after {} ms", image,
+                TimeUnit.NANOSECONDS.toMillis(evaluation.admissionWaitNanos));
+        evaluation.permit = permit;
+    }
+
+    private static void releaseAdmission(Evaluation evaluation) {
+        if (evaluation.permit != null) {
+            evaluation.permit.release();
+            evaluation.permit = null;
+        }
+    }
+
+    /**
+     * Removes a container that failed to start, in the background when {@link #asyncTeardown(boolean)} is enabled.
+     * Failures to remove are attached to the start failure rather than replacing it.
+     */
+    private void removeFailed(DockerClient dockerClient, String id, Throwable failure) {
+        if (asyncTeardown) {
+            LOGGER.info("Queueing removal of container {} that failed to start", id);
+            releaseAlias(dockerClient, id);
+            ContainerReaper.remove(dockerClient, id);
+            return;
+        }
+        LOGGER.info("Removing container {} that failed to start", id);
+        try {
+            dockerClient.removeContainer(id,
+                    DockerClient.RemoveContainerParam.forceKill(),
+                    DockerClient.RemoveContainerParam.removeVolumes());
+        } catch (DockerException e) {
+            failure.addSuppressed(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Renames a container named by its {@link #networkAlias(String)} before removing it in the background,
+     * so that the next container can take the name right away.
+     */
+    private void releaseAlias(DockerClient dockerClient, String id) {
+        if (networkAlias == null) {
+            return;
+        }
+        try {
+            dockerClient.renameContainer(id, networkAlias + "-removed-" + id.substring(0, Math.min(12, id.length())));
+        } catch (DockerException e) {
+            LOGGER.warn("Failed to release the name {} of container {}", networkAlias, id, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void copyFixtures(DockerClient dockerClient, String id)
+            throws DockerException, InterruptedException, IOException {
+        for (FixtureCopy copy : fixtures) {
+            LOGGER.debug("Copying {} into container {}", copy, id);
+            dockerClient.copyToContainer(copy.fixture.directory(), id, copy.containerPath);
+        }
+    }
+
+    private void dumpLogs(Evaluation evaluation, String id, Throwable failure) {
+        final LogCapture logCapture = evaluation.logCapture;
+        if (logCapture == null || failure instanceof AssumptionViolatedException) {
+            return;
+        }
+
+        final String name = (evaluation.description != null ? evaluation.description : image).replaceAll("[^A-Za-z0-9._-]+", "_");
+        final Path file = Paths.get(System.getProperty("dockerRule.logDumpDir", "target/docker-logs"),
+                name + "-" + (id != null ? id.substring(0, Math.min(12, id.length())) : "unknown") + ".log");
+        try {
+            logCapture.dump(file);
+            LOGGER.info("Wrote log of container {} to {}", id, file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write log of container {} to {}", id, file, e);
+        }
+    }
+
+    /**
+     * Reports a phase of the current evaluation, such as one performed by a {@link DockerResetRule}.
+     */
+    void phaseCompleted(LifecyclePhase phase, String containerId, long startNanos, boolean successful) {
+        phaseCompleted(current(), phase, containerId, startNanos, successful);
+    }
+
+    private void phaseCompleted(Evaluation evaluation, LifecyclePhase phase, String containerId, long startNanos,
+                                boolean successful) {
+        final TimingReport timingReport = TimingReport.global();
+        if (lifecycleListeners.isEmpty() && timingReport == null) {
+            return;
+        }
+
+        final LifecycleEvent event = new LifecycleEvent(phase, image, containerId, evaluation.description,
+                System.nanoTime() - startNanos, successful);
+        if (timingReport != null) {
+            timingReport.phaseCompleted(event);
+        }
+        for (LifecycleListener listener : lifecycleListeners) {
             try {
-                while (logStream.hasNext()) {
-                    final LogMessage msg = logStream.next();
-
-                    final String logStr = StandardCharsets.UTF_8.decode(msg.content()).toString();
-                    LOGGER.debug("CONTAINER: {}", logStr);
-                    if (logStr.contains(waitForLog)) {
-                        ready.release();
-                        return;
-                    }
-                }
-            } finally {
-                logStream.close();
+                listener.phaseCompleted(event);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Lifecycle listener {} failed", listener, e);
+            }
+        }
+    }
+
+    /**
+     * Runs the probes that are not part of the {@link #reuseKey()} against a shared container started by another
+     * rule, since that rule may not have declared them. The shared container is released if they fail.
+     */
+    private void awaitAttachedReadiness(Evaluation evaluation) throws DockerException, InterruptedException {
+        final List<ReadinessProbe> undescribed = new ArrayList<>();
+        for (ReadinessProbe probe : readinessProbes) {
+            if (ReadinessProbes.describe(probe) == null) {
+                undescribed.add(probe);
+            }
+        }
+        if (undescribed.isEmpty()) {
+            return;
+        }
+
+        boolean ready = false;
+        try {
+            awaitReadiness(ReadinessProbes.allOf(undescribed), evaluation.dockerClient, evaluation.containerId,
+                    evaluation.portBindings, evaluation.tracker);
+            ready = true;
+        } finally {
+            if (!ready) {
+                evaluation.tracker.close();
+                evaluation.tracker = null;
+                SharedContainers.release(evaluation.sharedEntry);
+                evaluation.sharedEntry = null;
+            }
+        }
+    }
+
+    private void awaitReadiness(ReadinessProbe probe, DockerClient dockerClient, String containerId,
+                                PortBindings portBindings, ContainerEvents.Tracker tracker)
+            throws DockerException, InterruptedException {
+        if (probe == null) {
+            return;
+        }
+
+        final ReadinessContext context = new ReadinessContext(dockerClient, containerId, portBindings, tracker);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readinessTimeout);
+        // stop waiting as soon as the container exits
+        final Thread waiter = Thread.currentThread();
+        final Runnable interrupter = waiter::interrupt;
+        if (tracker != null) {
+            tracker.addExitListener(interrupter);
+        }
+        final boolean ready;
+        try {
+            ready = context.run(probe, deadline);
+        } catch (DockerException | InterruptedException e) {
+            throwIfExited(tracker);
+            throw e;
+        } catch (Exception e) {
+            throwIfExited(tracker);
+            throw new AssertionError(String.format("Docker container %s could not become ready:%s",
+                    containerId, context.report()), e);
+        } finally {
+            if (tracker != null) {
+                tracker.removeExitListener(interrupter);
+            }
+        }
+        throwIfExited(tracker);
+
+        if (!ready) {
+            Assert.fail(String.format("Docker container %s was not ready within %d ms:%s",
+                    containerId, readinessTimeout, context.report()));
+        }
+    }
+
+    private static void throwIfExited(ContainerEvents.Tracker tracker) throws ContainerExitedException {
+        if (tracker != null && tracker.hasExited()) {
+            // clear the interrupt used to stop waiting
+            Thread.interrupted();
+            throw tracker.exitedException();
+        }
+    }
+
+    /**
+     * @return the combination of the log condition and other readiness probes or null if there are none
+     */
+    private ReadinessProbe readinessProbe() {
+        final List<ReadinessProbe> probes = new ArrayList<>(readinessProbes.size() + 1);
+        if (waitForLog != null) {
+            probes.add(ReadinessProbes.log(waitForLog));
+        }
+        probes.addAll(readinessProbes);
+
+        if (probes.isEmpty()) {
+            return null;
+        }
+        return probes.size() == 1 ? probes.get(0) : ReadinessProbes.allOf(probes);
+    }
+
+    /**
+     * Computes the key used to identify equivalently configured containers when {@link #reuseContainer(boolean)}
+     * is enabled.
+     * @return a hash of the image, parameters, command, wait conditions, fixture content, network, and Docker
+     * endpoint
+     */
+    String reuseKey() throws IOException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        putField(hasher, runImage());
+        putField(hasher, parmeters);
+        putField(hasher, command);
+        putField(hasher, waitForLog != null ? waitForLog.toString() : null);
+        // other probes, such as lambdas, have no stable description, so they run again when attaching instead
+        putField(hasher, readinessProbes.stream().map(ReadinessProbes::describe).filter(Objects::nonNull)
+                .toArray(String[]::new));
+        putField(hasher, String.valueOf(readinessTimeout));
+        putField(hasher, uri);
+        putField(hasher, dockerCertPath != null ? dockerCertPath.toAbsolutePath().toString() : null);
+        putField(hasher, warmSnapshotVersion);
+        putField(hasher, resources != null ? resources.toString() : null);
+        putField(hasher, describeFixtures());
+        putField(hasher, network != null ? network.toString() : null, networkAlias);
+        return hasher.hash().toString();
+    }
+
+    private String[] describeFixtures() throws IOException {
+        final String[] descriptions = new String[fixtures.size()];
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = fixtures.get(i).describe();
+        }
+        return descriptions;
+    }
+
+    /**
+     * Adds the relative path, executable flag, and content of every regular file under the directory, in
+     * sorted order, to the hash.
+     */
+    static void putTree(Hasher hasher, Path directory) throws IOException {
+        final List<String> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile)
+                    .map(file -> directory.relativize(file).toString().replace('\\', '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        for (String relative : files) {
+            final Path file = directory.resolve(relative);
+            putField(hasher, relative, String.valueOf(Files.isExecutable(file)));
+            hasher.putLong(Files.size(file));
+            try (InputStream in = Files.newInputStream(file)) {
+                ByteStreams.copy(in, Funnels.asOutputStream(hasher));
             }
-        }).start();
+        }
+    }
 
-        if (!ready.tryAcquire(waitForLogTimeout, TimeUnit.MILLISECONDS)) {
-            Assert.fail(String.format(
-                    "Did not observe desired Docker container log snippet within %d ms",
-                    waitForLogTimeout));
+    static void putField(Hasher hasher, String... values) {
+        if (values == null) {
+            hasher.putInt(-1);
+            return;
+        }
+        hasher.putInt(values.length);
+        for (String value : values) {
+            if (value == null) {
+                hasher.putInt(-1);
+            } else {
+                hasher.putInt(value.length());
+                hasher.putString(value, StandardCharsets.UTF_8);
+            }
         }
     }
 
     /**
-     * Obtains the access information for the requested containerPort
+     * Obtains the access information for the requested containerPort. The published ports are
+     * captured once the container has started, so this does not contact the Docker daemon.
+     * When the container is accessed directly on its {@link #network(DockerNetwork)}, this is the address of the
+     * container on the network and the given port.
      * @param containerPort the port to locate according to the <code>EXPOSE</code>d/internal container port
-     * @return a socket address populated with external host and port of the container
+     * @return a socket address populated with external host and port of the container or null if the
+     * TCP port is not published
      * @throws DockerException if an issue occurred containing the Docker daemon
      * @throws InterruptedException if interrupted while contacting the Docker daemon
      */
     public InetSocketAddress getAccessToPort(int containerPort) throws DockerException, InterruptedException {
-        ContainerInfo containerInfo = dockerClient.inspectContainer(container.id());
+        return portBindings(current()).tcp(containerPort);
+    }
+
+    /**
+     * Obtains the access information for the requested UDP containerPort.
+     * @param containerPort the port to locate according to the <code>EXPOSE</code>d/internal container port
+     * @return a socket address populated with external host and port of the container or null if the
+     * UDP port is not published
+     * @throws DockerException if an issue occurred containing the Docker daemon
+     * @throws InterruptedException if interrupted while contacting the Docker daemon
+     */
+    public InetSocketAddress getAccessToUdpPort(int containerPort) throws DockerException, InterruptedException {
+        return portBindings(current()).udp(containerPort);
+    }
 
-        NetworkSettings networkSettings = containerInfo.networkSettings();
+    /**
+     * Re-reads the published ports of the container, such as after the container was restarted
+     * or otherwise had its port bindings changed.
+     * @throws DockerException if an issue occurred containing the Docker daemon
+     * @throws InterruptedException if interrupted while contacting the Docker daemon
+     */
+    public void refreshPortBindings() throws DockerException, InterruptedException {
+        refreshPortBindings(current());
+    }
 
-        List<PortBinding> portBindings = networkSettings.ports().get(String.format("%d/tcp", containerPort));
-        if (portBindings != null && !portBindings.isEmpty()) {
-            PortBinding portBinding = portBindings.get(0);
+    private static void refreshPortBindings(Evaluation evaluation) throws DockerException, InterruptedException {
+        evaluation.portBindings = portBindings(evaluation,
+                evaluation.dockerClient.inspectContainer(evaluation.containerId));
+    }
 
-            return new InetSocketAddress(dockerClient.getHost(), Integer.parseInt(portBinding.hostPort()));
+    private static PortBindings portBindings(Evaluation evaluation, ContainerInfo containerInfo) {
+        final NetworkSettings networkSettings = containerInfo.networkSettings();
+        if (evaluation.directNetwork != null) {
+            final AttachedNetwork attached = networkSettings.networks() != null ?
+                    networkSettings.networks().get(evaluation.directNetwork) : null;
+            if (attached != null && attached.ipAddress() != null && !attached.ipAddress().isEmpty()) {
+                return PortBindings.direct(attached.ipAddress(), containerInfo.config().exposedPorts());
+            }
+            LOGGER.warn("Container {} has no address on network {}", containerInfo.id(), evaluation.directNetwork);
         }
-        else {
-            return null;
+        return PortBindings.from(evaluation.dockerClient.getHost(), networkSettings.ports());
+    }
+
+    private static PortBindings portBindings(Evaluation evaluation) throws DockerException, InterruptedException {
+        if (evaluation.portBindings == null) {
+            refreshPortBindings(evaluation);
         }
+        return evaluation.portBindings;
     }
 
     /**
@@ -336,6 +1327,6 @@ public class DockerRule implements TestRule {
     public HostAndPort getHostAndPort(int containerPort) throws DockerException, InterruptedException {
         final InetSocketAddress socketAddress = getAccessToPort(containerPort);
 
-        return HostAndPort.fromParts(socketAddress.getHostName(), socketAddress.getPort());
+        return HostAndPort.fromParts(socketAddress.getHostString(), socketAddress.getPort());
     }
 }
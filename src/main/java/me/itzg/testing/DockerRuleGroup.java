@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A JUnit rule that manages several {@link DockerRule}s together, starting them concurrently
+ * while honoring declared dependencies. All images are pulled concurrently, containers without
+ * unmet dependencies start in parallel, and a container starts as soon as the containers it depends
+ * on are ready. Startup therefore takes about as long as the longest chain of dependencies
+ * rather than the sum of every container's startup.
+ *
+ * <p>The following is an example use as a class rule:</p>
+ *
+ * <pre>
+ *     public class PipelineTest {
+ *         &#64;ClassRule
+ *         public static DockerRuleGroup containers = new DockerRuleGroup()
+ *             .add("zookeeper", new DockerRule("zookeeper:3.4").waitForLog("binding to port"))
+ *             .add("kafka", new DockerRule("wurstmeister/kafka").waitForLog("started (kafka.server"), "zookeeper")
+ *             .add("postgres", new DockerRule("postgres:9.6").waitForLog("ready to accept connections"));
+ *
+ *         &#64;Test
+ *         public void someTest() {
+ *             InetSocketAddress postgres = containers.get("postgres").getAccessToPort(5432);
+ *             ...
+ * </pre>
+ *
+ * <p>Containers are stopped in reverse dependency order after the test.</p>
+ *
+ * @since 1.4
+ */
+public class DockerRuleGroup implements TestRule {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerRuleGroup.class);
+
+    private final Map<String, Member> members = new LinkedHashMap<>();
+
+    private static class Member {
+        final String name;
+        final DockerRule rule;
+        final List<String> dependsOn;
+
+        Member(String name, DockerRule rule, List<String> dependsOn) {
+            this.name = name;
+            this.rule = rule;
+            this.dependsOn = dependsOn;
+        }
+    }
+
+    /**
+     * Adds a container to the group.
+     * @param name the name used to declare dependencies on this container and to {@link #get(String)} it
+     * @param rule the configured rule of the container
+     * @param dependsOn the names of containers that must be ready before this one is started
+     * @return this for chaining
+     */
+    public DockerRuleGroup add(String name, DockerRule rule, String... dependsOn) {
+        if (members.containsKey(name)) {
+            throw new IllegalArgumentException("A container named " + name + " was already added");
+        }
+        members.put(name, new Member(name, rule, Arrays.asList(dependsOn)));
+        return this;
+    }
+
+    /**
+     * @param name the name given to {@link #add(String, DockerRule, String...)}
+     * @return the rule of the named container, such as for calling {@link DockerRule#getAccessToPort(int)}
+     */
+    public DockerRule get(String name) {
+        final Member member = members.get(name);
+        if (member == null) {
+            throw new IllegalArgumentException("No container named " + name);
+        }
+        return member.rule;
+    }
+
+    /**
+     * @return the rules of all containers in the group, in the order added
+     */
+    List<DockerRule> rules() {
+        final List<DockerRule> rules = new ArrayList<>(members.size());
+        for (Member member : members.values()) {
+            rules.add(member.rule);
+        }
+        return rules;
+    }
+
+    @Override
+    public Statement apply(Statement statement, Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final List<Member> startOrder = startOrder();
+
+                final Map<Member, DockerRule.Evaluation> evaluations = new HashMap<>();
+                for (Member member : startOrder) {
+                    evaluations.put(member, member.rule.connect(description.getDisplayName()));
+                }
+
+                final List<Member> started = Collections.synchronizedList(new ArrayList<>());
+                final ExecutorService executor = Executors.newCachedThreadPool(new GroupThreadFactory());
+                try {
+                    startAll(startOrder, evaluations, started, executor);
+                } catch (Throwable e) {
+                    stopAll(evaluations, started);
+                    throw e;
+                } finally {
+                    executor.shutdown();
+                }
+
+                for (Member member : startOrder) {
+                    member.rule.bind(evaluations.get(member));
+                }
+                try {
+                    statement.evaluate();
+                } finally {
+                    stopAll(evaluations, started);
+                    for (Member member : startOrder) {
+                        member.rule.unbind();
+                    }
+                }
+            }
+        };
+    }
+
+    private static String pullKey(Member member, Map<Member, DockerRule.Evaluation> evaluations) {
+        return evaluations.get(member).endpoint() + "|" + member.rule.getImage();
+    }
+
+    private void startAll(List<Member> startOrder, Map<Member, DockerRule.Evaluation> evaluations,
+                          List<Member> started, ExecutorService executor) throws Throwable {
+        // members on different daemons each need the image on their own daemon
+        final Map<String, CompletableFuture<Void>> pulls = new HashMap<>();
+        for (Member member : startOrder) {
+            pulls.computeIfAbsent(pullKey(member, evaluations), key -> CompletableFuture.runAsync(() -> {
+                try {
+                    member.rule.pullImage(evaluations.get(member));
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        final Map<String, CompletableFuture<Void>> readiness = new HashMap<>();
+        for (Member member : startOrder) {
+            final List<CompletableFuture<Void>> prerequisites = new ArrayList<>();
+            prerequisites.add(pulls.get(pullKey(member, evaluations)));
+            for (String dependency : member.dependsOn) {
+                prerequisites.add(readiness.get(dependency));
+            }
+
+            readiness.put(member.name, CompletableFuture
+                    .allOf(prerequisites.toArray(new CompletableFuture<?>[prerequisites.size()]))
+                    .thenRunAsync(() -> {
+                        LOGGER.debug("Starting container {}", member.name);
+                        try {
+                            member.rule.start(evaluations.get(member), false);
+                        } catch (Throwable e) {
+                            throw new CompletionException(e);
+                        }
+                        started.add(member);
+                        LOGGER.info("Container {} is ready", member.name);
+                    }, executor));
+        }
+
+        try {
+            // allOf completes only after every container has either started or failed,
+            // so the caller can stop all of the started ones upon failure
+            CompletableFuture.allOf(readiness.values().toArray(new CompletableFuture<?>[readiness.size()])).get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private void stopAll(Map<Member, DockerRule.Evaluation> evaluations, List<Member> started) {
+        final List<Member> stopOrder = startOrder();
+        Collections.reverse(stopOrder);
+        for (Member member : stopOrder) {
+            if (started.remove(member)) {
+                try {
+                    member.rule.stop(evaluations.get(member));
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to stop container {}", member.name, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the members ordered such that each follows all of its dependencies
+     */
+    private List<Member> startOrder() {
+        final List<Member> ordered = new ArrayList<>(members.size());
+        final Set<String> visited = new HashSet<>();
+        final Set<String> visiting = new HashSet<>();
+        for (Member member : members.values()) {
+            visit(member, visited, visiting, ordered);
+        }
+        return ordered;
+    }
+
+    private void visit(Member member, Set<String> visited, Set<String> visiting, List<Member> ordered) {
+        if (visited.contains(member.name)) {
+            return;
+        }
+        if (!visiting.add(member.name)) {
+            throw new IllegalStateException("Dependency cycle involving container " + member.name);
+        }
+        for (String dependency : member.dependsOn) {
+            final Member prerequisite = members.get(dependency);
+            if (prerequisite == null) {
+                throw new IllegalStateException(
+                        "Container " + member.name + " depends on unknown container " + dependency);
+            }
+            visit(prerequisite, visited, visiting, ordered);
+        }
+        visiting.remove(member.name);
+        visited.add(member.name);
+        ordered.add(member);
+    }
+
+    private static class GroupThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "docker-rule-group-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Declares an image built from a Dockerfile for {@link DockerRule#DockerRule(DockerfileImage)}.
+ * The built image is tagged by a hash of the Dockerfile name and every file in the build context, so
+ * the build is skipped entirely when an image with the same hash already exists on the daemon.
+ *
+ * <p>The following builds <code>src/test/docker/Dockerfile</code> the first time it is needed and after
+ * any file in that directory changes:</p>
+ * <pre>
+ *     &#64;ClassRule
+ *     public static DockerRule dockerRule = new DockerRule(
+ *         new DockerfileImage(Paths.get("src/test/docker")));
+ * </pre>
+ *
+ * @since 1.4
+ */
+public class DockerfileImage {
+    static final String DEFAULT_REPOSITORY = "junit-rule-docker-build";
+
+    private final Path contextDirectory;
+    private String dockerfile = "Dockerfile";
+    private String repository = DEFAULT_REPOSITORY;
+
+    /**
+     * @param contextDirectory the directory sent to the daemon as the build context
+     */
+    public DockerfileImage(Path contextDirectory) {
+        this.contextDirectory = contextDirectory;
+    }
+
+    /**
+     * @param dockerfile the path of the Dockerfile relative to the context directory,
+     *                   <code>Dockerfile</code> by default
+     * @return this for chaining
+     */
+    public DockerfileImage dockerfile(String dockerfile) {
+        this.dockerfile = dockerfile;
+        return this;
+    }
+
+    /**
+     * @param repository the repository of the built image, which is tagged by the context hash,
+     *                   <code>{@value #DEFAULT_REPOSITORY}</code> by default
+     * @return this for chaining
+     */
+    public DockerfileImage repository(String repository) {
+        this.repository = repository;
+        return this;
+    }
+
+    Path getContextDirectory() {
+        return contextDirectory;
+    }
+
+    String getDockerfile() {
+        return dockerfile;
+    }
+
+    /**
+     * Hashes the relative path, executable bit, and content of every regular file in the context along with
+     * the Dockerfile name. Modification times are not included, so a fresh checkout hashes the same.
+     * Files excluded by a <code>.dockerignore</code> are still hashed, which can only cause an extra build.
+     *
+     * @return the image reference to build or reuse
+     */
+    String reference() throws IOException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        DockerRule.putField(hasher, dockerfile);
+        DockerRule.putTree(hasher, contextDirectory);
+        return repository + ":" + hasher.hash().toString().substring(0, 32);
+    }
+
+    @Override
+    public String toString() {
+        return contextDirectory.resolve(dockerfile).toString();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Indicates that endpoints did not become ready within the configured timeout.
+ *
+ * @since 1.4
+ */
+public class EndpointNotReadyException extends IOException {
+    private final List<EndpointStatus> statuses;
+
+    EndpointNotReadyException(List<EndpointStatus> statuses) {
+        super("Endpoints were not ready: " + statuses);
+        this.statuses = statuses;
+    }
+
+    /**
+     * @return the outcome of each endpoint that was waited on
+     */
+    public List<EndpointStatus> getStatuses() {
+        return statuses;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import java.net.URL;
+
+/**
+ * Reports the outcome of waiting on one endpoint with {@link HttpAssert#waitForAllEndpoints(EndpointWaitOptions, URL...)}
+ * or {@link HttpAssert#waitForAnyEndpoint(EndpointWaitOptions, URL...)}.
+ *
+ * @since 1.4
+ */
+public final class EndpointStatus {
+    private final URL url;
+    private final boolean ready;
+    private final int attempts;
+    private final long elapsedMillis;
+    private final int lastResponseCode;
+    private final Throwable lastFailure;
+
+    EndpointStatus(URL url, boolean ready, int attempts, long elapsedMillis, int lastResponseCode, Throwable lastFailure) {
+        this.url = url;
+        this.ready = ready;
+        this.attempts = attempts;
+        this.elapsedMillis = elapsedMillis;
+        this.lastResponseCode = lastResponseCode;
+        this.lastFailure = lastFailure;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * @return true if the endpoint responded with the expected code
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return milliseconds from the start of waiting until the endpoint was ready or waiting stopped
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the most recent response code received or -1 if no response was received
+     */
+    public int getLastResponseCode() {
+        return lastResponseCode;
+    }
+
+    /**
+     * @return the failure of the most recent attempt that did not receive a response, if any
+     */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder()
+                .append(url).append(ready ? " ready" : " not ready")
+                .append(" after ").append(elapsedMillis).append(" ms and ")
+                .append(attempts).append(attempts == 1 ? " attempt" : " attempts");
+        if (!ready) {
+            if (lastResponseCode >= 0) {
+                sb.append(", last response code ").append(lastResponseCode);
+            }
+            if (lastFailure != null) {
+                sb.append(", last failure ").append(lastFailure);
+            }
+        }
+        return sb.toString();
+    }
+}
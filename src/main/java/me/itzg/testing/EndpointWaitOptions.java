@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+/**
+ * Configures how {@link HttpAssert#waitForAllEndpoints(EndpointWaitOptions, java.net.URL...)} and
+ * {@link HttpAssert#waitForAnyEndpoint(EndpointWaitOptions, java.net.URL...)} probe endpoints.
+ * Failed attempts are retried with exponential backoff, where each delay is randomized between half
+ * and all of the current backoff so that many waiters don't probe in lockstep.
+ *
+ * @since 1.4
+ */
+public class EndpointWaitOptions {
+    public static final int DEFAULT_EXPECTED_RESPONSE_CODE = 200;
+    public static final long DEFAULT_ATTEMPT_TIMEOUT = 2000;
+    public static final long DEFAULT_INITIAL_BACKOFF = 50;
+    public static final long DEFAULT_MAX_BACKOFF = 2000;
+    public static final long DEFAULT_TIMEOUT = 60000;
+
+    private int expectedResponseCode = DEFAULT_EXPECTED_RESPONSE_CODE;
+    private long attemptTimeout = DEFAULT_ATTEMPT_TIMEOUT;
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    private long timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * @param expectedResponseCode the HTTP response code that indicates the endpoint is ready.
+     *                             The default is {@value #DEFAULT_EXPECTED_RESPONSE_CODE}.
+     * @return this for chaining
+     */
+    public EndpointWaitOptions expectedResponseCode(int expectedResponseCode) {
+        this.expectedResponseCode = expectedResponseCode;
+        return this;
+    }
+
+    /**
+     * @param attemptTimeout the time in milliseconds allowed for each attempt to connect and receive a response.
+     *                       The default is {@value #DEFAULT_ATTEMPT_TIMEOUT}.
+     * @return this for chaining
+     */
+    public EndpointWaitOptions attemptTimeout(long attemptTimeout) {
+        this.attemptTimeout = attemptTimeout;
+        return this;
+    }
+
+    /**
+     * @param initialBackoff the delay in milliseconds after the first failed attempt, which doubles after each
+     *                       subsequent failure. The default is {@value #DEFAULT_INITIAL_BACKOFF}.
+     * @return this for chaining
+     */
+    public EndpointWaitOptions initialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+        return this;
+    }
+
+    /**
+     * @param maxBackoff the limit in milliseconds of the delay between attempts.
+     *                   The default is {@value #DEFAULT_MAX_BACKOFF}.
+     * @return this for chaining
+     */
+    public EndpointWaitOptions maxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+        return this;
+    }
+
+    /**
+     * @param timeout the overall time in milliseconds to wait for the endpoints.
+     *                The default is {@value #DEFAULT_TIMEOUT}.
+     * @return this for chaining
+     */
+    public EndpointWaitOptions timeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public int getExpectedResponseCode() {
+        return expectedResponseCode;
+    }
+
+    public long getAttemptTimeout() {
+        return attemptTimeout;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.itzg.testing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exclusive locks on files in the share directory, coordinating this JVM with the others on the host.
+ * With POSIX record locks, closing any channel to a file releases every lock the JVM holds on that file, so
+ * a file this JVM has locked must never be opened a second time, not even to check whether it is locked.
+ * This class keeps the registry of the files locked by this JVM and never opens those files again until
+ * their lock is closed. Threads of this JVM wanting the same file wait for each other.
+ *
+ * @since 1.4
+ */
+class FileLocks {
+    private static final Set<Path> HELD = new HashSet<>();
+
+    /**
+     * A lock held by this JVM, released along with its channel when closed.
+     */
+    static class Lock implements AutoCloseable {
+        private final Path path;
+        private final FileChannel channel;
+
+        private Lock(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        /**
+         * Replaces the content of the locked file, which must not be written through any other channel.
+         */
+        void write(String content) throws IOException {
+            channel.truncate(0);
+            final ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                synchronized (HELD) {
+                    HELD.remove(path);
+                    HELD.notifyAll();
+                }
+            }
+        }
+    }
+
+    private FileLocks() {
+    }
+
+    /**
+     * Locks the file, waiting for other threads of this JVM and other JVMs holding it.
+     * @param options how to open the file, in addition to {@link StandardOpenOption#WRITE}
+     */
+    static Lock lock(Path file, OpenOption... options) throws IOException, InterruptedException {
+        final Path path = file.toAbsolutePath().normalize();
+        synchronized (HELD) {
+            while (!HELD.add(path)) {
+                HELD.wait();
+            }
+        }
+        return open(path, true, options);
+    }
+
+    /**
+     * Locks the existing file if neither this JVM nor another holds it.
+     * @return the lock or null if the file is held
+     */
+    static Lock tryLock(Path file) throws IOException {
+        final Path path = file.toAbsolutePath().normalize();
+        synchronized (HELD) {
+            if (!HELD.add(path)) {
+                return null;
+            }
+        }
+        return open(path, false);
+    }
+
+    private static Lock open(Path path, boolean wait, OpenOption... options) throws IOException {
+        final Set<OpenOption> openOptions = new HashSet<>();
+        openOptions.add(StandardOpenOption.WRITE);
+        for (OpenOption option : options) {
+            openOptions.add(option);
+        }
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, openOptions);
+            final FileLock lock = wait ? channel.lock() : channel.tryLock();
+            if (lock != null) {
+                return new Lock(path, channel);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            try {
+                release(path, channel);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        release(path, channel);
+        return null;
+    }
+
+    private static void release(Path path, FileChannel channel) throws IOException {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            synchronized (HELD) {
+                HELD.remove(path);
+                HELD.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * A source of files copied into the container by {@link DockerRule#fixture(Fixture, String)} after it is
+ * created and before it starts, such as the scripts and data files of an image that loads its data from an
+ * init directory.
+ *
+ * <p>Docker only accepts the files as a tar archive, which the Docker client builds from a directory.
+ * Classpath resources within a jar and archives are therefore extracted to a temporary directory the first
+ * time they are copied, which is reused by later copies of the same fixture and deleted when the JVM exits.</p>
+ *
+ * @since 1.4
+ */
+public abstract class Fixture {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Fixture.class);
+
+    private Path staged;
+
+    private Fixture() {
+    }
+
+    /**
+     * @param directory a directory whose content is copied
+     * @return the fixture
+     */
+    public static Fixture directory(Path directory) {
+        return new Fixture() {
+            @Override
+            Path stage(Path target) {
+                return directory;
+            }
+
+            @Override
+            public String toString() {
+                return "directory " + directory;
+            }
+        };
+    }
+
+    /**
+     * @param resource the name of a classpath resource, which may be a directory, whose content is copied,
+     *                 or a single file, which is copied by name
+     * @return the fixture
+     */
+    public static Fixture classpath(String resource) {
+        return new Fixture() {
+            @Override
+            Path stage(Path target) throws IOException {
+                return stageResource(resource, target);
+            }
+
+            @Override
+            public String toString() {
+                return "classpath " + resource;
+            }
+        };
+    }
+
+    /**
+     * @param archive a tar, optionally gzipped, or zip archive whose entries are copied
+     * @return the fixture
+     */
+    public static Fixture archive(Path archive) {
+        return new Fixture() {
+            @Override
+            Path stage(Path target) throws IOException {
+                try (ArchiveInputStream in = openArchive(archive)) {
+                    extract(in, target);
+                }
+                LOGGER.debug("Extracted {} to {}", archive, target);
+                return target;
+            }
+
+            @Override
+            public String toString() {
+                return "archive " + archive;
+            }
+        };
+    }
+
+    /**
+     * Prepares the directory whose content is copied into the container.
+     * @param target an empty temporary directory that may be populated and returned
+     * @return the directory to copy
+     */
+    abstract Path stage(Path target) throws IOException;
+
+    /**
+     * @return the directory to copy, staging it the first time
+     */
+    synchronized Path directory() throws IOException {
+        if (staged == null) {
+            final Path target = Files.createTempDirectory("junit-rule-docker-fixture");
+            final Path result = stage(target);
+            if (!result.equals(target)) {
+                delete(target);
+            } else {
+                LOGGER.debug("Staged {} in {}", this, target);
+                ShutdownTasks.register(ShutdownTasks.ORDER_FILES, "delete staged " + this, () -> {
+                    try {
+                        delete(target);
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to delete {}", target, e);
+                    }
+                });
+            }
+            staged = result;
+        }
+        return staged;
+    }
+
+    private static Path stageResource(String resource, Path target) throws IOException {
+        final String name = resource.startsWith("/") ? resource.substring(1) : resource;
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = Fixture.class.getClassLoader();
+        }
+        final URL url = classLoader.getResource(name);
+        if (url == null) {
+            throw new IOException("Classpath resource " + resource + " was not found");
+        }
+
+        if (url.getProtocol().equals("file")) {
+            final Path path;
+            try {
+                path = Paths.get(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Unable to locate " + url, e);
+            }
+            if (Files.isDirectory(path)) {
+                return path;
+            }
+            Files.copy(path, target.resolve(path.getFileName().toString()));
+            return target;
+        }
+
+        if (url.getProtocol().equals("jar")) {
+            final JarURLConnection connection = (JarURLConnection) url.openConnection();
+            connection.setUseCaches(false);
+            try (JarFile jarFile = connection.getJarFile()) {
+                final String entryName = connection.getEntryName();
+                final JarEntry entry = jarFile.getJarEntry(entryName);
+                if (entry != null && !entry.isDirectory()) {
+                    try (InputStream in = jarFile.getInputStream(entry)) {
+                        Files.copy(in, target.resolve(entryName.substring(entryName.lastIndexOf('/') + 1)));
+                    }
+                    return target;
+                }
+
+                final String prefix = entryName.endsWith("/") ? entryName : entryName + "/";
+                final Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry child = entries.nextElement();
+                    if (child.getName().startsWith(prefix) && !child.isDirectory()) {
+                        final Path file = resolveEntry(target, child.getName().substring(prefix.length()));
+                        Files.createDirectories(file.getParent());
+                        try (InputStream in = jarFile.getInputStream(child)) {
+                            Files.copy(in, file);
+                        }
+                    }
+                }
+            }
+            return target;
+        }
+
+        throw new IOException("Unsupported location of classpath resource " + resource + ": " + url);
+    }
+
+    private static ArchiveInputStream openArchive(Path archive) throws IOException {
+        final String name = archive.getFileName().toString();
+        final InputStream in = new BufferedInputStream(Files.newInputStream(archive));
+        if (name.endsWith(".zip")) {
+            return new ZipArchiveInputStream(in);
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return new TarArchiveInputStream(new GzipCompressorInputStream(in));
+        }
+        if (name.endsWith(".tar")) {
+            return new TarArchiveInputStream(in);
+        }
+        in.close();
+        throw new IOException("Unsupported archive type of " + archive + ", expected .tar, .tar.gz, .tgz, or .zip");
+    }
+
+    private static void extract(ArchiveInputStream archive, Path target) throws IOException {
+        ArchiveEntry entry;
+        while ((entry = archive.getNextEntry()) != null) {
+            final Path file = resolveEntry(target, entry.getName());
+            if (entry.isDirectory()) {
+                Files.createDirectories(file);
+            } else {
+                Files.createDirectories(file.getParent());
+                Files.copy(archive, file, StandardCopyOption.REPLACE_EXISTING);
+                if (entry instanceof TarArchiveEntry && (((TarArchiveEntry) entry).getMode() & 0111) != 0) {
+                    file.toFile().setExecutable(true, false);
+                }
+            }
+        }
+    }
+
+    private static Path resolveEntry(Path target, String name) throws IOException {
+        final Path file = target.resolve(name).normalize();
+        if (!file.startsWith(target)) {
+            throw new IOException("Entry " + name + " is outside of the fixture");
+        }
+        return file;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
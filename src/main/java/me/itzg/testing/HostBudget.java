@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.itzg.testing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Shares the use of an {@link AdmissionControl} budget between the JVMs on a host, such as forked Surefire test
+ * runs, through files in a directory that the JVMs agree on. Each JVM publishes the memory and CPUs it has
+ * admitted in its own file, which it holds a lock on, so that the file of a JVM that exited is recognized by its
+ * lock having been released and is then deleted. Admitting and publishing happen under an exclusive lock on the
+ * directory's <code>budget.lock</code> file, so two JVMs cannot both admit into the last of the budget.
+ *
+ * <p>JVMs do not wake each other, so a start waiting on other JVMs checks again every
+ * {@value #POLL_INTERVAL} ms, and starts are only admitted in the order requested within each JVM.</p>
+ *
+ * @since 1.4
+ */
+class HostBudget {
+    static final long POLL_INTERVAL = 250;
+
+    private final Path dir;
+    private final Path ownFile;
+    private FileLocks.Lock own;
+
+    /**
+     * @param dir the directory shared by the JVMs using the same budget
+     */
+    HostBudget(Path dir) {
+        this.dir = dir;
+        this.ownFile = dir.resolve(UUID.randomUUID() + ".use");
+    }
+
+    /**
+     * Admits this JVM's new use if, along with the use of the other JVMs, it fits within the budget,
+     * and publishes it when it does.
+     * @param memory the bytes of memory this JVM would use in total
+     * @param cpus the CPUs this JVM would use in total
+     * @param memoryBudget the bytes of memory the JVMs may use in total, or 0 for no limit
+     * @param cpuBudget the CPUs the JVMs may use in total, or 0 for no limit
+     * @return true if admitted
+     */
+    synchronized boolean admit(long memory, double cpus, long memoryBudget, double cpuBudget)
+            throws IOException, InterruptedException {
+        try (FileLocks.Lock ignored = lockDirectory()) {
+            long otherMemory = 0;
+            double otherCpus = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.use")) {
+                for (Path file : files) {
+                    if (file.equals(ownFile)) {
+                        continue;
+                    }
+                    try (FileLocks.Lock exited = FileLocks.tryLock(file)) {
+                        if (exited != null) {
+                            Files.deleteIfExists(file);
+                            continue;
+                        }
+                    }
+                    final String[] use = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+                    if (use.length == 2) {
+                        otherMemory += Long.parseLong(use[0]);
+                        otherCpus += Double.parseDouble(use[1]);
+                    }
+                }
+            }
+
+            if ((memoryBudget > 0 && otherMemory + memory > memoryBudget)
+                    || (cpuBudget > 0 && otherCpus + cpus > cpuBudget + 1e-9)) {
+                return false;
+            }
+            publishLocked(memory, cpus);
+            return true;
+        }
+    }
+
+    /**
+     * Publishes this JVM's use after releasing part of it.
+     */
+    synchronized void publish(long memory, double cpus) throws IOException, InterruptedException {
+        try (FileLocks.Lock ignored = lockDirectory()) {
+            publishLocked(memory, cpus);
+        }
+    }
+
+    private FileLocks.Lock lockDirectory() throws IOException, InterruptedException {
+        Files.createDirectories(dir);
+        return FileLocks.lock(dir.resolve("budget.lock"), StandardOpenOption.CREATE);
+    }
+
+    private void publishLocked(long memory, double cpus) throws IOException, InterruptedException {
+        // created while the directory is locked, so others never see it before it is locked
+        if (own == null) {
+            own = FileLocks.lock(ownFile, StandardOpenOption.CREATE_NEW);
+        }
+        own.write(String.format(Locale.ROOT, "%d %s", memory, cpus));
+    }
+}
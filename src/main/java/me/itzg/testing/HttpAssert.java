@@ -21,6 +21,14 @@ import org.junit.Assert;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Helper functions for asserting HTTP behaviors.
@@ -29,10 +37,15 @@ import java.net.URL;
  * @since Jan 2017
  */
 public class HttpAssert {
+    /**
+     * The connect and read timeout, in milliseconds, applied to each attempt of {@link #waitForEndpoint(URL, long, int, int)}.
+     */
+    public static final int DEFAULT_ATTEMPT_TIMEOUT = 5000;
 
     /**
      * Repeatedly checks the given url until it can connect. When connected, it asserts that the response code
-     * is the expected value.
+     * is the expected value. Each attempt is limited by {@value #DEFAULT_ATTEMPT_TIMEOUT} millisecond connect
+     * and read timeouts.
      * @param url the URL to access
      * @param interval the delay in milliseconds between tries
      * @param retries the number of attempts to make. If exhausted, then the {@link IOException} of the final attempt
@@ -47,8 +60,14 @@ public class HttpAssert {
         while (true) {
             try {
                 final HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
+                try {
+                    httpURLConnection.setConnectTimeout(DEFAULT_ATTEMPT_TIMEOUT);
+                    httpURLConnection.setReadTimeout(DEFAULT_ATTEMPT_TIMEOUT);
 
-                Assert.assertEquals(expectedResponseCode, httpURLConnection.getResponseCode());
+                    Assert.assertEquals(expectedResponseCode, httpURLConnection.getResponseCode());
+                } finally {
+                    httpURLConnection.disconnect();
+                }
 
                 return;
             } catch (IOException e) {
@@ -59,4 +78,177 @@ public class HttpAssert {
             }
         }
     }
+
+    /**
+     * Concurrently waits for all of the given endpoints to respond with the expected response code.
+     * Endpoints are probed without blocking a thread per endpoint, each attempt is bounded by
+     * {@link EndpointWaitOptions#attemptTimeout(long)}, and failed attempts are retried with
+     * exponential backoff and jitter.
+     *
+     * @param options configures the expected response code, timeouts, and backoff
+     * @param urls the endpoints to wait for
+     * @return a future completed with the status of each endpoint, in the order given, once all are ready.
+     * If any endpoint is not ready within {@link EndpointWaitOptions#timeout(long)}, the future is completed
+     * exceptionally with an {@link EndpointNotReadyException}.
+     * @throws IOException if the probing client could not be started
+     */
+    public static CompletableFuture<List<EndpointStatus>> waitForAllEndpoints(EndpointWaitOptions options, URL... urls)
+            throws IOException {
+        final List<EndpointWaiter> waiters = startWaiters(options, urls);
+
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[waiters.size()];
+        for (int i = 0; i < waiters.size(); i++) {
+            futures[i] = waiters.get(i).result;
+        }
+
+        final CompletableFuture<List<EndpointStatus>> result = CompletableFuture.allOf(futures)
+                .thenApplyAsync(ignored -> {
+                    final List<EndpointStatus> statuses = new ArrayList<>(waiters.size());
+                    boolean allReady = true;
+                    for (EndpointWaiter waiter : waiters) {
+                        final EndpointStatus status = waiter.result.join();
+                        allReady &= status.isReady();
+                        statuses.add(status);
+                    }
+                    if (!allReady) {
+                        throw new CompletionException(new EndpointNotReadyException(statuses));
+                    }
+                    return Collections.unmodifiableList(statuses);
+                });
+        result.whenComplete((statuses, e) -> cancelAll(waiters));
+        return result;
+    }
+
+    /**
+     * Concurrently waits for any of the given endpoints to respond with the expected response code,
+     * probing in the same way as {@link #waitForAllEndpoints(EndpointWaitOptions, URL...)}.
+     *
+     * @param options configures the expected response code, timeouts, and backoff
+     * @param urls the endpoints to wait for
+     * @return a future completed with the status of the first endpoint to become ready.
+     * If none are ready within {@link EndpointWaitOptions#timeout(long)}, the future is completed
+     * exceptionally with an {@link EndpointNotReadyException}.
+     * @throws IOException if the probing client could not be started
+     */
+    public static CompletableFuture<EndpointStatus> waitForAnyEndpoint(EndpointWaitOptions options, URL... urls)
+            throws IOException {
+        final List<EndpointWaiter> waiters = startWaiters(options, urls);
+        final CompletableFuture<EndpointStatus> result = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(waiters.size());
+
+        for (EndpointWaiter waiter : waiters) {
+            waiter.result.thenAcceptAsync(status -> {
+                if (status.isReady()) {
+                    result.complete(status);
+                } else if (remaining.decrementAndGet() == 0) {
+                    final List<EndpointStatus> statuses = new ArrayList<>(waiters.size());
+                    for (EndpointWaiter w : waiters) {
+                        statuses.add(w.result.join());
+                    }
+                    result.completeExceptionally(new EndpointNotReadyException(statuses));
+                }
+            });
+        }
+        result.whenComplete((status, e) -> cancelAll(waiters));
+        return result;
+    }
+
+    private static List<EndpointWaiter> startWaiters(EndpointWaitOptions options, URL[] urls) throws IOException {
+        if (urls.length == 0) {
+            throw new IllegalArgumentException("At least one URL is required");
+        }
+
+        final NioHttpClient client = NioHttpClient.get();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getTimeout());
+        final List<EndpointWaiter> waiters = new ArrayList<>(urls.length);
+        for (URL url : urls) {
+            final EndpointWaiter waiter = new EndpointWaiter(client, url, options, deadline);
+            waiters.add(waiter);
+            waiter.attempt();
+        }
+        return waiters;
+    }
+
+    private static void cancelAll(List<EndpointWaiter> waiters) {
+        for (EndpointWaiter waiter : waiters) {
+            waiter.cancelled = true;
+        }
+    }
+
+    /**
+     * Drives the attempts against one endpoint. Attempts are chained, so only one is in flight at a time.
+     */
+    private static class EndpointWaiter {
+        final NioHttpClient client;
+        final URL url;
+        final EndpointWaitOptions options;
+        final long startNanos = System.nanoTime();
+        final long deadlineNanos;
+        final CompletableFuture<EndpointStatus> result = new CompletableFuture<>();
+        volatile boolean cancelled;
+        int attempts;
+        long backoff;
+        int lastResponseCode = -1;
+        Throwable lastFailure;
+
+        EndpointWaiter(NioHttpClient client, URL url, EndpointWaitOptions options, long deadlineNanos) {
+            this.client = client;
+            this.url = url;
+            this.options = options;
+            this.deadlineNanos = deadlineNanos;
+            this.backoff = options.getInitialBackoff();
+        }
+
+        void attempt() {
+            if (cancelled) {
+                finish(false);
+                return;
+            }
+
+            final long remaining = remainingMillis();
+            if (remaining <= 0) {
+                finish(false);
+                return;
+            }
+
+            ++attempts;
+            client.get(url, Math.min(options.getAttemptTimeout(), remaining))
+                    .whenComplete((code, e) -> {
+                        if (e != null) {
+                            lastFailure = e;
+                        } else {
+                            lastResponseCode = code;
+                            if (code == options.getExpectedResponseCode()) {
+                                finish(true);
+                                return;
+                            }
+                        }
+                        retry();
+                    });
+        }
+
+        private void retry() {
+            final long remaining = remainingMillis();
+            if (cancelled || remaining <= 0) {
+                finish(false);
+                return;
+            }
+
+            final long half = backoff / 2;
+            final long delay = half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+            backoff = Math.min(options.getMaxBackoff(), backoff * 2);
+
+            client.schedule(Math.min(delay, remaining), this::attempt);
+        }
+
+        private long remainingMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        }
+
+        private void finish(boolean ready) {
+            result.complete(new EndpointStatus(url, ready, attempts,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                    lastResponseCode, lastFailure));
+        }
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds the images declared by {@link DockerfileImage}s, skipping the build when an image tagged with the
+ * same context hash is already present. Like {@link ImagePuller}, images confirmed present are cached for the
+ * life of the JVM and concurrent requests for the same image wait for a single build.
+ *
+ * @since 1.4
+ */
+class ImageBuilds {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageBuilds.class);
+
+    private static final Set<String> PRESENT = ConcurrentHashMap.newKeySet();
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private ImageBuilds() {
+    }
+
+    /**
+     * @param dockerClient the client to use for inspecting and building
+     * @param daemonKey identifies the Docker daemon, since presence on one daemon says nothing about another
+     * @param dockerfileImage the image to make available
+     * @return the reference of the built image, tagged by the hash of its context
+     */
+    static String ensureBuilt(DockerClient dockerClient, String daemonKey, DockerfileImage dockerfileImage)
+            throws DockerException, InterruptedException {
+        final String reference;
+        try {
+            reference = dockerfileImage.reference();
+        } catch (IOException e) {
+            throw new DockerException("Unable to hash the build context of " + dockerfileImage, e);
+        }
+        final String cacheKey = daemonKey + "|" + reference;
+        if (PRESENT.contains(cacheKey)) {
+            return reference;
+        }
+
+        synchronized (LOCKS.computeIfAbsent(cacheKey, key -> new Object())) {
+            if (PRESENT.contains(cacheKey)) {
+                return reference;
+            }
+            try {
+                dockerClient.inspectImage(reference);
+                LOGGER.debug("Image {} is already built", reference);
+            } catch (ImageNotFoundException e) {
+                build(dockerClient, dockerfileImage, reference);
+            }
+            PRESENT.add(cacheKey);
+        }
+        return reference;
+    }
+
+    private static void build(DockerClient dockerClient, DockerfileImage dockerfileImage, String reference)
+            throws DockerException, InterruptedException {
+        LOGGER.info("Building {} from {}", reference, dockerfileImage);
+        try {
+            dockerClient.build(dockerfileImage.getContextDirectory(), reference, dockerfileImage.getDockerfile(),
+                    progressMessage -> {
+                        if (progressMessage.error() != null) {
+                            throw new DockerException(String.format("Failed to build %s: %s",
+                                    reference, progressMessage.error()));
+                        }
+                        if (progressMessage.stream() != null && !progressMessage.stream().trim().isEmpty()) {
+                            LOGGER.info("Building {} : {}", reference, progressMessage.stream().trim());
+                        }
+                    },
+                    DockerClient.BuildParam.rm());
+        } catch (IOException e) {
+            throw new DockerException("Unable to send the build context of " + dockerfileImage, e);
+        }
+    }
+}
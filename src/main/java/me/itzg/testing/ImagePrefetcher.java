@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pulls the images of every {@link DockerRule} declared by the test classes of a run before the first
+ * test starts, so that the network transfer of all images overlaps rather than each test class
+ * waiting on its own pull in turn.
+ *
+ * <p>Fields annotated with {@link ClassRule} or {@link Rule} whose type is {@link DockerRule} or
+ * {@link DockerRuleGroup} are scanned. Instance fields are read from an instance created with the
+ * test class's no-arg constructor. Rules with a {@link PullPolicy#NEVER} pull policy are skipped.
+ * Rules with a {@link PullPolicy#ALWAYS} pull policy do not pull their image again once it has been
+ * prefetched, since it was pulled at the start of the same run.
+ * Any failure to prefetch is logged and otherwise left for the rule itself to report when it evaluates.</p>
+ *
+ * <p>With Maven surefire, register the listener with:</p>
+ * <pre>
+ * &lt;properties&gt;
+ *     &lt;property&gt;
+ *         &lt;name&gt;listener&lt;/name&gt;
+ *         &lt;value&gt;me.itzg.testing.ImagePrefetcher&lt;/value&gt;
+ *     &lt;/property&gt;
+ * &lt;/properties&gt;
+ * </pre>
+ *
+ * <p>The number of concurrent pulls defaults to {@value #DEFAULT_PARALLELISM} and can be changed with
+ * the <code>dockerRule.prefetchParallelism</code> system property.</p>
+ *
+ * @since 1.4
+ */
+public class ImagePrefetcher extends RunListener {
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImagePrefetcher.class);
+
+    private final int parallelism;
+
+    public ImagePrefetcher() {
+        this(Integer.getInteger("dockerRule.prefetchParallelism", DEFAULT_PARALLELISM));
+    }
+
+    /**
+     * @param parallelism the maximum number of images to pull at the same time
+     */
+    public ImagePrefetcher(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void testRunStarted(Description description) throws Exception {
+        final Set<Class<?>> testClasses = new LinkedHashSet<>();
+        collectTestClasses(description, testClasses);
+        prefetch(testClasses);
+    }
+
+    /**
+     * Pulls the images of the rules declared by the given test classes and waits for the pulls to finish.
+     * @param testClasses the test classes to scan
+     */
+    public void prefetch(Collection<Class<?>> testClasses) throws InterruptedException {
+        final List<DockerRule> rules = new ArrayList<>();
+        for (Class<?> testClass : testClasses) {
+            rules.addAll(findRules(testClass));
+        }
+        if (rules.isEmpty()) {
+            return;
+        }
+
+        LOGGER.info("Prefetching images of {} rules", rules.size());
+        final long startTime = System.currentTimeMillis();
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(parallelism, rules.size()), new PrefetchThreadFactory());
+        try {
+            final List<Future<?>> futures = new ArrayList<>(rules.size());
+            for (DockerRule rule : rules) {
+                futures.add(executor.submit(() -> prefetch(rule, seen)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // prefetch(DockerRule, Set) logs its own failures
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Prefetched {} images in {} ms", seen.size(), System.currentTimeMillis() - startTime);
+    }
+
+    private static void prefetch(DockerRule rule, Set<String> seen) {
+        if (rule.getPullPolicy() == PullPolicy.NEVER) {
+            return;
+        }
+        try {
+            // only pulls, since connecting a rule also checks the daemon and reaps orphaned containers
+            final DockerEndpoint endpoint = rule.endpoint();
+            if (seen.add(endpoint + "|" + rule.getImage())) {
+                rule.fetchImage(DockerClientFactory.obtain(endpoint), endpoint);
+                ImagePuller.prefetched(endpoint.uri(), rule.getImage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.warn("Unable to prefetch image {}", rule.getImage(), e);
+        }
+    }
+
+    private static void collectTestClasses(Description description, Set<Class<?>> testClasses) {
+        if (description.getTestClass() != null) {
+            testClasses.add(description.getTestClass());
+        }
+        for (Description child : description.getChildren()) {
+            collectTestClasses(child, testClasses);
+        }
+    }
+
+    static List<DockerRule> findRules(Class<?> testClass) {
+        final List<DockerRule> rules = new ArrayList<>();
+        Object instance = null;
+        boolean instantiated = false;
+
+        for (Class<?> c = testClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!DockerRule.class.isAssignableFrom(field.getType())
+                        && !DockerRuleGroup.class.isAssignableFrom(field.getType())) {
+                    continue;
+                }
+                final boolean isStatic = Modifier.isStatic(field.getModifiers());
+                if (isStatic ? !field.isAnnotationPresent(ClassRule.class) : !field.isAnnotationPresent(Rule.class)) {
+                    continue;
+                }
+
+                if (!isStatic && !instantiated) {
+                    instantiated = true;
+                    instance = instantiate(testClass);
+                }
+                if (!isStatic && instance == null) {
+                    continue;
+                }
+
+                try {
+                    field.setAccessible(true);
+                    addRules(field.get(isStatic ? null : instance), rules);
+                } catch (IllegalAccessException | RuntimeException | LinkageError e) {
+                    LOGGER.debug("Unable to read rule field {} of {}", field.getName(), testClass.getName(), e);
+                }
+            }
+        }
+        return rules;
+    }
+
+    private static void addRules(Object value, List<DockerRule> rules) {
+        if (value instanceof DockerRule) {
+            rules.add((DockerRule) value);
+        } else if (value instanceof DockerRuleGroup) {
+            rules.addAll(((DockerRuleGroup) value).rules());
+        }
+    }
+
+    private static Object instantiate(Class<?> testClass) {
+        try {
+            return testClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            LOGGER.debug("Unable to instantiate {} to find its rules", testClass.getName(), e);
+            return null;
+        }
+    }
+
+    private static class PrefetchThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "docker-rule-prefetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
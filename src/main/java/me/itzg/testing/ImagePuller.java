@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.ProgressHandler;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.ProgressMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Ensures images are available on a Docker daemon according to a {@link PullPolicy}. Images confirmed
+ * present are cached for the life of the JVM and concurrent requests for the same image share a
+ * single in-flight pull. Images pulled by the {@link ImagePrefetcher} at the start of the run are not
+ * pulled again, even under {@link PullPolicy#ALWAYS}.
+ *
+ * @since 1.4
+ */
+class ImagePuller {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImagePuller.class);
+
+    private static final Set<String> PRESENT = ConcurrentHashMap.newKeySet();
+    private static final Set<String> PREFETCHED = ConcurrentHashMap.newKeySet();
+    private static final ConcurrentMap<String, CompletableFuture<Void>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private ImagePuller() {
+    }
+
+    /**
+     * @param dockerClient the client to use for inspecting and pulling
+     * @param daemonKey identifies the Docker daemon, since presence on one daemon says nothing about another
+     * @param image the image to make available
+     * @param pullPolicy when to pull the image
+     * @throws ImageNotFoundException if the policy is {@link PullPolicy#NEVER} and the image is not present
+     */
+    static void ensureImage(DockerClient dockerClient, String daemonKey, String image, PullPolicy pullPolicy)
+            throws DockerException, InterruptedException {
+        final String cacheKey = daemonKey + "|" + image;
+
+        switch (pullPolicy) {
+            case NEVER:
+                if (!isPresent(dockerClient, cacheKey, image)) {
+                    throw new ImageNotFoundException(image,
+                            "Image is not present and pull policy is " + PullPolicy.NEVER);
+                }
+                break;
+
+            case IF_NOT_PRESENT:
+                if (!isPresent(dockerClient, cacheKey, image)) {
+                    pull(dockerClient, cacheKey, image);
+                }
+                break;
+
+            case ALWAYS:
+            default:
+                if (PREFETCHED.contains(cacheKey)) {
+                    LOGGER.debug("Image {} was already pulled by the prefetcher", image);
+                    break;
+                }
+                pull(dockerClient, cacheKey, image);
+                break;
+        }
+    }
+
+    /**
+     * Records that the image was made available by the {@link ImagePrefetcher} during this run.
+     * @param daemonKey identifies the Docker daemon the image was pulled to
+     * @param image the image that was pulled
+     */
+    static void prefetched(String daemonKey, String image) {
+        PREFETCHED.add(daemonKey + "|" + image);
+    }
+
+    private static boolean isPresent(DockerClient dockerClient, String cacheKey, String image)
+            throws DockerException, InterruptedException {
+        if (PRESENT.contains(cacheKey)) {
+            return true;
+        }
+
+        try {
+            dockerClient.inspectImage(image);
+        } catch (ImageNotFoundException e) {
+            return false;
+        }
+        LOGGER.debug("Image {} is already present", image);
+        PRESENT.add(cacheKey);
+        return true;
+    }
+
+    private static void pull(DockerClient dockerClient, String cacheKey, String image)
+            throws DockerException, InterruptedException {
+        final CompletableFuture<Void> ours = new CompletableFuture<>();
+        final CompletableFuture<Void> existing = IN_FLIGHT.putIfAbsent(cacheKey, ours);
+        if (existing != null) {
+            LOGGER.debug("Waiting for in-flight pull of {}", image);
+            try {
+                existing.get();
+                return;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof DockerException) {
+                    throw (DockerException) e.getCause();
+                }
+                throw new DockerException(e.getCause());
+            }
+        }
+
+        try {
+            dockerClient.pull(image, new ProgressHandler() {
+                @Override
+                public void progress(ProgressMessage progressMessage) throws DockerException {
+                    if (progressMessage.id() != null && progressMessage.progress() == null) {
+                        LOGGER.info("Pulling {} : {} : {}", image, progressMessage.id(), progressMessage.status());
+                    } else if (progressMessage.id() == null) {
+                        LOGGER.info("Pulling {} : {}", image, progressMessage.status());
+
+                    }
+                }
+            });
+            PRESENT.add(cacheKey);
+            ours.complete(null);
+        } catch (DockerException | InterruptedException | RuntimeException e) {
+            ours.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(cacheKey, ours);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes the completion of one {@link LifecyclePhase} of a {@link DockerRule}.
+ *
+ * @since 1.4
+ */
+public final class LifecycleEvent {
+    private final LifecyclePhase phase;
+    private final String image;
+    private final String containerId;
+    private final String description;
+    private final long durationNanos;
+    private final boolean successful;
+
+    LifecycleEvent(LifecyclePhase phase, String image, String containerId, String description,
+                   long durationNanos, boolean successful) {
+        this.phase = phase;
+        this.image = image;
+        this.containerId = containerId;
+        this.description = description;
+        this.durationNanos = durationNanos;
+        this.successful = successful;
+    }
+
+    public LifecyclePhase getPhase() {
+        return phase;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    /**
+     * @return the ID of the container or null if the phase precedes its creation
+     */
+    public String getContainerId() {
+        return containerId;
+    }
+
+    /**
+     * @return the display name of the test or test class being evaluated, or null when not evaluated as a rule
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * @return false if the phase ended with an exception
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    @Override
+    public String toString() {
+        return "LifecycleEvent{" +
+                "phase=" + phase +
+                ", image='" + image + '\'' +
+                ", containerId='" + containerId + '\'' +
+                ", description='" + description + '\'' +
+                ", durationNanos=" + durationNanos +
+                ", successful=" + successful +
+                '}';
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+/**
+ * Receives the timing of each phase of a {@link DockerRule}'s lifecycle.
+ * Register with {@link DockerRule#lifecycleListener(LifecycleListener)}.
+ *
+ * <p>Events may be delivered from multiple threads, such as when rules start concurrently
+ * within a {@link DockerRuleGroup}. Exceptions thrown by a listener are logged and otherwise ignored.</p>
+ *
+ * @since 1.4
+ */
+public interface LifecycleListener {
+    /**
+     * @param event the phase that completed, successfully or not
+     */
+    void phaseCompleted(LifecycleEvent event);
+}
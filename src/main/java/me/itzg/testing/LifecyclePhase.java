@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+/**
+ * The phases of a {@link DockerRule}'s lifecycle that are reported to a {@link LifecycleListener}.
+ *
+ * @since 1.4
+ */
+public enum LifecyclePhase {
+    /**
+     * Resolving the Docker endpoint and obtaining its client.
+     */
+    CONNECT,
+    /**
+     * Requesting the daemon's info to confirm it is reachable.
+     */
+    INFO,
+    /**
+     * Making the image available according to the {@link PullPolicy}.
+     */
+    PULL,
+    /**
+     * Building, or confirming there is no need to build, the image of a {@link DockerfileImage}.
+     */
+    BUILD,
+    /**
+     * Waiting for the container's expected resources to fit within the host budget, see {@link ResourceProfile}.
+     * Only reported when a budget is configured.
+     */
+    ADMISSION,
+    /**
+     * Creating the container, including its network when one is declared and does not exist yet.
+     */
+    CREATE,
+    /**
+     * Copying the {@link Fixture}s into the created container.
+     */
+    COPY,
+    /**
+     * Starting the container and inspecting it for its port bindings.
+     */
+    START,
+    /**
+     * Waiting for the readiness conditions of the container.
+     */
+    READY,
+    /**
+     * Evaluating the test, or test class when used as a class rule, around which the container runs.
+     */
+    TEST,
+    /**
+     * Resetting the container after a test by a {@link DockerResetRule}.
+     */
+    RESET,
+    /**
+     * Killing the container after the test. Not reported when the container is left running or removed in
+     * the background by {@link DockerRule#asyncTeardown(boolean)}.
+     */
+    KILL,
+    /**
+     * Removing the killed container. Not reported when the container is left running or removed in
+     * the background by {@link DockerRule#asyncTeardown(boolean)}.
+     */
+    REMOVE
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Continuously captures the stdout and stderr lines of a container into a bounded ring buffer
+ * allocated outside of the Java heap. Once full, the oldest lines are discarded to make room for new ones.
+ * Enable with {@link DockerRule#captureLogs(int)} and access with {@link DockerRule#getLogs()}.
+ *
+ * <p>Each line is stored with the time it was received. A position, obtained from {@link #position()},
+ * marks a point in the log after which {@link #await(LogCondition, long, long)} can wait for a condition.</p>
+ *
+ * @since 1.4
+ */
+public final class LogCapture {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogCapture.class);
+
+    /**
+     * timestamp, stream, and length of the line
+     */
+    private static final int HEADER_SIZE = 8 + 1 + 4;
+    private static final byte STDOUT = 1;
+    private static final byte STDERR = 2;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final byte[] header = new byte[HEADER_SIZE];
+    private final ByteBuffer headerView = ByteBuffer.wrap(header);
+    private final ByteArrayOutputStream partialStdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream partialStderr = new ByteArrayOutputStream();
+    /**
+     * absolute offset of the oldest retained line
+     */
+    private long head;
+    /**
+     * absolute offset at which the next line is written
+     */
+    private long tail;
+    private long discardedLines;
+    private boolean closed;
+
+    /**
+     * @param capacity the number of bytes to allocate, which includes a {@value #HEADER_SIZE} byte overhead per line
+     */
+    LogCapture(int capacity) {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("capacity must be greater than " + HEADER_SIZE);
+        }
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Starts capturing the log of the given container on a daemon thread, which ends when the container stops.
+     */
+    static LogCapture follow(DockerClient dockerClient, String containerId, int capacity)
+            throws DockerException, InterruptedException {
+        final LogCapture capture = new LogCapture(capacity);
+        final LogStream logStream = dockerClient.logs(containerId,
+                DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr(), DockerClient.LogsParam.follow());
+
+        final Thread follower = new Thread(() -> {
+            try {
+                while (logStream.hasNext()) {
+                    final LogMessage msg = logStream.next();
+                    capture.write(msg.stream() == LogMessage.Stream.STDERR ? STDERR : STDOUT, msg.content());
+                }
+            } catch (RuntimeException e) {
+                LOGGER.debug("Stopped capturing log of container {}", containerId, e);
+            } finally {
+                capture.close();
+                logStream.close();
+            }
+        }, "docker-rule-capture-" + containerId.substring(0, Math.min(12, containerId.length())));
+        follower.setDaemon(true);
+        follower.start();
+        return capture;
+    }
+
+    /**
+     * @return the position just past the most recently captured line
+     */
+    public synchronized long position() {
+        return tail;
+    }
+
+    /**
+     * @return the number of lines discarded to make room for newer lines
+     */
+    public synchronized long getDiscardedLines() {
+        return discardedLines;
+    }
+
+    /**
+     * @param lines the maximum number of lines to return
+     * @return the most recently captured lines, oldest first
+     */
+    public synchronized List<String> tail(int lines) {
+        final Deque<String> result = new ArrayDeque<>(Math.min(lines, 1024));
+        if (lines <= 0) {
+            return new ArrayList<>(result);
+        }
+        for (long pos = head; pos < tail; pos = next(pos)) {
+            if (result.size() == lines) {
+                result.removeFirst();
+            }
+            result.addLast(line(pos));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @param pattern the pattern to find within each line
+     * @param sinceMillis only lines received at or after this epoch time are searched
+     * @return the retained lines that contain the pattern, oldest first
+     */
+    public synchronized List<String> grep(Pattern pattern, long sinceMillis) {
+        final List<String> result = new ArrayList<>();
+        for (long pos = head; pos < tail; pos = next(pos)) {
+            if (timestamp(pos) >= sinceMillis) {
+                final String line = line(pos);
+                if (pattern.matcher(line).find()) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the lines captured after the given position to satisfy a condition.
+     * @param condition the condition to satisfy
+     * @param fromPosition a value previously returned by {@link #position()} or zero for the start of the log
+     * @param timeoutMillis the maximum amount of time to wait
+     * @return true if the condition was satisfied, false if the timeout elapsed or the container stopped first
+     */
+    public synchronized boolean await(LogCondition condition, long fromPosition, long timeoutMillis)
+            throws InterruptedException {
+        final LogMatcher matcher = condition.newMatcher();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long pos = fromPosition;
+        while (true) {
+            if (pos < head) {
+                pos = head;
+            }
+            for (; pos < tail; pos = next(pos)) {
+                if (matcher.feed(ByteBuffer.wrap((line(pos) + "\n").getBytes(StandardCharsets.UTF_8)))) {
+                    return true;
+                }
+            }
+
+            final long remaining = deadline - System.nanoTime();
+            if (closed || remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    /**
+     * Writes the retained lines, each prefixed with the time it was received and its stream, to the given file.
+     * @param file the file to create or replace
+     */
+    public synchronized void dump(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (discardedLines > 0) {
+                writer.write(String.format("[%d earlier lines were discarded]%n", discardedLines));
+            }
+            for (long pos = head; pos < tail; pos = next(pos)) {
+                writer.write(Instant.ofEpochMilli(timestamp(pos)).toString());
+                writer.write(stream(pos) == STDERR ? " stderr: " : " stdout: ");
+                writer.write(line(pos));
+                writer.write(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * Consumes the content of a log message, which may contain several lines or part of one.
+     */
+    synchronized void write(byte stream, ByteBuffer content) {
+        final ByteArrayOutputStream partial = stream == STDERR ? partialStderr : partialStdout;
+        final ByteBuffer remaining = content.duplicate();
+        while (remaining.hasRemaining()) {
+            final byte b = remaining.get();
+            if (b == '\n') {
+                append(System.currentTimeMillis(), stream, partial);
+                partial.reset();
+            } else if (partial.size() < capacity - HEADER_SIZE) {
+                partial.write(b);
+            }
+        }
+    }
+
+    synchronized void close() {
+        if (partialStdout.size() > 0) {
+            append(System.currentTimeMillis(), STDOUT, partialStdout);
+            partialStdout.reset();
+        }
+        if (partialStderr.size() > 0) {
+            append(System.currentTimeMillis(), STDERR, partialStderr);
+            partialStderr.reset();
+        }
+        closed = true;
+        notifyAll();
+    }
+
+    private void append(long timestamp, byte stream, ByteArrayOutputStream line) {
+        byte[] content = line.toByteArray();
+        int length = content.length;
+        if (length > 0 && content[length - 1] == '\r') {
+            --length;
+        }
+
+        final long recordSize = HEADER_SIZE + length;
+        while (tail + recordSize - head > capacity) {
+            head = next(head);
+            ++discardedLines;
+        }
+
+        ((Buffer) headerView).clear();
+        headerView.putLong(timestamp).put(stream).putInt(length);
+        put(tail, header, HEADER_SIZE);
+        put(tail + HEADER_SIZE, content, length);
+        tail += recordSize;
+        notifyAll();
+    }
+
+    private long next(long pos) {
+        get(pos, header, HEADER_SIZE);
+        return pos + HEADER_SIZE + ByteBuffer.wrap(header).getInt(9);
+    }
+
+    private long timestamp(long pos) {
+        get(pos, header, HEADER_SIZE);
+        return ByteBuffer.wrap(header).getLong(0);
+    }
+
+    private byte stream(long pos) {
+        get(pos, header, HEADER_SIZE);
+        return header[8];
+    }
+
+    private String line(long pos) {
+        get(pos, header, HEADER_SIZE);
+        final byte[] content = new byte[ByteBuffer.wrap(header).getInt(9)];
+        get(pos + HEADER_SIZE, content, content.length);
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    // positioned through Buffer so that compiling on newer JDKs does not link the covariant overloads
+    // missing from Java 8
+    private void put(long pos, byte[] src, int length) {
+        final int offset = (int) (pos % capacity);
+        final int first = Math.min(length, capacity - offset);
+        ((Buffer) buffer).position(offset);
+        buffer.put(src, 0, first);
+        if (first < length) {
+            ((Buffer) buffer).position(0);
+            buffer.put(src, first, length - first);
+        }
+    }
+
+    private void get(long pos, byte[] dst, int length) {
+        final int offset = (int) (pos % capacity);
+        final int first = Math.min(length, capacity - offset);
+        ((Buffer) buffer).position(offset);
+        buffer.get(dst, 0, first);
+        if (first < length) {
+            ((Buffer) buffer).position(0);
+            buffer.get(dst, first, length - first);
+        }
+    }
+}
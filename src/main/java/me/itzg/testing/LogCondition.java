@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Describes what {@link DockerRule#waitForLog(LogCondition)} waits to observe in the stdout/stderr log
+ * of a container. Literal snippets are matched directly against the raw log bytes, so a snippet
+ * that is split across two log frames is still observed.
+ *
+ * <p>The following waits for both nodes of a two node cluster to log "started":</p>
+ * <pre>
+ *     new DockerRule("itzg/elasticsearch:5")
+ *         .waitForLog(LogCondition.contains("started").times(2));
+ * </pre>
+ *
+ * @since 1.4
+ */
+public final class LogCondition {
+    private enum Kind {
+        ALL_OF, ANY_OF, REGEX
+    }
+
+    private static final int[] FLAGS = {
+            Pattern.UNIX_LINES, Pattern.CASE_INSENSITIVE, Pattern.COMMENTS, Pattern.MULTILINE, Pattern.LITERAL,
+            Pattern.DOTALL, Pattern.UNICODE_CASE, Pattern.CANON_EQ, Pattern.UNICODE_CHARACTER_CLASS
+    };
+    private static final String[] FLAG_NAMES = {
+            "UNIX_LINES", "CASE_INSENSITIVE", "COMMENTS", "MULTILINE", "LITERAL",
+            "DOTALL", "UNICODE_CASE", "CANON_EQ", "UNICODE_CHARACTER_CLASS"
+    };
+
+    private final Kind kind;
+    private final String[] snippets;
+    private final Pattern pattern;
+    private final int times;
+
+    private LogCondition(Kind kind, String[] snippets, Pattern pattern, int times) {
+        this.kind = kind;
+        this.snippets = snippets;
+        this.pattern = pattern;
+        this.times = times;
+    }
+
+    /**
+     * @param snippet the case-sensitive text that will be matched up against any portion of the log output
+     * @return a condition satisfied when the snippet is observed
+     */
+    public static LogCondition contains(String snippet) {
+        return anyOf(snippet);
+    }
+
+    /**
+     * @param snippets case-sensitive text that will be matched up against any portion of the log output
+     * @return a condition satisfied once every one of the snippets has been observed, in any order
+     */
+    public static LogCondition allOf(String... snippets) {
+        return new LogCondition(Kind.ALL_OF, validate(snippets), null, 1);
+    }
+
+    /**
+     * @param snippets case-sensitive text that will be matched up against any portion of the log output
+     * @return a condition satisfied once any of the snippets has been observed
+     */
+    public static LogCondition anyOf(String... snippets) {
+        return new LogCondition(Kind.ANY_OF, validate(snippets), null, 1);
+    }
+
+    /**
+     * @param regex a regular expression that is found within individual lines of the log output
+     * @return a condition satisfied when a line of the log contains a match
+     */
+    public static LogCondition matches(String regex) {
+        return matches(Pattern.compile(regex));
+    }
+
+    /**
+     * @param pattern a pattern that is found within individual lines of the log output
+     * @return a condition satisfied when a line of the log contains a match
+     */
+    public static LogCondition matches(Pattern pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern is required");
+        }
+        return new LogCondition(Kind.REGEX, null, pattern, 1);
+    }
+
+    /**
+     * Requires the condition to be observed multiple times. For {@link #allOf(String...)} each snippet
+     * must be observed the given number of times, otherwise the occurrences of any snippet or regex
+     * match are counted together.
+     * @param times the number of occurrences to wait for
+     * @return a new condition that requires the given number of occurrences
+     */
+    public LogCondition times(int times) {
+        if (times < 1) {
+            throw new IllegalArgumentException("times must be at least 1");
+        }
+        return new LogCondition(kind, snippets, pattern, times);
+    }
+
+    /**
+     * @return a new, stateful matcher that evaluates this condition against a stream of log frames
+     */
+    LogMatcher newMatcher() {
+        if (kind == Kind.REGEX) {
+            return new LogMatcher.RegexLines(pattern, times);
+        }
+
+        final byte[][] encoded = new byte[snippets.length][];
+        for (int i = 0; i < snippets.length; i++) {
+            encoded[i] = snippets[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return new LogMatcher.Literals(encoded, kind == Kind.ALL_OF, times);
+    }
+
+    private static String[] validate(String[] snippets) {
+        if (snippets == null || snippets.length == 0) {
+            throw new IllegalArgumentException("At least one snippet is required");
+        }
+        for (String snippet : snippets) {
+            if (snippet == null || snippet.isEmpty()) {
+                throw new IllegalArgumentException("Snippets must be non-empty");
+            }
+        }
+        return snippets.clone();
+    }
+
+    @Override
+    public String toString() {
+        final String subject = kind == Kind.REGEX ?
+                "matches(" + pattern.pattern() + describeFlags(pattern.flags()) + ")" :
+                (kind == Kind.ALL_OF ? "allOf" : "anyOf") + Arrays.toString(snippets);
+        return times > 1 ? subject + ".times(" + times + ")" : subject;
+    }
+
+    /**
+     * @return the names of the given {@link Pattern} flags, preceded by a comma, or empty when there are none
+     */
+    private static String describeFlags(int flags) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < FLAGS.length; i++) {
+            if ((flags & FLAGS[i]) != 0) {
+                result.append(result.length() == 0 ? ", " : "|").append(FLAG_NAMES[i]);
+                flags &= ~FLAGS[i];
+            }
+        }
+        if (flags != 0) {
+            result.append(result.length() == 0 ? ", " : "|").append("0x").append(Integer.toHexString(flags));
+        }
+        return result.toString();
+    }
+}
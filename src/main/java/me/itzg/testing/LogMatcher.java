@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Incrementally evaluates a {@link LogCondition} against the raw frames of a container log.
+ * State is carried from one frame to the next, so matches may span frame boundaries.
+ * Instances are not thread-safe.
+ *
+ * @since 1.4
+ */
+abstract class LogMatcher {
+
+    private boolean satisfied;
+
+    /**
+     * Consumes the remaining bytes of the given frame without changing its position.
+     * @param frame the content of a log message
+     * @return true once the condition has been satisfied, including by earlier frames
+     */
+    boolean feed(ByteBuffer frame) {
+        if (!satisfied) {
+            satisfied = scan(frame);
+        }
+        return satisfied;
+    }
+
+    /**
+     * Evaluates input held back for more frames, such as a final line without a trailing newline, once the
+     * log has ended.
+     * @return true once the condition has been satisfied, including by earlier frames
+     */
+    boolean finish() {
+        if (!satisfied) {
+            satisfied = flush();
+        }
+        return satisfied;
+    }
+
+    boolean isSatisfied() {
+        return satisfied;
+    }
+
+    protected abstract boolean scan(ByteBuffer frame);
+
+    protected boolean flush() {
+        return false;
+    }
+
+    /**
+     * Aho-Corasick automaton over the UTF-8 bytes of the snippets, expanded into a full transition
+     * table so that each log byte costs one array lookup.
+     */
+    static class Literals extends LogMatcher {
+        private static final int ALPHABET = 256;
+
+        private final int[] transitions;
+        private final int[][] outputs;
+        private final int[] counts;
+        private final boolean requireAll;
+        private final int times;
+        private int state;
+        private int total;
+        private int remaining;
+
+        Literals(byte[][] snippets, boolean requireAll, int times) {
+            this.requireAll = requireAll;
+            this.times = times;
+            this.counts = new int[snippets.length];
+            this.remaining = snippets.length;
+
+            int maxStates = 1;
+            for (byte[] snippet : snippets) {
+                maxStates += snippet.length;
+            }
+
+            final int[] trie = new int[maxStates * ALPHABET];
+            Arrays.fill(trie, -1);
+            final int[][] stateOutputs = new int[maxStates][];
+            int stateCount = 1;
+
+            for (int i = 0; i < snippets.length; i++) {
+                int current = 0;
+                for (byte b : snippets[i]) {
+                    final int slot = current * ALPHABET + (b & 0xff);
+                    if (trie[slot] < 0) {
+                        trie[slot] = stateCount++;
+                    }
+                    current = trie[slot];
+                }
+                stateOutputs[current] = append(stateOutputs[current], i);
+            }
+
+            final int[] fail = new int[stateCount];
+            final Queue<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < ALPHABET; c++) {
+                final int next = trie[c];
+                if (next < 0) {
+                    trie[c] = 0;
+                } else {
+                    fail[next] = 0;
+                    queue.add(next);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                final int current = queue.remove();
+                for (int c = 0; c < ALPHABET; c++) {
+                    final int slot = current * ALPHABET + c;
+                    final int next = trie[slot];
+                    final int fallback = trie[fail[current] * ALPHABET + c];
+                    if (next < 0) {
+                        trie[slot] = fallback;
+                    } else {
+                        fail[next] = fallback;
+                        stateOutputs[next] = concat(stateOutputs[next], stateOutputs[fallback]);
+                        queue.add(next);
+                    }
+                }
+            }
+
+            this.transitions = Arrays.copyOf(trie, stateCount * ALPHABET);
+            this.outputs = Arrays.copyOf(stateOutputs, stateCount);
+        }
+
+        @Override
+        protected boolean scan(ByteBuffer frame) {
+            int current = state;
+            for (int i = frame.position(), limit = frame.limit(); i < limit; i++) {
+                current = transitions[current * ALPHABET + (frame.get(i) & 0xff)];
+                final int[] matched = outputs[current];
+                if (matched != null && record(matched)) {
+                    state = current;
+                    return true;
+                }
+            }
+            state = current;
+            return false;
+        }
+
+        private boolean record(int[] matched) {
+            for (int index : matched) {
+                ++total;
+                if (++counts[index] == times) {
+                    --remaining;
+                }
+            }
+            return requireAll ? remaining == 0 : total >= times;
+        }
+
+        private static int[] append(int[] values, int value) {
+            if (values == null) {
+                return new int[]{value};
+            }
+            final int[] result = Arrays.copyOf(values, values.length + 1);
+            result[values.length] = value;
+            return result;
+        }
+
+        private static int[] concat(int[] first, int[] second) {
+            if (second == null) {
+                return first;
+            }
+            if (first == null) {
+                return second;
+            }
+            final int[] result = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, result, first.length, second.length);
+            return result;
+        }
+    }
+
+    /**
+     * Accumulates bytes into lines, reusing its buffers, and finds the pattern within each completed line.
+     */
+    static class RegexLines extends LogMatcher {
+        private static final int MAX_LINE = 64 * 1024;
+
+        private final Matcher matcher;
+        private final int times;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private byte[] line = new byte[256];
+        private ByteBuffer lineBuffer = ByteBuffer.wrap(line);
+        private CharBuffer chars = CharBuffer.allocate(256);
+        private int length;
+        private int count;
+
+        RegexLines(Pattern pattern, int times) {
+            this.matcher = pattern.matcher("");
+            this.times = times;
+        }
+
+        @Override
+        protected boolean scan(ByteBuffer frame) {
+            for (int i = frame.position(), limit = frame.limit(); i < limit; i++) {
+                final byte b = frame.get(i);
+                if (b == '\n' || length == MAX_LINE) {
+                    if (completeLine()) {
+                        return true;
+                    }
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE));
+                    lineBuffer = ByteBuffer.wrap(line);
+                }
+                line[length++] = b;
+            }
+            return false;
+        }
+
+        @Override
+        protected boolean flush() {
+            return length > 0 && completeLine();
+        }
+
+        private boolean completeLine() {
+            int end = length;
+            if (end > 0 && line[end - 1] == '\r') {
+                --end;
+            }
+            length = 0;
+
+            if (chars.capacity() < end) {
+                chars = CharBuffer.allocate(line.length);
+            }
+            // called through Buffer so that compiling on newer JDKs does not link the covariant overloads
+            // missing from Java 8
+            ((Buffer) lineBuffer).clear();
+            ((Buffer) lineBuffer).limit(end);
+            ((Buffer) chars).clear();
+            decoder.reset();
+            decoder.decode(lineBuffer, chars, true);
+            decoder.flush(chars);
+            ((Buffer) chars).flip();
+
+            matcher.reset(chars);
+            while (matcher.find()) {
+                if (++count >= times) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
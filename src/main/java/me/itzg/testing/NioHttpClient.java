@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.google.common.net.InetAddresses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal non-blocking HTTP client used to probe endpoints. A single selector thread drives every
+ * in-flight request along with the timers used for per-request timeouts and retry backoff.
+ * Only the status line of each response is read.
+ *
+ * <p>Plain HTTP requests use NIO, and host names that are not IP literals are resolved on a separate
+ * thread pool so a slow lookup does not stall other requests. HTTPS requests fall back to
+ * {@link HttpURLConnection} on that pool, still with the given timeout.</p>
+ *
+ * @since 1.4
+ */
+final class NioHttpClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioHttpClient.class);
+
+    private static final int MAX_STATUS_LINE = 512;
+
+    private static volatile NioHttpClient instance;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(
+            Comparator.<Timer>comparingLong(timer -> timer.dueNanos).thenComparingLong(timer -> timer.sequence));
+    private final ExecutorService blockingExecutor = Executors.newCachedThreadPool(r -> {
+        final Thread thread = new Thread(r, "docker-rule-http-blocking");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long timerSequence;
+
+    private static class Timer {
+        final long dueNanos;
+        final long sequence;
+        final Runnable task;
+        boolean cancelled;
+
+        Timer(long dueNanos, long sequence, Runnable task) {
+            this.dueNanos = dueNanos;
+            this.sequence = sequence;
+            this.task = task;
+        }
+    }
+
+    private NioHttpClient() throws IOException {
+        selector = Selector.open();
+        final Thread thread = new Thread(this::loop, "docker-rule-http-selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    static NioHttpClient get() throws IOException {
+        NioHttpClient result = instance;
+        if (result == null) {
+            synchronized (NioHttpClient.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new NioHttpClient();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Issues a GET request.
+     * @param url the http or https URL to request
+     * @param timeoutMillis the maximum time for connecting and receiving the status line
+     * @return a future completed with the response code, or exceptionally with the {@link IOException}
+     * that prevented obtaining one. Completion happens on an internal thread, so dependent stages
+     * should be quick or run asynchronously.
+     */
+    CompletableFuture<Integer> get(URL url, long timeoutMillis) {
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        if ("https".equalsIgnoreCase(url.getProtocol())) {
+            blockingExecutor.execute(() -> getBlocking(url, timeoutMillis, result));
+            return result;
+        }
+
+        final Exchange exchange = new Exchange(url, result);
+        execute(() -> startTimer(exchange, timeoutMillis));
+        final String host = url.getHost();
+        final int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+        if (InetAddresses.isInetAddress(host)) {
+            final InetSocketAddress address = new InetSocketAddress(InetAddresses.forString(host), port);
+            execute(() -> connect(exchange, address));
+        } else {
+            // looking up a host name blocks, so it is kept off the selector thread
+            blockingExecutor.execute(() -> {
+                final InetSocketAddress address = new InetSocketAddress(host, port);
+                execute(() -> connect(exchange, address));
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Runs the given task on the selector thread after the given delay.
+     */
+    void schedule(long delayMillis, Runnable task) {
+        final long dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        execute(() -> timers.add(new Timer(dueNanos, timerSequence++, task)));
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void getBlocking(URL url, long timeoutMillis, CompletableFuture<Integer> result) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                connection.setConnectTimeout((int) timeoutMillis);
+                connection.setReadTimeout((int) timeoutMillis);
+                result.complete(connection.getResponseCode());
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            try {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                final long waitMillis = runDueTimers();
+                if (waitMillis < 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(waitMillis);
+                }
+
+                final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+                    ((Exchange) key.attachment()).handle(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Unexpected failure in HTTP probe loop", e);
+            }
+        }
+    }
+
+    /**
+     * @return milliseconds until the next timer is due, 0 if there are none, or -1 if one is already due
+     */
+    private long runDueTimers() {
+        while (!timers.isEmpty()) {
+            final Timer next = timers.peek();
+            if (next.cancelled) {
+                timers.remove();
+                continue;
+            }
+            final long remaining = next.dueNanos - System.nanoTime();
+            if (remaining > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+            }
+            timers.remove();
+            try {
+                next.task.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unexpected failure in HTTP probe timer", e);
+            }
+        }
+        return tasks.isEmpty() ? 0 : -1;
+    }
+
+    private void startTimer(Exchange exchange, long timeoutMillis) {
+        exchange.timer = new Timer(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), timerSequence++,
+                () -> exchange.fail(new SocketTimeoutException(
+                        String.format("No response from %s within %d ms", exchange.url, timeoutMillis))));
+        timers.add(exchange.timer);
+    }
+
+    /**
+     * Connects the exchange unless it already timed out while its address was being resolved.
+     */
+    private void connect(Exchange exchange, InetSocketAddress address) {
+        if (exchange.result.isDone()) {
+            return;
+        }
+        try {
+            if (address.isUnresolved()) {
+                throw new UnknownHostException(exchange.url.getHost());
+            }
+
+            final SocketChannel channel = SocketChannel.open();
+            exchange.channel = channel;
+            channel.configureBlocking(false);
+            final boolean connected = channel.connect(address);
+            channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, exchange);
+        } catch (IOException e) {
+            exchange.fail(e);
+        }
+    }
+
+    private static class Exchange {
+        final URL url;
+        final CompletableFuture<Integer> result;
+        final ByteBuffer request;
+        final ByteBuffer response = ByteBuffer.allocate(MAX_STATUS_LINE);
+        SocketChannel channel;
+        Timer timer;
+
+        Exchange(URL url, CompletableFuture<Integer> result) {
+            this.url = url;
+            this.result = result;
+
+            final String path = url.getFile().isEmpty() ? "/" : url.getFile();
+            final String host = url.getPort() >= 0 ? url.getHost() + ":" + url.getPort() : url.getHost();
+            request = ByteBuffer.wrap(("GET " + path + " HTTP/1.1\r\n" +
+                    "Host: " + host + "\r\n" +
+                    "User-Agent: junit-rule-docker\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else if (key.isWritable()) {
+                    channel.write(request);
+                    if (!request.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                } else if (key.isReadable()) {
+                    final int read = channel.read(response);
+                    final int code = parseStatusLine();
+                    if (code >= 0) {
+                        complete(code);
+                    } else if (read < 0) {
+                        throw new EOFException("Connection closed before receiving status line from " + url);
+                    } else if (!response.hasRemaining()) {
+                        throw new ProtocolException("Status line too long from " + url);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * @return the status code or -1 if the status line has not been fully received
+         */
+        private int parseStatusLine() throws ProtocolException {
+            final byte[] bytes = response.array();
+            for (int i = 1; i < response.position(); i++) {
+                if (bytes[i - 1] == '\r' && bytes[i] == '\n') {
+                    // HTTP/1.1 200 OK
+                    final String line = new String(bytes, 0, i - 1, StandardCharsets.US_ASCII);
+                    final String[] parts = line.split(" ", 3);
+                    if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                        throw new ProtocolException("Invalid status line from " + url + ": " + line);
+                    }
+                    try {
+                        return Integer.parseInt(parts[1]);
+                    } catch (NumberFormatException e) {
+                        throw new ProtocolException("Invalid status line from " + url + ": " + line);
+                    }
+                }
+            }
+            return -1;
+        }
+
+        void complete(int code) {
+            close();
+            result.complete(code);
+        }
+
+        void fail(Throwable e) {
+            close();
+            result.completeExceptionally(e);
+        }
+
+        private void close() {
+            timer.cancelled = true;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.trace("Failed to close channel to {}", url, e);
+                }
+            }
+        }
+    }
+}
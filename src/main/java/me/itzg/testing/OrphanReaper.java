@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerCertificateException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.spotify.docker.client.DockerClient.ListContainersParam.allContainers;
+import static com.spotify.docker.client.DockerClient.ListContainersParam.withLabel;
+
+/**
+ * Removes containers that were created by {@link DockerRule} in other JVMs that have provably exited and are older
+ * than a threshold, such as those left behind by a build that was killed or by
+ * {@link DockerRule#leavingRunning(boolean)}. Containers created by this JVM are never removed.
+ *
+ * <p>Each JVM holds a lock on a file named by its session, see {@link SessionLocks}, for as long as it runs. A
+ * container is only removed when that file exists and its lock has been released, so containers of concurrent
+ * builds and parallel forks on this host are left alone. Containers shared by {@link DockerRule#shareAcrossJvms(boolean)}
+ * are only removed once no JVM holds a reference to them.</p>
+ *
+ * <p>Containers created on other hosts of a shared daemon, by JVMs using a different <code>dockerRule.shareDir</code>,
+ * or whose session file was deleted, such as by clearing the temporary directory, cannot be proven orphaned and are
+ * never removed. Those must be removed by other means, such as by filtering on the
+ * <code>me.itzg.junit-rule-docker</code> label.</p>
+ *
+ * <p>Besides calling {@link #reap()} on demand, setting the <code>dockerRule.reapOrphansOlderThan</code> system
+ * property to an age in milliseconds reaps each Docker endpoint the first time a rule connects to it.</p>
+ *
+ * <pre>
+ *     int removed = new OrphanReaper().maxAge(TimeUnit.HOURS.toMillis(2)).reap();
+ * </pre>
+ *
+ * @since 1.4
+ */
+public class OrphanReaper {
+    public static final long DEFAULT_MAX_AGE = TimeUnit.HOURS.toMillis(1);
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrphanReaper.class);
+
+    private static final Long STARTUP_MAX_AGE = Long.getLong("dockerRule.reapOrphansOlderThan");
+    private static final Set<DockerEndpoint> REAPED_AT_STARTUP = ConcurrentHashMap.newKeySet();
+
+    private String uri;
+    private Path dockerCertPath;
+    private long maxAge = DEFAULT_MAX_AGE;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * @param uri the Docker daemon's endpoint, rather than the one in the current environment
+     * @return this for chaining
+     */
+    public OrphanReaper uri(String uri) {
+        this.uri = uri;
+        return this;
+    }
+
+    /**
+     * @param dockerCertPath the path to a directory that contains cert.pem, key.pem, and ca.pem
+     * @return this for chaining
+     */
+    public OrphanReaper dockerCertPath(Path dockerCertPath) {
+        this.dockerCertPath = dockerCertPath;
+        return this;
+    }
+
+    /**
+     * @param maxAge containers created longer than this many milliseconds ago are removed.
+     *               The default is one hour.
+     * @return this for chaining
+     */
+    public OrphanReaper maxAge(long maxAge) {
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    /**
+     * @param parallelism the number of containers to remove at the same time
+     * @return this for chaining
+     */
+    public OrphanReaper parallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Kills and removes the orphaned containers.
+     * @return the number of containers removed
+     */
+    public int reap() throws DockerCertificateException, DockerException, InterruptedException {
+        return reap(DockerClientFactory.obtain(DockerEndpoint.of(uri, dockerCertPath)), maxAge, parallelism);
+    }
+
+    /**
+     * Reaps the given endpoint if enabled by the <code>dockerRule.reapOrphansOlderThan</code> system property
+     * and not already done by this JVM.
+     */
+    static void reapAtStartup(DockerClient dockerClient, DockerEndpoint endpoint) {
+        if (STARTUP_MAX_AGE == null || !REAPED_AT_STARTUP.add(endpoint)) {
+            return;
+        }
+        try {
+            reap(dockerClient, STARTUP_MAX_AGE, DEFAULT_PARALLELISM);
+        } catch (DockerException e) {
+            LOGGER.warn("Failed to reap orphaned containers of {}", endpoint, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static int reap(DockerClient dockerClient, long maxAge, int parallelism)
+            throws DockerException, InterruptedException {
+        final List<Container> candidates =
+                dockerClient.listContainers(allContainers(), withLabel(ContainerLabels.LIBRARY));
+        final List<Container> orphans = findOrphans(candidates, System.currentTimeMillis() - maxAge);
+        if (orphans.isEmpty()) {
+            return 0;
+        }
+
+        LOGGER.info("Removing {} orphaned containers", orphans.size());
+        final Set<String> exitedSessions = ConcurrentHashMap.newKeySet();
+        for (Container orphan : orphans) {
+            exitedSessions.add(orphan.labels().get(ContainerLabels.SESSION));
+        }
+        final Set<String> retainedSessions = ConcurrentHashMap.newKeySet();
+        for (Container candidate : candidates) {
+            if (!orphans.contains(candidate) && candidate.labels() != null
+                    && candidate.labels().get(ContainerLabels.SESSION) != null) {
+                retainedSessions.add(candidate.labels().get(ContainerLabels.SESSION));
+            }
+        }
+        final AtomicInteger removed = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, orphans.size()), r -> {
+            final Thread thread = new Thread(r, "docker-rule-orphan-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>(orphans.size());
+            for (Container orphan : orphans) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        dockerClient.removeContainer(orphan.id(),
+                                DockerClient.RemoveContainerParam.forceKill(),
+                                DockerClient.RemoveContainerParam.removeVolumes());
+                        removed.incrementAndGet();
+                        LOGGER.debug("Removed orphaned container {} of {}", orphan.id(),
+                                orphan.labels().get(ContainerLabels.TEST));
+                    } catch (DockerException e) {
+                        LOGGER.warn("Failed to remove orphaned container {}", orphan.id(), e);
+                        retainedSessions.add(orphan.labels().get(ContainerLabels.SESSION));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.warn("Failed to remove orphaned container", e.getCause());
+                    // unknown which session, so keep their files
+                    retainedSessions.addAll(exitedSessions);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (String session : exitedSessions) {
+            if (session != null && !retainedSessions.contains(session) && SessionLocks.hasExited(session)) {
+                SessionLocks.forget(session);
+            }
+        }
+        return removed.get();
+    }
+
+    /**
+     * @param createdBefore epoch milliseconds before which a container must have been created to be an orphan
+     */
+    static List<Container> findOrphans(List<Container> candidates, long createdBefore) {
+        final List<Container> orphans = new ArrayList<>();
+        for (Container container : candidates) {
+            final Map<String, String> labels = container.labels();
+            if (labels == null
+                    || ContainerLabels.SESSION_ID.equals(labels.get(ContainerLabels.SESSION))
+                    || createdMillis(container) >= createdBefore) {
+                continue;
+            }
+
+            final String shareSession = labels.get(CrossJvmContainers.LABEL_SHARE_SESSION);
+            final String reuseKey = labels.get(CrossJvmContainers.LABEL_REUSE_KEY);
+            final boolean orphaned;
+            if (shareSession != null && reuseKey != null) {
+                // outlives the JVM that created it while other JVMs use it
+                orphaned = CrossJvmContainers.isUnused(shareSession, reuseKey);
+            } else {
+                final String session = labels.get(ContainerLabels.SESSION);
+                orphaned = session != null && SessionLocks.hasExited(session);
+            }
+            if (orphaned) {
+                orphans.add(container);
+            } else {
+                LOGGER.debug("Keeping container {} that may still be in use", container.id());
+            }
+        }
+        return orphans;
+    }
+
+    private static long createdMillis(Container container) {
+        final String created = container.labels().get(ContainerLabels.CREATED);
+        if (created != null) {
+            try {
+                return Long.parseLong(created);
+            } catch (NumberFormatException e) {
+                LOGGER.debug("Invalid creation label on container {}", container.id());
+            }
+        }
+        return TimeUnit.SECONDS.toMillis(container.created());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.messages.PortBinding;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of a container's published ports, or of its exposed ports when accessed directly on its
+ * network, resolved once so that lookups need no further calls to the Docker daemon.
+ *
+ * @since 1.4
+ */
+final class PortBindings {
+    static final PortBindings EMPTY = new PortBindings(new int[0], new InetSocketAddress[0],
+            new int[0], new InetSocketAddress[0]);
+
+    private final int[] tcpPorts;
+    private final InetSocketAddress[] tcpAddresses;
+    private final int[] udpPorts;
+    private final InetSocketAddress[] udpAddresses;
+
+    private PortBindings(int[] tcpPorts, InetSocketAddress[] tcpAddresses,
+                         int[] udpPorts, InetSocketAddress[] udpAddresses) {
+        this.tcpPorts = tcpPorts;
+        this.tcpAddresses = tcpAddresses;
+        this.udpPorts = udpPorts;
+        this.udpAddresses = udpAddresses;
+    }
+
+    /**
+     * @param host the host through which published ports are accessed
+     * @param ports the port bindings as reported by {@link com.spotify.docker.client.messages.NetworkSettings#ports()},
+     *              keyed by strings such as <code>80/tcp</code>
+     */
+    static PortBindings from(String host, Map<String, List<PortBinding>> ports) {
+        if (ports == null || ports.isEmpty()) {
+            return EMPTY;
+        }
+
+        final Table tcp = new Table(ports.size());
+        final Table udp = new Table(ports.size());
+
+        for (Map.Entry<String, List<PortBinding>> entry : ports.entrySet()) {
+            final List<PortBinding> bindings = entry.getValue();
+            if (bindings == null || bindings.isEmpty()) {
+                continue;
+            }
+
+            add(tcp, udp, entry.getKey(), host, Integer.parseInt(bindings.get(0).hostPort()));
+        }
+
+        return build(tcp, udp);
+    }
+
+    /**
+     * @param address the address of the container on a network routable from this host
+     * @param exposedPorts the ports exposed by the container, such as <code>80/tcp</code>, which are accessed
+     *                     directly at the same port of the given address
+     */
+    static PortBindings direct(String address, Set<String> exposedPorts) {
+        if (exposedPorts == null || exposedPorts.isEmpty()) {
+            return EMPTY;
+        }
+
+        final Table tcp = new Table(exposedPorts.size());
+        final Table udp = new Table(exposedPorts.size());
+
+        for (String key : exposedPorts) {
+            add(tcp, udp, key, address, -1);
+        }
+
+        return build(tcp, udp);
+    }
+
+    /**
+     * @param hostPort the port accessed on the host or -1 for the container port itself
+     */
+    private static void add(Table tcp, Table udp, String key, String host, int hostPort) {
+        final int slash = key.indexOf('/');
+        final int containerPort = Integer.parseInt(slash >= 0 ? key.substring(0, slash) : key);
+        final String protocol = slash >= 0 ? key.substring(slash + 1) : "tcp";
+        final InetSocketAddress address = new InetSocketAddress(host, hostPort >= 0 ? hostPort : containerPort);
+
+        if (protocol.equals("tcp")) {
+            tcp.add(containerPort, address);
+        } else if (protocol.equals("udp")) {
+            udp.add(containerPort, address);
+        }
+    }
+
+    private static PortBindings build(Table tcp, Table udp) {
+        tcp.sort();
+        udp.sort();
+        return new PortBindings(tcp.ports, tcp.addresses, udp.ports, udp.addresses);
+    }
+
+    /**
+     * @return the host address of the given container TCP port or null if it is not published
+     */
+    InetSocketAddress tcp(int containerPort) {
+        return lookup(tcpPorts, tcpAddresses, containerPort);
+    }
+
+    /**
+     * @return the host address of the given container UDP port or null if it is not published
+     */
+    InetSocketAddress udp(int containerPort) {
+        return lookup(udpPorts, udpAddresses, containerPort);
+    }
+
+    private static InetSocketAddress lookup(int[] ports, InetSocketAddress[] addresses, int containerPort) {
+        final int index = Arrays.binarySearch(ports, containerPort);
+        return index >= 0 ? addresses[index] : null;
+    }
+
+    private static class Table {
+        int[] ports;
+        InetSocketAddress[] addresses;
+        int size;
+
+        Table(int capacity) {
+            ports = new int[capacity];
+            addresses = new InetSocketAddress[capacity];
+        }
+
+        void add(int port, InetSocketAddress address) {
+            ports[size] = port;
+            addresses[size] = address;
+            ++size;
+        }
+
+        void sort() {
+            // insertion sort keeps the two arrays aligned and is plenty for the handful of ports a container has
+            for (int i = 1; i < size; i++) {
+                final int port = ports[i];
+                final InetSocketAddress address = addresses[i];
+                int j = i - 1;
+                while (j >= 0 && ports[j] > port) {
+                    ports[j + 1] = ports[j];
+                    addresses[j + 1] = addresses[j];
+                    --j;
+                }
+                ports[j + 1] = port;
+                addresses[j + 1] = address;
+            }
+            ports = Arrays.copyOf(ports, size);
+            addresses = Arrays.copyOf(addresses, size);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+/**
+ * Declares when {@link DockerRule} pulls its image from the registry.
+ *
+ * @since 1.4
+ */
+public enum PullPolicy {
+    /**
+     * Pulls the image every time the rule starts a container, which picks up updates to moving tags
+     * such as <code>latest</code>. Concurrent rules needing the same image share one pull.
+     * An image pulled by the {@link ImagePrefetcher} at the start of the run is not pulled again.
+     */
+    ALWAYS,
+    /**
+     * Pulls the image only when it is not already present on the Docker daemon.
+     * Presence is remembered for the life of the JVM.
+     */
+    IF_NOT_PRESENT,
+    /**
+     * Never pulls and fails when the image is not already present on the Docker daemon,
+     * which is useful for offline or air-gapped environments.
+     */
+    NEVER
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives {@link ReadinessProbe}s access to the container being probed and records how long each probe took.
+ *
+ * @since 1.4
+ */
+public final class ReadinessContext {
+    private final DockerClient dockerClient;
+    private final String containerId;
+    private final PortBindings portBindings;
+    private final ContainerEvents.Tracker tracker;
+    private final List<Timing> timings = new ArrayList<>();
+
+    private enum Outcome {
+        RUNNING, READY, TIMED_OUT, CANCELLED, FAILED
+    }
+
+    private static class Timing {
+        final ReadinessProbe probe;
+        final long startedNanos = System.nanoTime();
+        volatile long elapsedMillis;
+        volatile Outcome outcome = Outcome.RUNNING;
+        volatile Throwable failure;
+
+        Timing(ReadinessProbe probe) {
+            this.probe = probe;
+        }
+    }
+
+    ReadinessContext(DockerClient dockerClient, String containerId, PortBindings portBindings) {
+        this(dockerClient, containerId, portBindings, null);
+    }
+
+    ReadinessContext(DockerClient dockerClient, String containerId, PortBindings portBindings,
+                     ContainerEvents.Tracker tracker) {
+        this.dockerClient = dockerClient;
+        this.containerId = containerId;
+        this.portBindings = portBindings;
+        this.tracker = tracker;
+    }
+
+    /**
+     * @return the events of the container or null if not available
+     */
+    ContainerEvents.Tracker tracker() {
+        return tracker;
+    }
+
+    public DockerClient getDockerClient() {
+        return dockerClient;
+    }
+
+    public String getContainerId() {
+        return containerId;
+    }
+
+    /**
+     * @param containerPort the <code>EXPOSE</code>d/internal TCP port of the container
+     * @return the externally accessible address of the port or null if it is not published
+     */
+    public InetSocketAddress getAccessToPort(int containerPort) {
+        return portBindings.tcp(containerPort);
+    }
+
+    /**
+     * Runs the given probe while recording its outcome and duration. Composite probes use this to
+     * run each of their children, so that the timing of every probe can be reported.
+     *
+     * @param probe the probe to run
+     * @param deadlineNanos the {@link System#nanoTime()} value after which the probe should give up
+     * @return the result of {@link ReadinessProbe#await(ReadinessContext, long)}
+     */
+    public boolean run(ReadinessProbe probe, long deadlineNanos) throws Exception {
+        final Timing timing = new Timing(probe);
+        synchronized (timings) {
+            timings.add(timing);
+        }
+
+        try {
+            final boolean ready = probe.await(this, deadlineNanos);
+            timing.outcome = ready ? Outcome.READY : Outcome.TIMED_OUT;
+            return ready;
+        } catch (InterruptedException e) {
+            timing.outcome = System.nanoTime() - deadlineNanos >= 0 ? Outcome.TIMED_OUT : Outcome.CANCELLED;
+            throw e;
+        } catch (Exception e) {
+            timing.failure = e;
+            timing.outcome = Outcome.FAILED;
+            throw e;
+        } finally {
+            timing.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timing.startedNanos);
+        }
+    }
+
+    /**
+     * @return one line per probe run so far describing its outcome and how long it took
+     */
+    String report() {
+        final StringBuilder sb = new StringBuilder();
+        synchronized (timings) {
+            for (Timing timing : timings) {
+                sb.append("\n  ").append(timing.probe).append(": ");
+                switch (timing.outcome) {
+                    case RUNNING:
+                        sb.append("still waiting after ")
+                                .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timing.startedNanos))
+                                .append(" ms");
+                        break;
+                    case READY:
+                        sb.append("ready after ").append(timing.elapsedMillis).append(" ms");
+                        break;
+                    case TIMED_OUT:
+                        sb.append("timed out after ").append(timing.elapsedMillis).append(" ms");
+                        break;
+                    case CANCELLED:
+                        sb.append("cancelled after ").append(timing.elapsedMillis).append(" ms");
+                        break;
+                    case FAILED:
+                        sb.append("failed after ").append(timing.elapsedMillis).append(" ms: ")
+                                .append(timing.failure);
+                        break;
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
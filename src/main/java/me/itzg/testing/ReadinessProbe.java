@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+/**
+ * Determines when a container started by {@link DockerRule} is ready for the test to proceed.
+ * Implementations are provided by {@link ReadinessProbes} and may be combined with
+ * {@link ReadinessProbes#allOf(ReadinessProbe...)} and {@link ReadinessProbes#anyOf(ReadinessProbe...)}.
+ *
+ * <p>Implementations should override {@link Object#toString()} with a short description, since it
+ * is used when reporting probes that did not complete in time.</p>
+ *
+ * <p>The probes provided by {@link ReadinessProbes} are part of the configuration compared by
+ * {@link DockerRule#reuseContainer(boolean)} and {@link DockerRule#shareAcrossJvms(boolean)}. Other
+ * implementations, such as lambdas, have no stable description to compare, so a rule attaching to a
+ * shared container runs them against it before its test proceeds.</p>
+ *
+ * @since 1.4
+ */
+public interface ReadinessProbe {
+
+    /**
+     * Blocks until the container is ready according to this probe or the deadline has passed.
+     * Implementations must respond to interruption, which is used to cancel probes whose result is
+     * no longer needed.
+     *
+     * @param context provides access to the container being probed
+     * @param deadlineNanos the {@link System#nanoTime()} value after which the probe should give up
+     * @return true if the container is ready, false if the deadline passed first
+     * @throws InterruptedException if the probe was cancelled
+     * @throws Exception if the probe determined that the container cannot become ready
+     */
+    boolean await(ReadinessContext context, long deadlineNanos) throws Exception;
+}
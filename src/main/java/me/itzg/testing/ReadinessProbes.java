@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the standard {@link ReadinessProbe}s and ways to combine them. Probes combined with
+ * {@link #allOf(ReadinessProbe...)} or {@link #anyOf(ReadinessProbe...)} run concurrently, so startup
+ * is bounded by the slowest probe rather than the sum of all of them.
+ *
+ * <p>The following waits for Elasticsearch to log "started" and answer HTTP requests:</p>
+ * <pre>
+ *     new DockerRule("itzg/elasticsearch:5")
+ *         .waitFor(ReadinessProbes.log(LogCondition.contains("started")))
+ *         .waitFor(ReadinessProbes.http(9200, "/", 200));
+ * </pre>
+ *
+ * @since 1.4
+ */
+public final class ReadinessProbes {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadinessProbes.class);
+
+    static final long POLL_INTERVAL = 100;
+    static final int MAX_ATTEMPT_TIMEOUT = 5000;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "docker-rule-readiness-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private ReadinessProbes() {
+    }
+
+    /**
+     * @param condition the condition to observe within the stdout/stderr log of the container
+     * @return a probe that is ready once the condition is satisfied
+     */
+    public static ReadinessProbe log(LogCondition condition) {
+        return new LogProbe(condition);
+    }
+
+    /**
+     * Note that Docker's userland proxy may accept connections to a published port before the
+     * container itself is listening, so {@link #http(int, String, int)} or a log condition is more
+     * reliable when available.
+     *
+     * @param containerPort the <code>EXPOSE</code>d/internal TCP port of the container
+     * @return a probe that is ready once a TCP connection to the published port succeeds
+     */
+    public static ReadinessProbe tcpPort(int containerPort) {
+        return new TcpPortProbe(containerPort);
+    }
+
+    /**
+     * @param containerPort the <code>EXPOSE</code>d/internal TCP port of the container
+     * @param path the path of the request, such as <code>/</code>
+     * @param expectedResponseCode the response code that indicates readiness, such as 200
+     * @return a probe that is ready once an HTTP GET of the path responds with the expected code
+     */
+    public static ReadinessProbe http(int containerPort, String path, int expectedResponseCode) {
+        return new HttpProbe(containerPort, path, expectedResponseCode);
+    }
+
+    /**
+     * @return a probe that is ready once the container's <code>HEALTHCHECK</code> reports healthy
+     */
+    public static ReadinessProbe healthcheck() {
+        return new HealthcheckProbe();
+    }
+
+    /**
+     * @param probes the probes to run concurrently
+     * @return a probe that is ready once all of the given probes are ready
+     */
+    public static ReadinessProbe allOf(ReadinessProbe... probes) {
+        return new CompositeProbe(true, Arrays.asList(probes));
+    }
+
+    /**
+     * @param probes the probes to run concurrently
+     * @return a probe that is ready once any of the given probes is ready
+     */
+    public static ReadinessProbe anyOf(ReadinessProbe... probes) {
+        return new CompositeProbe(false, Arrays.asList(probes));
+    }
+
+    static ReadinessProbe allOf(List<ReadinessProbe> probes) {
+        return new CompositeProbe(true, new ArrayList<>(probes));
+    }
+
+    /**
+     * @return the description of a probe provided by this class, which is the same for equally configured
+     * probes, or null for other probes
+     */
+    static String describe(ReadinessProbe probe) {
+        if (probe instanceof CompositeProbe) {
+            for (ReadinessProbe member : ((CompositeProbe) probe).probes) {
+                if (describe(member) == null) {
+                    return null;
+                }
+            }
+            return probe.toString();
+        }
+        if (probe instanceof LogProbe || probe instanceof TcpPortProbe || probe instanceof HttpProbe
+                || probe instanceof HealthcheckProbe) {
+            return probe.toString();
+        }
+        return null;
+    }
+
+    private static long remainingMillis(long deadlineNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    private static int attemptTimeout(long deadlineNanos) {
+        return (int) Math.max(1, Math.min(MAX_ATTEMPT_TIMEOUT, remainingMillis(deadlineNanos)));
+    }
+
+    /**
+     * @return false if the deadline passes during the pause
+     */
+    private static boolean pause(long deadlineNanos) throws InterruptedException {
+        final long remaining = remainingMillis(deadlineNanos);
+        if (remaining <= 0) {
+            return false;
+        }
+        Thread.sleep(Math.min(POLL_INTERVAL, remaining));
+        return true;
+    }
+
+    static class LogProbe implements ReadinessProbe {
+        private final LogCondition condition;
+
+        LogProbe(LogCondition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean await(ReadinessContext context, long deadlineNanos) throws Exception {
+            final String containerId = context.getContainerId();
+            final LogStream logStream = context.getDockerClient().logs(containerId,
+                    DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr(), DockerClient.LogsParam.follow());
+
+            LOGGER.debug("Waiting for log condition {}", condition);
+
+            final Semaphore ready = new Semaphore(0);
+            final AtomicBoolean abandoned = new AtomicBoolean();
+            final LogMatcher matcher = condition.newMatcher();
+            final Thread follower = new Thread(() -> {
+                try {
+                    while (!abandoned.get() && logStream.hasNext()) {
+                        final LogMessage msg = logStream.next();
+
+                        if (LOGGER.isDebugEnabled()) {
+                            LOGGER.debug("CONTAINER: {}", StandardCharsets.UTF_8.decode(msg.content().duplicate()));
+                        }
+                        if (matcher.feed(msg.content())) {
+                            ready.release();
+                            return;
+                        }
+                    }
+                    if (!abandoned.get() && matcher.finish()) {
+                        ready.release();
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Stopped following log of container {}", containerId, e);
+                } finally {
+                    logStream.close();
+                }
+            }, "docker-rule-log-" + containerId.substring(0, Math.min(12, containerId.length())));
+            follower.setDaemon(true);
+            follower.start();
+
+            try {
+                return ready.tryAcquire(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } finally {
+                // Closing a followed log drains it until the container stops, so leave that to the follower
+                abandoned.set(true);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "log " + condition;
+        }
+    }
+
+    static class TcpPortProbe implements ReadinessProbe {
+        private final int containerPort;
+
+        TcpPortProbe(int containerPort) {
+            this.containerPort = containerPort;
+        }
+
+        @Override
+        public boolean await(ReadinessContext context, long deadlineNanos) throws Exception {
+            final InetSocketAddress address = context.getAccessToPort(containerPort);
+            if (address == null) {
+                throw new IllegalStateException("Port " + containerPort + " is not published");
+            }
+
+            do {
+                try (Socket socket = new Socket()) {
+                    socket.connect(address, attemptTimeout(deadlineNanos));
+                    return true;
+                } catch (IOException e) {
+                    LOGGER.trace("Connection to {} failed", address, e);
+                }
+            } while (pause(deadlineNanos));
+
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "tcp port " + containerPort;
+        }
+    }
+
+    static class HttpProbe implements ReadinessProbe {
+        private final int containerPort;
+        private final String path;
+        private final int expectedResponseCode;
+
+        HttpProbe(int containerPort, String path, int expectedResponseCode) {
+            this.containerPort = containerPort;
+            this.path = path;
+            this.expectedResponseCode = expectedResponseCode;
+        }
+
+        @Override
+        public boolean await(ReadinessContext context, long deadlineNanos) throws Exception {
+            final InetSocketAddress address = context.getAccessToPort(containerPort);
+            if (address == null) {
+                throw new IllegalStateException("Port " + containerPort + " is not published");
+            }
+            final URL url = new URL("http", address.getHostString(), address.getPort(), path);
+
+            do {
+                final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                try {
+                    connection.setConnectTimeout(attemptTimeout(deadlineNanos));
+                    connection.setReadTimeout(attemptTimeout(deadlineNanos));
+                    if (connection.getResponseCode() == expectedResponseCode) {
+                        return true;
+                    }
+                } catch (IOException e) {
+                    LOGGER.trace("Request to {} failed", url, e);
+                } finally {
+                    connection.disconnect();
+                }
+            } while (pause(deadlineNanos));
+
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "http " + expectedResponseCode + " from port " + containerPort + path;
+        }
+    }
+
+    static class HealthcheckProbe implements ReadinessProbe {
+        @Override
+        public boolean await(ReadinessContext context, long deadlineNanos) throws Exception {
+            final ContainerEvents.Tracker tracker = context.tracker();
+            if (tracker != null) {
+                // confirm there is a healthcheck to wait on, then wait on its events
+                final ContainerState state = context.getDockerClient().inspectContainer(context.getContainerId()).state();
+                if (state.health() == null) {
+                    throw new IllegalStateException("Container does not declare a HEALTHCHECK");
+                }
+                return "healthy".equals(state.health().status()) || tracker.awaitHealthy(deadlineNanos);
+            }
+
+            do {
+                final ContainerInfo info = context.getDockerClient().inspectContainer(context.getContainerId());
+                final ContainerState state = info.state();
+                if (state.health() == null) {
+                    throw new IllegalStateException("Container does not declare a HEALTHCHECK");
+                }
+                if ("healthy".equals(state.health().status())) {
+                    return true;
+                }
+                if (state.running() != null && !state.running()) {
+                    throw new IllegalStateException("Container exited with code " + state.exitCode());
+                }
+            } while (pause(deadlineNanos));
+
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "healthcheck";
+        }
+    }
+
+    static class CompositeProbe implements ReadinessProbe {
+        private final boolean requireAll;
+        private final List<ReadinessProbe> probes;
+
+        CompositeProbe(boolean requireAll, List<ReadinessProbe> probes) {
+            if (probes.isEmpty()) {
+                throw new IllegalArgumentException("At least one probe is required");
+            }
+            this.requireAll = requireAll;
+            this.probes = Collections.unmodifiableList(probes);
+        }
+
+        @Override
+        public boolean await(ReadinessContext context, long deadlineNanos) throws Exception {
+            if (probes.size() == 1) {
+                return context.run(probes.get(0), deadlineNanos);
+            }
+
+            final ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<>(EXECUTOR);
+            final List<Future<Boolean>> futures = new ArrayList<>(probes.size());
+            try {
+                for (ReadinessProbe probe : probes) {
+                    futures.add(completion.submit(() -> context.run(probe, deadlineNanos)));
+                }
+
+                Exception failure = null;
+                for (int i = 0; i < probes.size(); i++) {
+                    final Future<Boolean> done =
+                            completion.poll(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        return false;
+                    }
+
+                    boolean ready;
+                    try {
+                        ready = done.get();
+                    } catch (ExecutionException e) {
+                        final Exception cause = e.getCause() instanceof Exception ?
+                                (Exception) e.getCause() : e;
+                        if (requireAll) {
+                            throw cause;
+                        }
+                        failure = cause;
+                        ready = false;
+                    }
+
+                    if (ready && !requireAll) {
+                        return true;
+                    }
+                    if (!ready && requireAll) {
+                        return false;
+                    }
+                }
+
+                if (failure != null) {
+                    throw failure;
+                }
+                return requireAll;
+            } finally {
+                for (Future<Boolean> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return (requireAll ? "allOf" : "anyOf") + probes;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ExecCreation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * Provides the standard {@link ResetStrategy}s used by {@link DockerResetRule}.
+ *
+ * <p>Restoring from a checkpoint of the container's processes is not provided, since the Docker client
+ * does not support checkpoints and they require an experimental daemon with CRIU installed.</p>
+ *
+ * @since 1.4
+ */
+public final class ResetStrategies {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResetStrategies.class);
+
+    private ResetStrategies() {
+    }
+
+    /**
+     * Runs a command in the container, such as one that truncates the tables of a database or flushes a cache.
+     * The reset fails if the command exits with a non-zero code.
+     *
+     * @param command the command and its arguments
+     * @return the strategy
+     */
+    public static ResetStrategy exec(String... command) {
+        return new ExecStrategy(command);
+    }
+
+    /**
+     * Restores the given directories to their content when the first test started. After each test the
+     * container is paused while the original content is copied over the directories, so its processes see
+     * every original file restored at once and never a missing or partially copied directory. Once the
+     * container resumes, files created since the first test are found and removed by running <code>find</code>
+     * and <code>rm</code> in the container, so processes may briefly observe those files before they are removed.
+     * <p>
+     * This suits processes that read their state from files on demand. Processes that cache their state
+     * in memory should be reset with {@link #exec(String...)} instead. Restored files are owned by the
+     * container's root user.
+     * </p>
+     *
+     * @param containerPaths absolute paths of directories within the container
+     * @return the strategy
+     */
+    public static ResetStrategy restorePaths(String... containerPaths) {
+        return new RestorePathsStrategy(containerPaths);
+    }
+
+    /**
+     * Runs the command in the container and waits for it to exit.
+     * @return the combined stdout and stderr of the command
+     * @throws DockerException if the command exits with a non-zero code
+     */
+    static String exec(DockerClient dockerClient, String containerId, String... command)
+            throws DockerException, InterruptedException {
+        final ExecCreation exec = dockerClient.execCreate(containerId, command,
+                DockerClient.ExecCreateParam.attachStdout(), DockerClient.ExecCreateParam.attachStderr());
+        final String output;
+        try (LogStream stream = dockerClient.execStart(exec.id())) {
+            output = stream.readFully();
+        }
+        final Integer exitCode = dockerClient.execInspect(exec.id()).exitCode();
+        if (exitCode == null || exitCode != 0) {
+            throw new DockerException(String.format("Command %s in container %s exited with %s: %s",
+                    Arrays.toString(command), containerId, exitCode, output.trim()));
+        }
+        return output;
+    }
+
+    private static class ExecStrategy implements ResetStrategy {
+        private final String[] command;
+
+        ExecStrategy(String[] command) {
+            this.command = command;
+        }
+
+        @Override
+        public void reset(DockerRule dockerRule) throws Exception {
+            exec(dockerRule.getDockerClient(), dockerRule.getContainerId(), command);
+        }
+
+        @Override
+        public String toString() {
+            return "exec " + Arrays.toString(command);
+        }
+    }
+
+    private static class RestorePathsStrategy implements ResetStrategy {
+        /**
+         * The content captured per container and path, which is kept for other instances of the strategy
+         * since a <code>&#64;Rule</code> is created for each test.
+         */
+        private static final ConcurrentMap<String, Fixture> BASELINES = new ConcurrentHashMap<>();
+
+        /**
+         * The number of files removed by each <code>rm</code>, which keeps its command line within limits.
+         */
+        private static final int REMOVE_BATCH = 500;
+
+        private final String[] containerPaths;
+
+        RestorePathsStrategy(String[] containerPaths) {
+            this.containerPaths = containerPaths;
+        }
+
+        @Override
+        public void beforeTest(DockerRule dockerRule) throws Exception {
+            final String containerId = dockerRule.getContainerId();
+            for (String containerPath : containerPaths) {
+                final String key = containerId + "|" + containerPath;
+                if (!BASELINES.containsKey(key)) {
+                    BASELINES.put(key, capture(dockerRule.getDockerClient(), containerId, containerPath));
+                }
+            }
+        }
+
+        private static Fixture capture(DockerClient dockerClient, String containerId, String containerPath)
+                throws DockerException, InterruptedException, IOException {
+            LOGGER.debug("Capturing {} of container {}", containerPath, containerId);
+            final Path archive = Files.createTempFile("junit-rule-docker-baseline", ".tar");
+            try {
+                try (InputStream in = dockerClient.archiveContainer(containerId, containerPath)) {
+                    Files.copy(in, archive, StandardCopyOption.REPLACE_EXISTING);
+                }
+                final Fixture baseline = Fixture.archive(archive);
+                // extract now, while the archive exists
+                baseline.directory();
+                return baseline;
+            } finally {
+                Files.deleteIfExists(archive);
+            }
+        }
+
+        @Override
+        public void reset(DockerRule dockerRule) throws Exception {
+            final DockerClient dockerClient = dockerRule.getDockerClient();
+            final String containerId = dockerRule.getContainerId();
+
+            dockerClient.pauseContainer(containerId);
+            try {
+                for (String containerPath : containerPaths) {
+                    final Fixture baseline = BASELINES.get(containerId + "|" + containerPath);
+                    // the archive contains the directory itself, so it is restored into its parent
+                    dockerClient.copyToContainer(baseline.directory(), containerId, parentOf(containerPath));
+                }
+            } finally {
+                dockerClient.unpauseContainer(containerId);
+            }
+
+            // exec is not possible while paused, so files created by the test are removed afterwards
+            for (String containerPath : containerPaths) {
+                removeExtraFiles(dockerClient, containerId, containerPath,
+                        BASELINES.get(containerId + "|" + containerPath));
+            }
+        }
+
+        private static void removeExtraFiles(DockerClient dockerClient, String containerId, String containerPath,
+                                             Fixture baseline) throws Exception {
+            final String directory = containerPath.replaceAll("/+$", "");
+            final Set<String> original = new HashSet<>();
+            final Path root = baseline.directory();
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(file -> !file.equals(root)).forEach(file -> original.add(
+                        parentOf(directory).replaceAll("/+$", "") + "/" + root.relativize(file).toString()
+                                .replace(File.separatorChar, '/')));
+            }
+
+            final List<String> extra = new ArrayList<>();
+            final String listing = exec(dockerClient, containerId, "find", directory, "-mindepth", "1");
+            for (String line : listing.split("\n")) {
+                // skip any diagnostics that find wrote to stderr
+                if (line.startsWith(directory + "/") && !original.contains(line)) {
+                    extra.add(line);
+                }
+            }
+            for (int i = 0; i < extra.size(); i += REMOVE_BATCH) {
+                final List<String> command = new ArrayList<>(Arrays.asList("rm", "-rf", "--"));
+                command.addAll(extra.subList(i, Math.min(extra.size(), i + REMOVE_BATCH)));
+                exec(dockerClient, containerId, command.toArray(new String[command.size()]));
+            }
+        }
+
+        static String parentOf(String containerPath) {
+            final String path = containerPath.replaceAll("/+$", "");
+            final int slash = path.lastIndexOf('/');
+            return slash > 0 ? path.substring(0, slash) : "/";
+        }
+
+        @Override
+        public String toString() {
+            return "restore " + Arrays.toString(containerPaths);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+/**
+ * Restores the container of a class-scoped {@link DockerRule} between tests for {@link DockerResetRule}.
+ * Implementations are provided by {@link ResetStrategies}.
+ *
+ * <p>Implementations should override {@link Object#toString()} with a short description, since it
+ * is used when reporting a failed reset.</p>
+ *
+ * @since 1.4
+ */
+public interface ResetStrategy {
+
+    /**
+     * Called before each test. Strategies that restore a baseline should capture it the first time they see
+     * a container, which is the state it was in once ready and initialized.
+     *
+     * @param dockerRule the rule whose container is about to be used by a test
+     * @throws Exception if the baseline could not be captured
+     */
+    default void beforeTest(DockerRule dockerRule) throws Exception {
+    }
+
+    /**
+     * Called after each test to return the container to its state before the test.
+     *
+     * @param dockerRule the rule whose container was used by the test
+     * @throws Exception if the container could not be reset, which fails the test
+     */
+    void reset(DockerRule dockerRule) throws Exception;
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.messages.HostConfig;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declares the resources given to a container started by {@link DockerRule#resources(ResourceProfile)}.
+ * Mounting the data directories of I/O heavy containers as tmpfs avoids writing through the container's
+ * overlay filesystem, which can greatly speed up tests on slow disks.
+ *
+ * <p>The memory and CPUs a container is expected to use also determine when it may start if a host budget
+ * is configured, see {@link #expectedMemory(long)}.</p>
+ *
+ * <p>The following runs Elasticsearch with its data in memory and the ulimits it expects:</p>
+ * <pre>
+ *     new DockerRule("docker.elastic.co/elasticsearch/elasticsearch:5.5.2")
+ *         .resources(new ResourceProfile()
+ *             .tmpfs("/usr/share/elasticsearch/data")
+ *             .memory(2L * 1024 * 1024 * 1024)
+ *             .ulimit("nofile", 65536, 65536)
+ *             .ulimit("memlock", -1, -1));
+ * </pre>
+ *
+ * @since 1.4
+ */
+public class ResourceProfile {
+    private static final long CPU_PERIOD = 100000;
+
+    private final Map<String, String> tmpfs = new LinkedHashMap<>();
+    private final List<HostConfig.Ulimit> ulimits = new ArrayList<>();
+    private Long memory;
+    private Long memorySwap;
+    private Long cpuShares;
+    private Long cpuQuota;
+    private String cpusetCpus;
+    private Long shmSize;
+    private Long expectedMemory;
+    private Double expectedCpus;
+
+    /**
+     * Mounts an empty tmpfs at the given container path.
+     * @param containerPath the absolute path within the container
+     * @return this for chaining
+     */
+    public ResourceProfile tmpfs(String containerPath) {
+        return tmpfs(containerPath, "");
+    }
+
+    /**
+     * Mounts an empty tmpfs at the given container path.
+     * @param containerPath the absolute path within the container
+     * @param options mount options, such as <code>rw,size=512m,uid=1000</code>
+     * @return this for chaining
+     */
+    public ResourceProfile tmpfs(String containerPath, String options) {
+        tmpfs.put(containerPath, options);
+        return this;
+    }
+
+    /**
+     * @param bytes the memory limit of the container
+     * @return this for chaining
+     */
+    public ResourceProfile memory(long bytes) {
+        this.memory = bytes;
+        return this;
+    }
+
+    /**
+     * @param bytes the limit of memory plus swap, or -1 for unlimited swap
+     * @return this for chaining
+     */
+    public ResourceProfile memorySwap(long bytes) {
+        this.memorySwap = bytes;
+        return this;
+    }
+
+    /**
+     * @param cpuShares the relative CPU weight of the container, where 1024 is the default weight
+     * @return this for chaining
+     */
+    public ResourceProfile cpuShares(long cpuShares) {
+        this.cpuShares = cpuShares;
+        return this;
+    }
+
+    /**
+     * @param cpus the number of CPUs the container may use, such as 1.5
+     * @return this for chaining
+     */
+    public ResourceProfile cpus(double cpus) {
+        this.cpuQuota = (long) (cpus * CPU_PERIOD);
+        return this;
+    }
+
+    /**
+     * @param cpusetCpus the CPUs the container may run on, such as <code>0-3</code> or <code>0,1</code>
+     * @return this for chaining
+     */
+    public ResourceProfile cpusetCpus(String cpusetCpus) {
+        this.cpusetCpus = cpusetCpus;
+        return this;
+    }
+
+    /**
+     * @param name the name of the limit, such as <code>nofile</code> or <code>memlock</code>
+     * @param soft the soft limit, or -1 for unlimited
+     * @param hard the hard limit, or -1 for unlimited
+     * @return this for chaining
+     */
+    public ResourceProfile ulimit(String name, long soft, long hard) {
+        ulimits.add(HostConfig.Ulimit.create(name, soft, hard));
+        return this;
+    }
+
+    /**
+     * @param bytes the size of <code>/dev/shm</code>
+     * @return this for chaining
+     */
+    public ResourceProfile shmSize(long bytes) {
+        this.shmSize = bytes;
+        return this;
+    }
+
+    /**
+     * Declares the memory the container is expected to use, which is counted against the host budget of
+     * {@link DockerRule}s when one is configured. By default the memory limit is counted.
+     * @param bytes the memory the container is expected to use
+     * @return this for chaining
+     */
+    public ResourceProfile expectedMemory(long bytes) {
+        this.expectedMemory = bytes;
+        return this;
+    }
+
+    /**
+     * Declares the CPUs the container is expected to use, which are counted against the host budget of
+     * {@link DockerRule}s when one is configured. By default the CPU limit is counted.
+     * @param cpus the number of CPUs the container is expected to use, such as 1.5
+     * @return this for chaining
+     */
+    public ResourceProfile expectedCpus(double cpus) {
+        this.expectedCpus = cpus;
+        return this;
+    }
+
+    /**
+     * @return the memory limit in bytes or null if not limited
+     */
+    public Long getMemory() {
+        return memory;
+    }
+
+    /**
+     * @return the number of CPUs the container is limited to or null if not limited
+     */
+    public Double getCpus() {
+        return cpuQuota != null ? (double) cpuQuota / CPU_PERIOD : null;
+    }
+
+    /**
+     * @return the memory counted against the host budget, which is 0 when neither expected nor limited
+     */
+    long admissionMemory() {
+        return expectedMemory != null ? expectedMemory : memory != null ? memory : 0;
+    }
+
+    /**
+     * @return the CPUs counted against the host budget, which is 0 when neither expected nor limited
+     */
+    double admissionCpus() {
+        final Double cpus = expectedCpus != null ? expectedCpus : getCpus();
+        return cpus != null ? cpus : 0;
+    }
+
+    void applyTo(HostConfig.Builder hostConfigBuilder) {
+        if (!tmpfs.isEmpty()) {
+            hostConfigBuilder.tmpfs(new LinkedHashMap<>(tmpfs));
+        }
+        if (!ulimits.isEmpty()) {
+            hostConfigBuilder.ulimits(new ArrayList<>(ulimits));
+        }
+        if (memory != null) {
+            hostConfigBuilder.memory(memory);
+        }
+        if (memorySwap != null) {
+            hostConfigBuilder.memorySwap(memorySwap);
+        }
+        if (cpuShares != null) {
+            hostConfigBuilder.cpuShares(cpuShares);
+        }
+        if (cpuQuota != null) {
+            hostConfigBuilder.cpuPeriod(CPU_PERIOD);
+            hostConfigBuilder.cpuQuota(cpuQuota);
+        }
+        if (cpusetCpus != null) {
+            hostConfigBuilder.cpusetCpus(cpusetCpus);
+        }
+        if (shmSize != null) {
+            hostConfigBuilder.shmSize(shmSize);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceProfile{" +
+                "tmpfs=" + tmpfs +
+                ", ulimits=" + ulimits +
+                ", memory=" + memory +
+                ", memorySwap=" + memorySwap +
+                ", cpuShares=" + cpuShares +
+                ", cpuQuota=" + cpuQuota +
+                ", cpusetCpus=" + cpusetCpus +
+                ", shmSize=" + shmSize +
+                ", expectedMemory=" + expectedMemory +
+                ", expectedCpus=" + expectedCpus +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Holds a lock on a file named by this JVM's {@link ContainerLabels#SESSION_ID} for as long as the JVM runs, so
+ * that {@link OrphanReaper} can prove that the session that created a container has exited: its file exists and
+ * its lock is no longer held. The files are kept in the <code>sessions</code> directory of the
+ * <code>dockerRule.shareDir</code> directory, which JVMs on the same host must agree on. Sessions of other hosts
+ * have no file there, so they are never considered exited.
+ *
+ * @since 1.4
+ */
+class SessionLocks {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionLocks.class);
+
+    private static final Path DIR = CrossJvmContainers.SHARE_DIR.resolve("sessions");
+
+    private static FileLocks.Lock held;
+
+    private SessionLocks() {
+    }
+
+    /**
+     * Locks the file of this JVM's session, if not already locked. The lock is released by the operating system
+     * when the JVM exits, however it exits.
+     */
+    static synchronized void holdCurrent() {
+        if (held != null) {
+            return;
+        }
+        final Path file = lockFile(ContainerLabels.SESSION_ID);
+        try {
+            Files.createDirectories(DIR);
+            held = FileLocks.lock(file, StandardOpenOption.CREATE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while locking session file {}", file);
+        } catch (IOException e) {
+            // without the file, the containers of this JVM are never considered orphaned by others
+            LOGGER.warn("Failed to lock session file {}", file, e);
+        }
+    }
+
+    /**
+     * @return true only if the session's file exists and its lock is not held by any JVM
+     */
+    static boolean hasExited(String sessionId) {
+        final Path file = lockFile(sessionId);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        // this JVM's own session is held, so it is recognized as running without opening its file
+        try (FileLocks.Lock lock = FileLocks.tryLock(file)) {
+            return lock != null;
+        } catch (IOException e) {
+            LOGGER.debug("Unable to check session file {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the file of an exited session once none of its containers remain.
+     */
+    static void forget(String sessionId) {
+        try {
+            Files.deleteIfExists(lockFile(sessionId));
+        } catch (IOException e) {
+            LOGGER.debug("Failed to delete the file of session {}", sessionId, e);
+        }
+    }
+
+    static Path lockFile(String sessionId) {
+        return DIR.resolve(sessionId.replaceAll("[^A-Za-z0-9._-]+", "_") + ".lock");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM-wide, reference-counted registry of containers started by {@link DockerRule}s that
+ * opted into {@link DockerRule#reuseContainer(boolean)}. The first rule with a given configuration key
+ * starts the container and subsequent rules with the same key attach to it.
+ *
+ * <p>A container that drops to zero references is kept around for the next rule that needs it and
+ * is torn down when the JVM shuts down.</p>
+ *
+ * @since 1.4
+ */
+class SharedContainers {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedContainers.class);
+
+    private static final ConcurrentMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    static {
+        ShutdownTasks.register(ShutdownTasks.ORDER_CONTAINERS, "remove shared containers", SharedContainers::shutdown);
+    }
+
+    interface Starter {
+        /**
+         * @return the ID of the started and ready container
+         */
+        String start() throws Exception;
+    }
+
+    static class Entry {
+        private final String key;
+        private String containerId;
+        private DockerClient dockerClient;
+        private boolean leaveRunning;
+        private int references;
+        private LogCapture logCapture;
+        private CrossJvmContainers.Lease lease;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+
+        String containerId() {
+            return containerId;
+        }
+
+        /**
+         * @param creator provides the capture of the container's log if none has been registered yet
+         * @return the log capture shared by the rules attached to the container
+         */
+        synchronized LogCapture logCapture(Callable<LogCapture> creator) throws Exception {
+            if (logCapture == null) {
+                logCapture = creator.call();
+            }
+            return logCapture;
+        }
+    }
+
+    private SharedContainers() {
+    }
+
+    /**
+     * Obtains a reference to the container registered with the given key, starting it with the given
+     * starter if needed. Callers with the same key block while the container is starting.
+     *
+     * @param key the configuration key of the container
+     * @param dockerClient the shared client used to start the container and, later, to remove it
+     * @param leaveRunning if true, the container will not be removed at JVM shutdown
+     * @param acrossJvms if true, the container is also shared with other JVMs through {@link CrossJvmContainers}
+     * @param starter invoked to create, start, and wait for the container when not already registered
+     * @return the registry entry, which must be passed to {@link #release(Entry)} when done
+     */
+    static Entry acquire(String key, DockerClient dockerClient, boolean leaveRunning, boolean acrossJvms,
+                         Starter starter) throws Exception {
+        final Entry entry = ENTRIES.computeIfAbsent(key, Entry::new);
+        synchronized (entry) {
+            if (entry.containerId == null) {
+                if (acrossJvms) {
+                    entry.lease = CrossJvmContainers.acquire(key, dockerClient, starter);
+                    entry.containerId = entry.lease.containerId();
+                } else {
+                    entry.containerId = starter.start();
+                }
+                entry.dockerClient = dockerClient;
+                entry.leaveRunning = leaveRunning;
+                LOGGER.info("Registered shared container {} for key {}", entry.containerId, key);
+            } else {
+                LOGGER.info("Reusing shared container {}", entry.containerId);
+            }
+            ++entry.references;
+            return entry;
+        }
+    }
+
+    static void release(Entry entry) {
+        synchronized (entry) {
+            if (entry.references > 0) {
+                --entry.references;
+            }
+            LOGGER.debug("Released shared container {}, {} references remain", entry.containerId, entry.references);
+        }
+    }
+
+    private static void shutdown() {
+        for (Entry entry : ENTRIES.values()) {
+            synchronized (entry) {
+                if (entry.containerId == null) {
+                    continue;
+                }
+                try {
+                    if (entry.lease != null) {
+                        CrossJvmContainers.release(entry.lease, entry.dockerClient, entry.leaveRunning);
+                    } else if (entry.leaveRunning) {
+                        LOGGER.info("Leaving shared container {} running", entry.containerId);
+                    } else {
+                        LOGGER.info("Stopping shared container {}", entry.containerId);
+                        entry.dockerClient.killContainer(entry.containerId);
+                        entry.dockerClient.removeContainer(entry.containerId);
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to remove shared container {} for key {}", entry.containerId, entry.key, e);
+                } finally {
+                    entry.containerId = null;
+                    entry.logCapture = null;
+                    entry.lease = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs the library's JVM shutdown work from a single hook, so that tasks which still need
+ * a Docker client, such as removing containers, complete before the shared clients are closed.
+ *
+ * @since 1.4
+ */
+class ShutdownTasks {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShutdownTasks.class);
+
+    /**
+     * Order of tasks that stop or remove containers.
+     */
+    static final int ORDER_CONTAINERS = 100;
+    /**
+     * Order of tasks that remove networks, once the containers attached to them have been removed.
+     */
+    static final int ORDER_NETWORKS = 200;
+    /**
+     * Order of tasks that write reports, after containers have been removed.
+     */
+    static final int ORDER_REPORTS = 500;
+    /**
+     * Order of tasks that delete local temporary files.
+     */
+    static final int ORDER_FILES = 600;
+    /**
+     * Order of the task that closes the shared Docker clients, which must run last.
+     */
+    static final int ORDER_CLIENTS = 1000;
+
+    private static final List<Task> TASKS = new ArrayList<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ShutdownTasks::runAll, "docker-rule-shutdown"));
+    }
+
+    private static class Task {
+        final int order;
+        final String name;
+        final Runnable runnable;
+
+        Task(int order, String name, Runnable runnable) {
+            this.order = order;
+            this.name = name;
+            this.runnable = runnable;
+        }
+    }
+
+    private ShutdownTasks() {
+    }
+
+    /**
+     * @param order tasks with a lower order run first
+     * @param name used for logging
+     * @param task the work to perform at JVM shutdown
+     */
+    static synchronized void register(int order, String name, Runnable task) {
+        TASKS.add(new Task(order, name, task));
+    }
+
+    private static void runAll() {
+        final List<Task> tasks;
+        synchronized (ShutdownTasks.class) {
+            tasks = new ArrayList<>(TASKS);
+        }
+        tasks.sort(Comparator.comparingInt(task -> task.order));
+
+        for (Task task : tasks) {
+            LOGGER.debug("Running shutdown task {}", task.name);
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Shutdown task {} failed", task.name, e);
+            }
+        }
+    }
+}
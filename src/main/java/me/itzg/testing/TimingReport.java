@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link LifecycleListener} that aggregates the durations of each {@link LifecyclePhase} per image
+ * and reports their count, failures, median, 95th percentile, and maximum as JSON or CSV.
+ *
+ * <p>Setting the <code>dockerRule.timingReport</code> system property to a file path enables a report
+ * that every {@link DockerRule} in the JVM contributes to and that is written at JVM shutdown.
+ * The report is written as CSV when the path ends with <code>.csv</code> and as JSON otherwise.</p>
+ *
+ * @since 1.4
+ */
+public class TimingReport implements LifecycleListener {
+    public static final String PROPERTY = "dockerRule.timingReport";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingReport.class);
+
+    private static final TimingReport GLOBAL = createGlobal(System.getProperty(PROPERTY));
+
+    private final ConcurrentMap<Key, Samples> samples = new ConcurrentHashMap<>();
+
+    private static final class Key {
+        final String image;
+        final LifecyclePhase phase;
+
+        Key(String image, LifecyclePhase phase) {
+            this.image = image;
+            this.phase = phase;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return Objects.equals(image, key.image) && phase == key.phase;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(image, phase);
+        }
+    }
+
+    private static final class Samples {
+        private long[] durations = new long[16];
+        private int count;
+        private int failures;
+
+        synchronized void add(long durationNanos, boolean successful) {
+            if (count == durations.length) {
+                durations = Arrays.copyOf(durations, count * 2);
+            }
+            durations[count++] = durationNanos;
+            if (!successful) {
+                ++failures;
+            }
+        }
+
+        synchronized Summary summarize() {
+            final long[] sorted = Arrays.copyOf(durations, count);
+            Arrays.sort(sorted);
+            return new Summary(count, failures,
+                    percentile(sorted, 50), percentile(sorted, 95), sorted[count - 1]);
+        }
+    }
+
+    private static final class Summary {
+        final int count;
+        final int failures;
+        final long p50;
+        final long p95;
+        final long max;
+
+        Summary(int count, int failures, long p50, long p95, long max) {
+            this.count = count;
+            this.failures = failures;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.max = max;
+        }
+    }
+
+    /**
+     * @return the report enabled by the {@value #PROPERTY} system property or null if not enabled
+     */
+    static TimingReport global() {
+        return GLOBAL;
+    }
+
+    @Override
+    public void phaseCompleted(LifecycleEvent event) {
+        samples.computeIfAbsent(new Key(event.getImage(), event.getPhase()), key -> new Samples())
+                .add(event.getDurationNanos(), event.isSuccessful());
+    }
+
+    /**
+     * Writes the report as a JSON object with a <code>phases</code> array that has an element per image and phase.
+     * Durations are in milliseconds.
+     * @param writer where to write the report, which is flushed but not closed
+     */
+    public void writeJson(Writer writer) throws IOException {
+        final JsonGenerator generator = new JsonFactory().createGenerator(writer);
+        generator.useDefaultPrettyPrinter();
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("phases");
+        for (Key key : sortedKeys()) {
+            final Summary summary = samples.get(key).summarize();
+            generator.writeStartObject();
+            generator.writeStringField("image", key.image);
+            generator.writeStringField("phase", key.phase.name());
+            generator.writeNumberField("count", summary.count);
+            generator.writeNumberField("failures", summary.failures);
+            generator.writeNumberField("p50Millis", toMillis(summary.p50));
+            generator.writeNumberField("p95Millis", toMillis(summary.p95));
+            generator.writeNumberField("maxMillis", toMillis(summary.max));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    /**
+     * Writes the report as CSV with a header row and a row per image and phase. Durations are in milliseconds.
+     * @param writer where to write the report, which is flushed but not closed
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("image,phase,count,failures,p50_ms,p95_ms,max_ms\n");
+        for (Key key : sortedKeys()) {
+            final Summary summary = samples.get(key).summarize();
+            writer.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%.3f,%.3f,%.3f%n",
+                    csvField(key.image), key.phase, summary.count, summary.failures,
+                    toMillis(summary.p50), toMillis(summary.p95), toMillis(summary.max)));
+        }
+        writer.flush();
+    }
+
+    private List<Key> sortedKeys() {
+        final List<Key> keys = new ArrayList<>(samples.keySet());
+        keys.sort(Comparator.comparing((Key key) -> String.valueOf(key.image))
+                .thenComparing(key -> key.phase));
+        return keys;
+    }
+
+    /**
+     * @return the nearest-rank percentile of the given sorted, non-empty values
+     */
+    static long percentile(long[] sorted, int percent) {
+        final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    private static TimingReport createGlobal(String location) {
+        if (location == null || location.isEmpty()) {
+            return null;
+        }
+
+        final TimingReport report = new TimingReport();
+        final Path path = Paths.get(location);
+        ShutdownTasks.register(ShutdownTasks.ORDER_REPORTS, "write timing report", () -> {
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                if (path.getFileName().toString().endsWith(".csv")) {
+                    report.writeCsv(writer);
+                } else {
+                    report.writeJson(writer);
+                }
+                LOGGER.info("Wrote timing report to {}", path);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write timing report to {}", path, e);
+            }
+        });
+        return report;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.ContainerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Manages the locally committed images used by {@link DockerRule#warmSnapshot(String)}.
+ * Snapshots are tagged in the {@value #REPOSITORY} repository by a hash of their inputs, including the image,
+ * environment, command, fixture content, resources, and initialization version, so that
+ * changing any input results in a new snapshot and stale ones can be found with
+ * <code>docker images {@value #REPOSITORY}</code>.
+ *
+ * @since 1.4
+ */
+class WarmSnapshots {
+    static final String REPOSITORY = "junit-rule-docker-warm";
+
+    /**
+     * When set to true, existing snapshots are ignored and replaced by newly committed ones.
+     */
+    static final String REBUILD_PROPERTY = "dockerRule.warmSnapshot.rebuild";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmSnapshots.class);
+
+    private WarmSnapshots() {
+    }
+
+    /**
+     * @param baseImageId the ID, which is a content digest, of the image the snapshot starts from
+     * @param env the environment of the container
+     * @param cmd the command of the container
+     * @param fixtures descriptions, including a hash of their files, of the fixtures copied into the container
+     *                 before it starts
+     * @param resources a description of the resources of the container or null if not specified
+     * @param initVersion the user-supplied version of the initialization logic
+     * @return the tag to use for the snapshot, excluding the repository
+     */
+    static String tagFor(String baseImageId, String[] env, String[] cmd, String[] fixtures, String resources,
+                         String initVersion) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        DockerRule.putField(hasher, baseImageId);
+        DockerRule.putField(hasher, env);
+        DockerRule.putField(hasher, cmd);
+        DockerRule.putField(hasher, fixtures);
+        DockerRule.putField(hasher, resources);
+        DockerRule.putField(hasher, initVersion);
+        return hasher.hash().toString().substring(0, 32);
+    }
+
+    /**
+     * @return the full image reference of the snapshot if it exists and rebuilding was not requested,
+     * otherwise null
+     */
+    static String find(DockerClient dockerClient, String tag) throws DockerException, InterruptedException {
+        if (Boolean.getBoolean(REBUILD_PROPERTY)) {
+            return null;
+        }
+
+        final String reference = REPOSITORY + ":" + tag;
+        try {
+            dockerClient.inspectImage(reference);
+            return reference;
+        } catch (ImageNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Commits the container as the snapshot. The labels this library applies to the container, such as its session
+     * and test, are left out of the snapshot, since containers started from it get their own.
+     */
+    static void commit(DockerClient dockerClient, String containerId, String tag, ContainerConfig config)
+            throws DockerException, InterruptedException {
+        LOGGER.info("Committing container {} as warm snapshot {}:{}", containerId, REPOSITORY, tag);
+        final Map<String, String> labels = new HashMap<>();
+        if (config.labels() != null) {
+            for (Map.Entry<String, String> label : config.labels().entrySet()) {
+                if (!label.getKey().startsWith(ContainerLabels.PREFIX)) {
+                    labels.put(label.getKey(), label.getValue());
+                }
+            }
+        }
+        dockerClient.commitContainer(containerId, REPOSITORY, tag, config.toBuilder().labels(labels).build(),
+                "Warm snapshot created by junit-rule-docker", null);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionControlTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testWaitsForBudget() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl(1000, 0, 5000);
+        final AdmissionControl.Permit first = admissionControl.acquire(600, 2);
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            try {
+                admissionControl.acquire(600, 2).release();
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        first.release();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    public void testAdmitsInOrder() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl(0, 4, 5000);
+        final AdmissionControl.Permit held = admissionControl.acquire(0, 2);
+        final List<String> order = new CopyOnWriteArrayList<>();
+
+        // the small request would fit right away, but must not overtake the large one queued before it
+        final Thread large = new Thread(() -> admitAndRelease(admissionControl, 3, "large", order));
+        large.start();
+        awaitQueued(admissionControl, 1);
+        final Thread small = new Thread(() -> admitAndRelease(admissionControl, 1, "small", order));
+        small.start();
+        awaitQueued(admissionControl, 2);
+        Thread.sleep(100);
+        assertTrue(order.isEmpty());
+
+        held.release();
+        large.join();
+        small.join();
+        assertThat(order.get(0), equalTo("large"));
+        assertThat(order.size(), equalTo(2));
+    }
+
+    @Test
+    public void testTimesOut() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl(1000, 0, 100);
+        final AdmissionControl.Permit held = admissionControl.acquire(1000, 0);
+
+        assertThat(admissionControl.acquire(1, 0), nullValue());
+
+        held.release();
+        held.release();
+        assertThat(admissionControl.acquire(1000, 0), notNullValue());
+    }
+
+    @Test
+    public void testClampsToBudget() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl(1000, 0, 100);
+
+        assertThat(admissionControl.acquire(5000, 0), notNullValue());
+    }
+
+    @Test
+    public void testSharesBudgetWithOtherJvms() throws Exception {
+        // each stands in for the admission control of a separate JVM
+        final Path dir = temp.newFolder("budget").toPath();
+        final AdmissionControl first = new AdmissionControl(1000, 0, 300, new HostBudget(dir));
+        final AdmissionControl second = new AdmissionControl(1000, 0, 300, new HostBudget(dir));
+
+        final AdmissionControl.Permit held = first.acquire(600, 0);
+        assertThat(second.acquire(600, 0), nullValue());
+        assertThat(second.acquire(400, 0), notNullValue());
+
+        held.release();
+        assertThat(second.acquire(600, 0), notNullValue());
+    }
+
+    @Test
+    public void testIgnoresUseOfExitedJvms() throws Exception {
+        final Path dir = temp.newFolder("budget").toPath();
+        // left by a JVM that exited, so its lock is not held
+        Files.write(dir.resolve("exited.use"), "1000 0.0".getBytes(StandardCharsets.UTF_8));
+
+        final AdmissionControl admissionControl = new AdmissionControl(1000, 0, 300, new HostBudget(dir));
+        assertThat(admissionControl.acquire(1000, 0), notNullValue());
+        assertFalse(Files.exists(dir.resolve("exited.use")));
+    }
+
+    @Test
+    public void testConfiguredBySystemProperties() throws Exception {
+        assertThat(AdmissionControl.createGlobal(null, "", 100), nullValue());
+        assertThat(AdmissionControl.createGlobal("8g", null, 100), notNullValue());
+        assertThat(AdmissionControl.parseBytes("512m"), equalTo(512L * 1024 * 1024));
+        assertThat(AdmissionControl.parseBytes("2G"), equalTo(2L * 1024 * 1024 * 1024));
+        assertThat(AdmissionControl.parseBytes("1024"), equalTo(1024L));
+        assertThat(AdmissionControl.parseBytes("1.5g"), equalTo(3L * 512 * 1024 * 1024));
+        assertThat(AdmissionControl.parseBytes("0.5K"), equalTo(512L));
+    }
+
+    private static void admitAndRelease(AdmissionControl admissionControl, double cpus, String name,
+                                        List<String> order) {
+        try {
+            final AdmissionControl.Permit permit = admissionControl.acquire(0, cpus);
+            order.add(name);
+            Thread.sleep(50);
+            permit.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQueued(AdmissionControl admissionControl, int waiting) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!admissionControl.toString().endsWith(waiting + " waiting")) {
+            assertTrue("requests were not queued", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContainerEventsTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().healthcheck(true);
+
+    @Test
+    public void testHealthcheckWaitsOnEvents() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitFor(ReadinessProbes.healthcheck());
+
+        reportHealthyOnceCreated();
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+            }
+        }, Description.EMPTY).evaluate();
+
+        // only the check for a HEALTHCHECK and port bindings, rather than polling
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.INSPECT), equalTo(2L));
+    }
+
+    @Test
+    public void testReadinessFailsWhenContainerExits() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("never logged")
+                .readinessTimeout(30000);
+
+        new Thread(() -> exitOnceCreated(1, false)).start();
+        final long started = System.nanoTime();
+        try {
+            rule.apply(new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                }
+            }, Description.EMPTY).evaluate();
+            fail("expected readiness to fail");
+        } catch (ContainerExitedException e) {
+            assertThat(e.getExitCode(), equalTo(1));
+        }
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testTestFailsWhenContainerIsOomKilled() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .interruptOnContainerExit(true);
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            rule.apply(new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    daemon.exitContainer(rule.getContainerId(), 137, true);
+                    // stands in for a test blocked on the container
+                    blocked.await(30, TimeUnit.SECONDS);
+                    fail("expected to be interrupted");
+                }
+            }, Description.EMPTY).evaluate();
+            fail("expected the test to fail");
+        } catch (AssertionError e) {
+            assertThat(e.getMessage(), containsString("exited with code 137 after running out of memory"));
+            assertThat(e.getCause(), instanceOf(InterruptedException.class));
+        }
+    }
+
+    private void reportHealthyOnceCreated() {
+        new Thread(() -> {
+            try {
+                while (daemon.getCount(FakeDockerDaemon.Operation.INSPECT) < 2) {
+                    Thread.sleep(10);
+                }
+                daemon.reportHealth(daemon.getContainerIds().get(0), "healthy");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).start();
+    }
+
+    private void exitOnceCreated(int exitCode, boolean oomKilled) {
+        try {
+            while (daemon.getCount(FakeDockerDaemon.Operation.LOGS) < 1) {
+                Thread.sleep(10);
+            }
+            daemon.exitContainer(daemon.getContainerIds().get(0), exitCode, oomKilled);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.itzg.testing;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContainerReaperTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().logLines("ready");
+
+    @After
+    public void tearDown() {
+        System.clearProperty("dockerRule.reaperShutdownTimeout");
+    }
+
+    @Test
+    public void testRemovesInBackground() throws Throwable {
+        daemon.latency(FakeDockerDaemon.Operation.REMOVE, 1000);
+        final DockerRule rule = rule().asyncTeardown(true);
+
+        evaluate(rule);
+        assertThat(daemon.getContainerCount(), equalTo(1));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.KILL), equalTo(0L));
+
+        awaitRemoved(5000);
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.REMOVE), equalTo(1L));
+    }
+
+    @Test
+    public void testDrainIsBounded() throws Throwable {
+        daemon.latency(FakeDockerDaemon.Operation.REMOVE, 2000);
+        evaluate(rule().asyncTeardown(true));
+
+        System.setProperty("dockerRule.reaperShutdownTimeout", "200");
+        final long started = System.nanoTime();
+        ContainerReaper.drain();
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        assertTrue("drain took " + elapsed + " ms", elapsed >= 200 && elapsed < 1500);
+        assertThat(daemon.getContainerCount(), equalTo(1));
+
+        awaitRemoved(5000);
+    }
+
+    @Test
+    public void testDrainWaitsForQueuedRemovals() throws Throwable {
+        daemon.latency(FakeDockerDaemon.Operation.REMOVE, 300);
+        evaluate(rule().asyncTeardown(true));
+
+        ContainerReaper.drain();
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+
+    @Test
+    public void testRemovesWhenStatementFails() throws Throwable {
+        try {
+            rule().apply(new Statement() {
+                @Override
+                public void evaluate() {
+                    throw new IllegalStateException("test failure");
+                }
+            }, Description.createTestDescription(ContainerReaperTest.class, "failing")).evaluate();
+            fail("expected the test failure");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("test failure"));
+        }
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.KILL), equalTo(1L));
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+
+    @Test
+    public void testRemovesSynchronouslyWhenStartFails() throws Throwable {
+        boolean failed = false;
+        try {
+            evaluate(rule().waitForLog("never logged").readinessTimeout(200));
+        } catch (AssertionError e) {
+            failed = true;
+        }
+        assertTrue("expected the start to fail", failed);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.REMOVE), equalTo(1L));
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+
+    private DockerRule rule() {
+        return new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("ready");
+    }
+
+    private static void evaluate(DockerRule rule) throws Throwable {
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+            }
+        }, Description.createTestDescription(ContainerReaperTest.class, "test")).evaluate();
+    }
+
+    private void awaitRemoved(long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (daemon.getContainerCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.ContainerConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class CrossJvmContainersTest {
+
+    /**
+     * Run in a separate JVM to report whether another process holds the lock of each given file.
+     */
+    public static class LockProbe {
+        public static void main(String[] args) throws IOException {
+            for (String arg : args) {
+                try (FileChannel channel = FileChannel.open(Paths.get(arg), StandardOpenOption.WRITE);
+                     FileLock lock = channel.tryLock()) {
+                    System.out.println(lock != null ? "free" : "held");
+                }
+            }
+        }
+    }
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon();
+
+    private DockerClient dockerClient;
+
+    @Before
+    public void setUp() throws Exception {
+        dockerClient = DefaultDockerClient.builder().uri(daemon.getUri()).build();
+        System.setProperty(CrossJvmContainers.SESSION_PROPERTY, "build-" + UUID.randomUUID());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(CrossJvmContainers.SESSION_PROPERTY);
+        dockerClient.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRequiresSession() throws Exception {
+        System.clearProperty(CrossJvmContainers.SESSION_PROPERTY);
+
+        CrossJvmContainers.acquire(UUID.randomUUID().toString(), dockerClient, () -> {
+            throw new AssertionError("should not start without a session");
+        });
+    }
+
+    @Test
+    public void testCheckingKeepsOwnReference() throws Exception {
+        final String key = UUID.randomUUID().toString();
+        final CrossJvmContainers.Lease lease = CrossJvmContainers.acquire(key, dockerClient, () ->
+                dockerClient.createContainer(ContainerConfig.builder()
+                        .image("fake:latest")
+                        .labels(CrossJvmContainers.labelsFor(key))
+                        .build()).id());
+        try {
+            // checks made by this JVM's reaper must not open, and so release, the reference this JVM holds
+            assertThat(CrossJvmContainers.isUnused(CrossJvmContainers.sessionId(), key), equalTo(false));
+
+            final List<String> files = new ArrayList<>();
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(CrossJvmContainers.SHARE_DIR, "*" + key + ".refs")) {
+                for (Path dir : dirs) {
+                    try (DirectoryStream<Path> references = Files.newDirectoryStream(dir)) {
+                        for (Path reference : references) {
+                            files.add(reference.toString());
+                        }
+                    }
+                }
+            }
+            assertThat(probe(files), equalTo(Collections.singletonList("held")));
+        } finally {
+            CrossJvmContainers.release(lease, dockerClient, false);
+        }
+    }
+
+    @Test
+    public void testLastReferenceRemovesContainer() throws Exception {
+        final String key = UUID.randomUUID().toString();
+        final AtomicInteger starts = new AtomicInteger();
+        final SharedContainers.Starter starter = () -> {
+            starts.incrementAndGet();
+            final String id = dockerClient.createContainer(ContainerConfig.builder()
+                    .image("fake:latest")
+                    .labels(CrossJvmContainers.labelsFor(key))
+                    .build()).id();
+            dockerClient.startContainer(id);
+            return id;
+        };
+
+        // stands in for two forked JVMs, since each lease holds its own reference
+        final CrossJvmContainers.Lease first = CrossJvmContainers.acquire(key, dockerClient, starter);
+        final CrossJvmContainers.Lease second = CrossJvmContainers.acquire(key, dockerClient, starter);
+
+        assertThat(starts.get(), equalTo(1));
+        assertThat(second.containerId(), equalTo(first.containerId()));
+
+        CrossJvmContainers.release(first, dockerClient, false);
+        assertThat(daemon.getContainerCount(), equalTo(1));
+
+        CrossJvmContainers.release(second, dockerClient, false);
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+
+    /**
+     * @return for each file, whether a separate JVM finds its lock held or free
+     */
+    static List<String> probe(List<String> files) throws Exception {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LockProbe.class.getName());
+        command.addAll(files);
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        assertThat(lines.toString(), process.waitFor(), equalTo(0));
+        return lines;
+    }
+}
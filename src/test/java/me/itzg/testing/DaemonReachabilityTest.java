@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DaemonReachabilityTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon();
+
+    @Test
+    public void testCachesSuccess() throws Exception {
+        final DockerEndpoint endpoint = DockerEndpoint.of(daemon.getUri(), null);
+        try (DockerClient dockerClient = DefaultDockerClient.builder().uri(daemon.getUri()).build()) {
+            DaemonReachability.check(endpoint, dockerClient);
+            DaemonReachability.check(endpoint, dockerClient);
+        }
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.INFO), equalTo(1L));
+    }
+
+    @Test
+    public void testCachesFailure() throws Exception {
+        final int unusedPort;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            unusedPort = serverSocket.getLocalPort();
+        }
+        final String uri = "http://127.0.0.1:" + unusedPort;
+        final DockerEndpoint endpoint = DockerEndpoint.of(uri, null);
+
+        try (DockerClient dockerClient = DefaultDockerClient.builder().uri(uri).build()) {
+            final DockerException first = expectFailure(endpoint, dockerClient);
+            assertThat(expectFailure(endpoint, dockerClient), sameInstance(first));
+        }
+    }
+
+    private static DockerException expectFailure(DockerEndpoint endpoint, DockerClient dockerClient) throws Exception {
+        try {
+            DaemonReachability.check(endpoint, dockerClient);
+            fail("expected the daemon to be unreachable");
+            return null;
+        } catch (DockerException e) {
+            return e;
+        }
+    }
+}
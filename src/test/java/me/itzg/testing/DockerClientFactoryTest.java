@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerCertificateException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DockerClientFactoryTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testSharesClientPerEndpoint() throws Exception {
+        final DockerClient first = DockerClientFactory.obtain(DockerEndpoint.of(daemon.getUri(), null));
+        final DockerClient second = DockerClientFactory.obtain(DockerEndpoint.of(daemon.getUri(), null));
+
+        assertThat(second, sameInstance(first));
+        first.info();
+        second.info();
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.INFO), equalTo(2L));
+    }
+
+    @Test
+    public void testSharedRulesUseOneClient() throws Throwable {
+        final DockerRule first = new DockerRule("fake:latest").uri(daemon.getUri());
+        final DockerRule second = new DockerRule("fake:latest").uri(daemon.getUri());
+
+        final DockerRule.Evaluation firstEvaluation = first.connect(null);
+        final DockerRule.Evaluation secondEvaluation = second.connect(null);
+        first.bind(firstEvaluation);
+        second.bind(secondEvaluation);
+        try {
+            assertThat(second.getDockerClient(), sameInstance(first.getDockerClient()));
+        } finally {
+            first.unbind();
+            second.unbind();
+        }
+    }
+
+    @Test
+    public void testCloseAllReplacesClients() throws Exception {
+        final DockerEndpoint endpoint = DockerEndpoint.of(daemon.getUri(), null);
+        final DockerClient closed = DockerClientFactory.obtain(endpoint);
+
+        DockerClientFactory.closeAll();
+
+        try {
+            closed.info();
+            fail("expected the client to be closed");
+        } catch (Exception e) {
+            // expected
+        }
+        final DockerClient replacement = DockerClientFactory.obtain(endpoint);
+        assertThat(replacement, not(sameInstance(closed)));
+        replacement.info();
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testMissingCertificatesFail() throws Exception {
+        DockerClientFactory.obtain(DockerEndpoint.of(daemon.getUri(), temp.newFolder("empty").toPath()));
+    }
+
+    @Test(expected = DockerCertificateException.class)
+    public void testInvalidCertificatesFail() throws Exception {
+        final Path certs = temp.newFolder("invalid").toPath();
+        for (String name : new String[]{"ca.pem", "cert.pem", "key.pem"}) {
+            Files.write(certs.resolve(name), "not a certificate".getBytes(StandardCharsets.UTF_8));
+        }
+
+        DockerClientFactory.obtain(DockerEndpoint.of(daemon.getUri(), certs));
+    }
+
+    @Test
+    public void testResolvesEnvironmentOnce() throws Exception {
+        assertThat(DockerEndpoint.of(null, null).uri(), sameInstance(DockerEndpoint.of(null, null).uri()));
+    }
+}
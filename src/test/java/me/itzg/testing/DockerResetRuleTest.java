@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DockerResetRuleTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().logLines("ready");
+
+    @Test
+    public void testResetsAfterEachTest() throws Throwable {
+        final DockerRule dockerRule = new DockerRule("fake:latest").uri(daemon.getUri()).waitForLog("ready");
+
+        runClass(dockerRule, ResetStrategies.exec("redis-cli", "FLUSHALL"), 3);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.START), equalTo(1L));
+        assertThat(daemon.getExecCommands(), equalTo(Arrays.asList(
+                "redis-cli FLUSHALL", "redis-cli FLUSHALL", "redis-cli FLUSHALL")));
+    }
+
+    @Test
+    public void testFailedResetFailsTest() throws Throwable {
+        daemon.execExitCode(1);
+        final DockerRule dockerRule = new DockerRule("fake:latest").uri(daemon.getUri()).waitForLog("ready");
+
+        try {
+            runClass(dockerRule, ResetStrategies.exec("false"), 1);
+            fail("expected the reset to fail");
+        } catch (AssertionError e) {
+            assertThat(e.getMessage(), containsString("Failed to reset container"));
+            assertThat(e.getCause().getMessage(), containsString("exited with 1"));
+        }
+    }
+
+    @Test
+    public void testRestorePaths() throws Throwable {
+        final DockerRule dockerRule = new DockerRule("fake:latest").uri(daemon.getUri()).waitForLog("ready");
+
+        runClass(dockerRule, ResetStrategies.restorePaths("/var/lib/data/"), 2);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.ARCHIVE), equalTo(1L));
+        assertThat(daemon.getExecCommands(), equalTo(Arrays.asList(
+                "find /var/lib/data -mindepth 1", "find /var/lib/data -mindepth 1")));
+        assertThat(daemon.getCopiedFiles(), equalTo(Arrays.asList(
+                "paused:/var/lib/data/state", "paused:/var/lib/data/state")));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.UNPAUSE), equalTo(2L));
+    }
+
+    @Test
+    public void testRestorePathsRemovesOnlyCreatedFiles() throws Throwable {
+        daemon.execOutput("/var/lib/data/state\n/var/lib/data/created\n"
+                + "find: '/var/lib/data/private': Permission denied\n");
+        final DockerRule dockerRule = new DockerRule("fake:latest").uri(daemon.getUri()).waitForLog("ready");
+
+        runClass(dockerRule, ResetStrategies.restorePaths("/var/lib/data"), 1);
+
+        assertThat(daemon.getExecCommands(), equalTo(Arrays.asList(
+                "find /var/lib/data -mindepth 1", "rm -rf -- /var/lib/data/created")));
+        assertThat(daemon.getCopiedFiles(), equalTo(Arrays.asList("paused:/var/lib/data/state")));
+    }
+
+    /**
+     * Evaluates the given number of tests within the class-scoped rule, each with a new reset rule as JUnit
+     * would create for each test instance.
+     */
+    private static void runClass(DockerRule dockerRule, ResetStrategy strategy, int tests) throws Throwable {
+        dockerRule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                for (int i = 0; i < tests; i++) {
+                    new DockerResetRule(dockerRule, strategy).apply(new Statement() {
+                        @Override
+                        public void evaluate() {
+                        }
+                    }, Description.createTestDescription(DockerResetRuleTest.class, "test" + i)).evaluate();
+                }
+            }
+        }, Description.createSuiteDescription(DockerResetRuleTest.class)).evaluate();
+    }
+}
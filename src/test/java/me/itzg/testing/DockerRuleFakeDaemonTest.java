@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.net.InetSocketAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DockerRuleFakeDaemonTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon()
+            .logLines("starting", "ready to accept connections")
+            .exposedPorts(8080);
+
+    @Test
+    public void testLifecycle() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("ready to accept");
+
+        final AtomicReference<InetSocketAddress> access = new AtomicReference<>();
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                assertThat(rule.getContainerId(), notNullValue());
+                access.set(rule.getAccessToPort(8080));
+            }
+        }, Description.createTestDescription(DockerRuleFakeDaemonTest.class, "testLifecycle")).evaluate();
+
+        assertThat(access.get().getPort(), equalTo(38080));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(1L));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.START), equalTo(1L));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.KILL), equalTo(1L));
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+
+    @Test
+    public void testCaptureLogs() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .captureLogs(4096);
+
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                assertTrue(rule.getLogs().await(LogCondition.contains("ready"), 0, 5000));
+                assertThat(rule.getLogs().tail(1), equalTo(Collections.singletonList("ready to accept connections")));
+            }
+        }, Description.EMPTY).evaluate();
+    }
+
+    @Test
+    public void testDumpsLogsOnFailure() throws Throwable {
+        final Path dumpDir = temp.getRoot().toPath();
+        System.setProperty("dockerRule.logDumpDir", dumpDir.toString());
+        try {
+            final DockerRule rule = new DockerRule("fake:latest")
+                    .uri(daemon.getUri())
+                    .captureLogs(4096);
+
+            try {
+                rule.apply(new Statement() {
+                    @Override
+                    public void evaluate() throws Throwable {
+                        rule.getLogs().await(LogCondition.contains("ready"), 0, 5000);
+                        fail("test failure");
+                    }
+                }, Description.createTestDescription(DockerRuleFakeDaemonTest.class, "failing")).evaluate();
+                fail("expected test failure");
+            } catch (AssertionError e) {
+                assertThat(e.getMessage(), equalTo("test failure"));
+            }
+
+            try (DirectoryStream<Path> dumps = Files.newDirectoryStream(dumpDir)) {
+                final Path dump = dumps.iterator().next();
+                assertThat(dump.getFileName().toString(), startsWith("failing_me.itzg.testing.DockerRuleFakeDaemonTest_-"));
+                assertThat(Files.readAllLines(dump).get(1), containsString("stdout: ready to accept connections"));
+            }
+        } finally {
+            System.clearProperty("dockerRule.logDumpDir");
+        }
+    }
+
+    @Test
+    public void testConcurrentEvaluations() throws Throwable {
+        final int evaluations = 4;
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("ready to accept");
+
+        // every evaluation must be running its test at once, so starts cannot have been serialized
+        final CyclicBarrier barrier = new CyclicBarrier(evaluations);
+        final Set<String> containerIds = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(evaluations);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < evaluations; i++) {
+                futures.add(executor.submit(() -> {
+                    evaluate(rule, new Statement() {
+                        @Override
+                        public void evaluate() throws Throwable {
+                            final String containerId = rule.getContainerId();
+                            barrier.await(10, TimeUnit.SECONDS);
+                            assertThat(rule.getContainerId(), equalTo(containerId));
+                            assertThat(rule.getAccessToPort(8080).getPort(), equalTo(38080));
+
+                            final AtomicReference<String> fromChild = new AtomicReference<>();
+                            final Thread child = new Thread(() -> fromChild.set(rule.getContainerId()));
+                            child.start();
+                            child.join();
+                            assertThat(fromChild.get(), equalTo(containerId));
+                            containerIds.add(containerId);
+                        }
+                    });
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(containerIds.size(), equalTo(evaluations));
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+
+    @Test
+    public void testUnrelatedThreadsSeeOnlyEvaluation() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("ready to accept");
+        // start the pool's thread up front so that it does not inherit the evaluation
+        final ExecutorService unrelated = Executors.newSingleThreadExecutor();
+        try {
+            unrelated.submit(() -> null).get();
+            try {
+                unrelated.submit(rule::getContainerId).get();
+                fail("expected no evaluation to be found");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            }
+
+            evaluate(rule, new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    assertThat(unrelated.submit(rule::getContainerId).get(), equalTo(rule.getContainerId()));
+                }
+            });
+        } finally {
+            unrelated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAttachingRuleRunsItsOwnProbes() throws Throwable {
+        final DockerRule starting = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .reuseContainer(true);
+        final List<String> probed = Collections.synchronizedList(new ArrayList<>());
+        final DockerRule attaching = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .reuseContainer(true)
+                .waitFor((context, deadlineNanos) -> probed.add(context.getContainerId()));
+
+        evaluate(starting, new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final String shared = starting.getContainerId();
+                DockerRuleFakeDaemonTest.evaluate(attaching, new Statement() {
+                    @Override
+                    public void evaluate() {
+                        assertThat(attaching.getContainerId(), equalTo(shared));
+                    }
+                });
+                assertThat(probed, equalTo(Collections.singletonList(shared)));
+            }
+        });
+    }
+
+    @Test
+    public void testPoolThreadsDoNotKeepFinishedEvaluation() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("ready to accept");
+        final AtomicReference<ExecutorService> helper = new AtomicReference<>();
+        final AtomicReference<String> first = new AtomicReference<>();
+        try {
+            evaluate(rule, new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    // the pool's thread is started here, so it inherits this evaluation
+                    helper.set(Executors.newSingleThreadExecutor());
+                    first.set(helper.get().submit(rule::getContainerId).get());
+                    assertThat(first.get(), equalTo(rule.getContainerId()));
+                }
+            });
+
+            evaluate(rule, new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    final String own = rule.getContainerId();
+                    assertThat(own, not(equalTo(first.get())));
+                    assertThat(helper.get().submit(rule::getContainerId).get(), equalTo(own));
+                }
+            });
+        } finally {
+            if (helper.get() != null) {
+                helper.get().shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testUnrelatedThreadsFailWithConcurrentEvaluations() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("ready to accept");
+        final ExecutorService unrelated = Executors.newSingleThreadExecutor();
+        final ExecutorService evaluations = Executors.newFixedThreadPool(2);
+        try {
+            unrelated.submit(() -> null).get();
+            final CyclicBarrier running = new CyclicBarrier(3);
+            final CyclicBarrier checked = new CyclicBarrier(3);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(evaluations.submit(() -> {
+                    evaluate(rule, new Statement() {
+                        @Override
+                        public void evaluate() throws Throwable {
+                            running.await(10, TimeUnit.SECONDS);
+                            checked.await(10, TimeUnit.SECONDS);
+                        }
+                    });
+                    return null;
+                }));
+            }
+
+            running.await(10, TimeUnit.SECONDS);
+            try {
+                unrelated.submit(rule::getContainerId).get();
+                fail("expected the evaluation to be ambiguous");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            } finally {
+                checked.await(10, TimeUnit.SECONDS);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            unrelated.shutdownNow();
+            evaluations.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDirectNetworkAccess() throws Throwable {
+        System.setProperty(DockerNetworks.DIRECT_ACCESS_PROPERTY, "true");
+        try {
+            final DockerRule rule = new DockerRule("fake:latest")
+                    .uri(daemon.getUri())
+                    .network(new DockerNetwork("direct-network"))
+                    .networkAlias("db");
+
+            rule.apply(new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    final String containerId = rule.getContainerId();
+                    assertThat(daemon.getHostConfig(containerId).get("PublishAllPorts"), equalTo(false));
+                    assertThat(daemon.getHostConfig(containerId).get("NetworkMode"), equalTo("direct-network"));
+                    assertThat(daemon.getContainerName(containerId), equalTo("db"));
+                    assertThat(rule.getAccessToPort(8080).getHostString(), startsWith("172.18.0."));
+                    assertThat(rule.getAccessToPort(8080).getPort(), equalTo(8080));
+                }
+            }, Description.EMPTY).evaluate();
+        } finally {
+            System.clearProperty(DockerNetworks.DIRECT_ACCESS_PROPERTY);
+        }
+
+        assertThat(daemon.getNetworks(), equalTo(Collections.singleton("direct-network")));
+    }
+
+    @Test
+    public void testNetworkWithPublishedPorts() throws Throwable {
+        System.setProperty(DockerNetworks.DIRECT_ACCESS_PROPERTY, "false");
+        try {
+            final DockerRule rule = new DockerRule("fake:latest")
+                    .uri(daemon.getUri())
+                    .network(new DockerNetwork("published-network"));
+
+            rule.apply(new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    assertThat(daemon.getHostConfig(rule.getContainerId()).get("PublishAllPorts"), equalTo(true));
+                    assertThat(rule.getAccessToPort(8080).getPort(), equalTo(38080));
+                }
+            }, Description.EMPTY).evaluate();
+        } finally {
+            System.clearProperty(DockerNetworks.DIRECT_ACCESS_PROPERTY);
+        }
+    }
+
+    private static void evaluate(DockerRule rule, Statement statement) throws Exception {
+        try {
+            rule.apply(statement, Description.createTestDescription(DockerRuleFakeDaemonTest.class, "concurrent"))
+                    .evaluate();
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testLogNeverMatches() throws Throwable {
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("never logged")
+                .readinessTimeout(200);
+
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+            }
+        }, Description.EMPTY).evaluate();
+    }
+}
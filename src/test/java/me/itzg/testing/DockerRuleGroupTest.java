@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DockerRuleGroupTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().logLines("ready");
+
+    @Rule
+    public FakeDockerDaemon otherDaemon = new FakeDockerDaemon().logLines("ready");
+
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+
+    /**
+     * A completed lifecycle phase of a group member, spanning from its start to when it was reported.
+     */
+    private static class Phase {
+        final String member;
+        final LifecyclePhase phase;
+        final long startNanos;
+        final long endNanos;
+
+        Phase(String member, LifecycleEvent event) {
+            this.member = member;
+            this.phase = event.getPhase();
+            this.endNanos = System.nanoTime();
+            this.startNanos = endNanos - event.getDurationNanos();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDetectsCycle() throws Throwable {
+        final DockerRuleGroup group = new DockerRuleGroup()
+                .add("a", new DockerRule("httpd:alpine"), "b")
+                .add("b", new DockerRule("httpd:alpine"), "a");
+
+        evaluate(group);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDetectsUnknownDependency() throws Throwable {
+        final DockerRuleGroup group = new DockerRuleGroup()
+                .add("a", new DockerRule("httpd:alpine"), "missing");
+
+        evaluate(group);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsDuplicateName() throws Throwable {
+        new DockerRuleGroup()
+                .add("a", new DockerRule("httpd:alpine"))
+                .add("a", new DockerRule("httpd:alpine"));
+    }
+
+    @Test
+    public void testStartsIndependentMembersConcurrently() throws Throwable {
+        daemon.latency(FakeDockerDaemon.Operation.START, 500);
+        final DockerRuleGroup group = new DockerRuleGroup()
+                .add("a", rule("a", "fake:latest"))
+                .add("b", rule("b", "fake:latest"));
+
+        evaluate(group);
+
+        final Phase a = find("a", LifecyclePhase.START);
+        final Phase b = find("b", LifecyclePhase.START);
+        assertTrue("independent members started one after the other",
+                a.startNanos < b.endNanos && b.startNanos < a.endNanos);
+    }
+
+    @Test
+    public void testStartsDependentAfterDependencyIsReady() throws Throwable {
+        daemon.latency(FakeDockerDaemon.Operation.START, 200);
+        final DockerRuleGroup group = new DockerRuleGroup()
+                .add("app", rule("app", "fake:latest"), "db")
+                .add("db", rule("db", "fake:latest"));
+
+        evaluate(group);
+
+        assertTrue("app started before db was ready",
+                find("app", LifecyclePhase.CREATE).startNanos >= find("db", LifecyclePhase.READY).endNanos);
+    }
+
+    @Test
+    public void testPullsSharedImageOnce() throws Throwable {
+        daemon.latency(FakeDockerDaemon.Operation.PULL, 200);
+        final DockerRuleGroup group = new DockerRuleGroup()
+                .add("a", rule("a", "fake:latest"))
+                .add("b", rule("b", "fake:latest"))
+                .add("c", rule("c", "other:latest"));
+
+        evaluate(group);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(2L));
+    }
+
+    @Test
+    public void testPullsSharedImageOnEachDaemon() throws Throwable {
+        final DockerRuleGroup group = new DockerRuleGroup()
+                .add("a", rule("a", "fake:latest"))
+                .add("b", rule("b", "fake:latest").uri(otherDaemon.getUri()));
+
+        evaluate(group);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(1L));
+        assertThat(otherDaemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(1L));
+    }
+
+    @Test
+    public void testStopsStartedMembersInReverseOrderOnFailure() throws Throwable {
+        final DockerRuleGroup group = new DockerRuleGroup()
+                .add("a", rule("a", "fake:latest"))
+                .add("b", rule("b", "fake:latest"), "a")
+                .add("c", rule("c", "fake:latest").waitForLog("never logged").readinessTimeout(200), "b");
+
+        boolean failed = false;
+        try {
+            evaluate(group);
+        } catch (AssertionError e) {
+            failed = true;
+        }
+        assertTrue("expected c to fail", failed);
+
+        final List<String> killed = new ArrayList<>();
+        for (Phase phase : phases) {
+            if (phase.phase == LifecyclePhase.KILL) {
+                killed.add(phase.member);
+            }
+        }
+        assertThat(killed, equalTo(Arrays.asList("b", "a")));
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+
+    private DockerRule rule(String member, String image) {
+        return new DockerRule(image)
+                .uri(daemon.getUri())
+                .waitForLog("ready")
+                .lifecycleListener(event -> phases.add(new Phase(member, event)));
+    }
+
+    private Phase find(String member, LifecyclePhase phase) {
+        for (Phase candidate : phases) {
+            if (candidate.member.equals(member) && candidate.phase == phase) {
+                return candidate;
+            }
+        }
+        throw new AssertionError("No " + phase + " reported for " + member);
+    }
+
+    private static void evaluate(DockerRuleGroup group) throws Throwable {
+        group.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+            }
+        }, Description.EMPTY).evaluate();
+    }
+}
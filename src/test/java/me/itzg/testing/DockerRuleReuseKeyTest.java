@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class DockerRuleReuseKeyTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testSameConfigSameKey() throws Exception {
+        final DockerRule first = new DockerRule("httpd:alpine")
+                .parameter("A=1", "B=2")
+                .waitForLog("AH00094");
+        final DockerRule second = new DockerRule("httpd:alpine")
+                .parameter("A=1", "B=2")
+                .waitForLog("AH00094");
+
+        assertThat(first.reuseKey(), equalTo(second.reuseKey()));
+    }
+
+    @Test
+    public void testDifferentConfigDifferentKey() throws Exception {
+        final DockerRule base = new DockerRule("httpd:alpine").parameter("A=1");
+
+        assertThat(base.reuseKey(), not(equalTo(new DockerRule("httpd:2").parameter("A=1").reuseKey())));
+        assertThat(base.reuseKey(), not(equalTo(new DockerRule("httpd:alpine").parameter("A=2").reuseKey())));
+        assertThat(base.reuseKey(), not(equalTo(new DockerRule("httpd:alpine").parameter("A=1")
+                .command("httpd-foreground").reuseKey())));
+        assertThat(base.reuseKey(), not(equalTo(new DockerRule("httpd:alpine").parameter("A=1")
+                .waitForLog("started").reuseKey())));
+    }
+
+    @Test
+    public void testProvidedProbesArePartOfKey() throws Exception {
+        final DockerRule http = new DockerRule("httpd:alpine")
+                .waitFor(ReadinessProbes.http(80, "/", 200));
+
+        assertThat(http.reuseKey(), equalTo(new DockerRule("httpd:alpine")
+                .waitFor(ReadinessProbes.http(80, "/", 200)).reuseKey()));
+        assertThat(http.reuseKey(), not(equalTo(new DockerRule("httpd:alpine").reuseKey())));
+        assertThat(http.reuseKey(), not(equalTo(new DockerRule("httpd:alpine")
+                .waitFor(ReadinessProbes.http(80, "/health", 200)).reuseKey())));
+    }
+
+    @Test
+    public void testOtherProbesAreNotPartOfKey() throws Exception {
+        final DockerRule first = new DockerRule("httpd:alpine")
+                .waitFor((context, deadlineNanos) -> true);
+        final DockerRule second = new DockerRule("httpd:alpine")
+                .waitFor((context, deadlineNanos) -> true);
+
+        assertThat(first.reuseKey(), equalTo(second.reuseKey()));
+        assertThat(first.reuseKey(), equalTo(new DockerRule("httpd:alpine").reuseKey()));
+        assertThat(new DockerRule("httpd:alpine").waitFor(ReadinessProbes.anyOf(
+                ReadinessProbes.tcpPort(80), (context, deadlineNanos) -> true)).reuseKey(),
+                equalTo(first.reuseKey()));
+    }
+
+    @Test
+    public void testFieldBoundariesAreDistinct() throws Exception {
+        assertThat(new DockerRule("httpd:alpine").parameter("AB", "C").reuseKey(),
+                not(equalTo(new DockerRule("httpd:alpine").parameter("A", "BC").reuseKey())));
+    }
+
+    @Test
+    public void testFixtureContentIsPartOfKey() throws Exception {
+        final Path directory = temp.newFolder("initdb").toPath();
+        Files.write(directory.resolve("01-schema.sql"), "create table users;".getBytes(StandardCharsets.UTF_8));
+        final DockerRule rule = new DockerRule("postgres:alpine")
+                .fixture(Fixture.directory(directory), "/docker-entrypoint-initdb.d");
+        final String key = rule.reuseKey();
+        assertThat(rule.reuseKey(), equalTo(key));
+
+        Files.write(directory.resolve("01-schema.sql"), "create table orders;".getBytes(StandardCharsets.UTF_8));
+        assertThat(rule.reuseKey(), not(equalTo(key)));
+    }
+}
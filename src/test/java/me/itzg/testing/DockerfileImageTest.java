@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class DockerfileImageTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().logLines("ready");
+
+    @Test
+    public void testReferenceTracksContent() throws Exception {
+        final Path context = createContext();
+        final DockerfileImage dockerfileImage = new DockerfileImage(context);
+        final String original = dockerfileImage.reference();
+        assertThat(original, startsWith(DockerfileImage.DEFAULT_REPOSITORY + ":"));
+
+        final File script = context.resolve("scripts/init.sh").toFile();
+        script.setLastModified(script.lastModified() - 60000);
+        assertThat("modification time is ignored", dockerfileImage.reference(), equalTo(original));
+
+        Files.write(script.toPath(), "echo changed\n".getBytes(StandardCharsets.UTF_8));
+        final String changed = dockerfileImage.reference();
+        assertThat(changed, not(equalTo(original)));
+
+        Files.move(script.toPath(), context.resolve("scripts/other.sh"));
+        assertThat(dockerfileImage.reference(), not(equalTo(changed)));
+
+        assertThat(new DockerfileImage(context).dockerfile("Dockerfile.test").repository("custom").reference(),
+                startsWith("custom:"));
+    }
+
+    @Test
+    public void testBuildSkippedWhenContentUnchanged() throws Throwable {
+        final Path context = createContext();
+
+        evaluate(new DockerRule(new DockerfileImage(context)).uri(daemon.getUri()));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.BUILD), equalTo(1L));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(0L));
+
+        evaluate(new DockerRule(new DockerfileImage(context)).uri(daemon.getUri()));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.BUILD), equalTo(1L));
+
+        Files.write(context.resolve("scripts/init.sh"), "echo changed\n".getBytes(StandardCharsets.UTF_8));
+        evaluate(new DockerRule(new DockerfileImage(context)).uri(daemon.getUri()));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.BUILD), equalTo(2L));
+        assertThat(daemon.getContainerCount(), equalTo(0));
+    }
+
+    private Path createContext() throws Exception {
+        final Path context = temp.newFolder("context").toPath();
+        Files.write(context.resolve("Dockerfile"),
+                "FROM alpine\nCOPY scripts /scripts\n".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(context.resolve("scripts"));
+        Files.write(context.resolve("scripts/init.sh"), "echo ready\n".getBytes(StandardCharsets.UTF_8));
+        return context;
+    }
+
+    private static void evaluate(DockerRule rule) throws Throwable {
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+            }
+        }, Description.createTestDescription(DockerfileImageTest.class, "build")).evaluate();
+    }
+}
@@ -0,0 +1,1009 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process stand-in for the subset of the Docker Engine API used by {@link DockerRule}, listening
+ * on localhost. Each operation can be given a latency and containers emit a configurable log, which allows
+ * the rule's own overhead to be tested and benchmarked without a Docker daemon or network access.
+ *
+ * <pre>
+ *     &#64;Rule
+ *     public FakeDockerDaemon daemon = new FakeDockerDaemon().logLines("starting", "ready");
+ *
+ *     &#64;Test
+ *     public void someTest() throws Throwable {
+ *         DockerRule rule = new DockerRule("fake:latest").uri(daemon.getUri()).waitForLog("ready");
+ *         ...
+ * </pre>
+ */
+public class FakeDockerDaemon extends ExternalResource {
+    public enum Operation {
+        INFO, PULL, BUILD, INSPECT_IMAGE, LIST, CREATE, COPY, START, INSPECT, LOGS, EXEC, PAUSE, UNPAUSE, ARCHIVE, KILL, REMOVE, EVENTS, NETWORK, COMMIT
+    }
+
+    private static final Pattern API_VERSION = Pattern.compile("^/v[0-9.]+");
+    private static final Pattern CONTAINER_PATH = Pattern.compile("^/containers/([^/]+)(/[a-z]+)?$");
+    private static final Pattern EXEC_PATH = Pattern.compile("^/exec/([^/]+)/(start|json)$");
+    private static final Pattern IMAGE_PATH = Pattern.compile("^/images/(.+)/json$");
+    private static final Pattern NETWORK_PATH = Pattern.compile("^/networks/([^/]+)$");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Operation, Long> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> counts = new EnumMap<>(Operation.class);
+    private final ConcurrentMap<String, Container> containers = new ConcurrentHashMap<>();
+    private final List<BlockingQueue<Map<String, Object>>> eventSubscribers = new CopyOnWriteArrayList<>();
+    private final Set<String> builtImages = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Map<String, Object>> committedImages = new ConcurrentHashMap<>();
+    private final Set<String> missingImages = ConcurrentHashMap.newKeySet();
+    private final List<String> copiedFiles = new CopyOnWriteArrayList<>();
+    private final List<String> execCommands = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, List<String>> execs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> networks = new ConcurrentHashMap<>();
+    private final AtomicLong addresses = new AtomicLong();
+    private int execExitCode;
+    private volatile String execOutput;
+    private boolean eventsSupported = true;
+    private boolean healthcheck;
+    private List<String> logLines = Collections.emptyList();
+    private long logLineInterval;
+    private int[] exposedPorts = new int[0];
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private static class Container {
+        final String id;
+        final String image;
+        final Map<String, Object> config;
+        final String ipAddress;
+        final long created = System.currentTimeMillis() / 1000;
+        final CountDownLatch stopped = new CountDownLatch(1);
+        volatile boolean running;
+        volatile boolean paused;
+        volatile String health = "starting";
+        volatile String name;
+
+        Container(String id, String image, Map<String, Object> config, String name, String ipAddress) {
+            this.id = id;
+            this.image = image;
+            this.config = config;
+            this.name = name;
+            this.ipAddress = ipAddress;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> hostConfig() {
+            final Object hostConfig = config.get("HostConfig");
+            return hostConfig != null ? (Map<String, Object>) hostConfig : Collections.<String, Object>emptyMap();
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> labels() {
+            final Object labels = config.get("Labels");
+            return labels != null ? (Map<String, String>) labels : Collections.<String, String>emptyMap();
+        }
+    }
+
+    public FakeDockerDaemon() {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, 0L);
+            counts.put(operation, new AtomicLong());
+        }
+    }
+
+    /**
+     * @param operation the operation to delay
+     * @param millis how long to wait before responding
+     * @return this for chaining
+     */
+    public FakeDockerDaemon latency(Operation operation, long millis) {
+        latencies.put(operation, millis);
+        return this;
+    }
+
+    /**
+     * @param lines the lines every container writes to stdout once started
+     * @return this for chaining
+     */
+    public FakeDockerDaemon logLines(String... lines) {
+        this.logLines = Arrays.asList(lines);
+        return this;
+    }
+
+    /**
+     * @param images the images, including their tag, that are not present until pulled
+     * @return this for chaining
+     */
+    public FakeDockerDaemon missingImages(String... images) {
+        this.missingImages.addAll(Arrays.asList(images));
+        return this;
+    }
+
+    /**
+     * @param millis the delay before writing each log line
+     * @return this for chaining
+     */
+    public FakeDockerDaemon logLineInterval(long millis) {
+        this.logLineInterval = millis;
+        return this;
+    }
+
+    /**
+     * @param ports the TCP ports each container publishes, each mapped to host port 30000 + port
+     * @return this for chaining
+     */
+    public FakeDockerDaemon exposedPorts(int... ports) {
+        this.exposedPorts = ports;
+        return this;
+    }
+
+    /**
+     * @param eventsSupported false to respond to event subscriptions with an error, like an older daemon
+     * @return this for chaining
+     */
+    public FakeDockerDaemon eventsSupported(boolean eventsSupported) {
+        this.eventsSupported = eventsSupported;
+        return this;
+    }
+
+    /**
+     * @param healthcheck true to report that containers declare a HEALTHCHECK, whose status starts as
+     *                    <code>starting</code> and changes with {@link #reportHealth(String, String)}
+     * @return this for chaining
+     */
+    public FakeDockerDaemon healthcheck(boolean healthcheck) {
+        this.healthcheck = healthcheck;
+        return this;
+    }
+
+    /**
+     * @param exitCode the exit code of every command executed in a container
+     * @return this for chaining
+     */
+    public FakeDockerDaemon execExitCode(int exitCode) {
+        this.execExitCode = exitCode;
+        return this;
+    }
+
+    /**
+     * @param output the output of every command executed in a container, instead of echoing the command
+     * @return this for chaining
+     */
+    public FakeDockerDaemon execOutput(String output) {
+        this.execOutput = output;
+        return this;
+    }
+
+    /**
+     * @return the commands executed in containers, each joined by spaces, in the order received
+     */
+    public List<String> getExecCommands() {
+        return new ArrayList<>(execCommands);
+    }
+
+    /**
+     * @return the IDs of the containers created and not yet removed
+     */
+    public List<String> getContainerIds() {
+        return new ArrayList<>(containers.keySet());
+    }
+
+    /**
+     * @return the host configuration given when creating the container
+     */
+    public Map<String, Object> getHostConfig(String containerId) {
+        return containers.get(containerId).hostConfig();
+    }
+
+    /**
+     * @return the image the container was created from
+     */
+    public String getContainerImage(String containerId) {
+        return containers.get(containerId).image;
+    }
+
+    /**
+     * @return the configuration given when committing the image or null if it was not committed
+     */
+    public Map<String, Object> getCommittedConfig(String image) {
+        return committedImages.get(image);
+    }
+
+    /**
+     * @return the name of the container or null if created without one
+     */
+    public String getContainerName(String containerId) {
+        return containers.get(containerId).name;
+    }
+
+    /**
+     * @return the names of the networks created and not yet removed
+     */
+    public Set<String> getNetworks() {
+        return new HashSet<>(networks.keySet());
+    }
+
+    /**
+     * Publishes a <code>health_status</code> event for the container.
+     */
+    public void reportHealth(String containerId, String status) {
+        containers.get(containerId).health = status;
+        publish(containers.get(containerId), "health_status: " + status, Collections.emptyMap());
+    }
+
+    /**
+     * Stops the container and publishes the events Docker would.
+     * @param oomKilled true to also publish an <code>oom</code> event
+     */
+    public void exitContainer(String containerId, int exitCode, boolean oomKilled) {
+        final Container container = containers.get(containerId);
+        if (oomKilled) {
+            publish(container, "oom", Collections.emptyMap());
+        }
+        container.running = false;
+        publish(container, "die", Collections.singletonMap("exitCode", String.valueOf(exitCode)));
+    }
+
+    /**
+     * @return the container paths of the files copied into containers, in the order received, where a
+     *         file copied into a running container is prefixed with <code>running:</code> and into a paused
+     *         one with <code>paused:</code>
+     */
+    public List<String> getCopiedFiles() {
+        return new ArrayList<>(copiedFiles);
+    }
+
+    public String getUri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the number of times the operation has been requested
+     */
+    public long getCount(Operation operation) {
+        return counts.get(operation).get();
+    }
+
+    /**
+     * @return the number of containers created and not yet removed
+     */
+    public int getContainerCount() {
+        return containers.size();
+    }
+
+    public void start() throws IOException {
+        executor = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, "fake-docker-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 100);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public void stop() {
+        for (Container container : containers.values()) {
+            container.stopped.countDown();
+        }
+        for (BlockingQueue<Map<String, Object>> subscriber : eventSubscribers) {
+            subscriber.offer(Collections.emptyMap());
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        start();
+    }
+
+    @Override
+    protected void after() {
+        stop();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // pooled connections outliving a stopped daemon, or the streams it cut short, would otherwise
+        // fail requests whose bodies cannot be retried
+        exchange.getResponseHeaders().set("Connection", "close");
+        try {
+            route(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            sendJson(exchange, 500, Collections.singletonMap("message", String.valueOf(e)));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void route(HttpExchange exchange) throws IOException, InterruptedException {
+        final String method = exchange.getRequestMethod();
+        final String path = API_VERSION.matcher(exchange.getRequestURI().getPath()).replaceFirst("");
+
+        if (path.equals("/events")) {
+            respondToEvents(exchange);
+            return;
+        }
+        if (path.equals("/info")) {
+            respondToInfo(exchange);
+            return;
+        }
+        if (path.equals("/version")) {
+            respondToVersion(exchange);
+            return;
+        }
+        if (path.equals("/build") && method.equals("POST")) {
+            respondToBuild(exchange);
+            return;
+        }
+        if (path.equals("/commit") && method.equals("POST")) {
+            respondToCommit(exchange);
+            return;
+        }
+        if (path.equals("/images/create") && method.equals("POST")) {
+            respondToPull(exchange);
+            return;
+        }
+        final Matcher execMatcher = EXEC_PATH.matcher(path);
+        if (execMatcher.matches()) {
+            respondToExec(exchange, execMatcher.group(1), execMatcher.group(2));
+            return;
+        }
+        final Matcher imageMatcher = IMAGE_PATH.matcher(path);
+        if (imageMatcher.matches()) {
+            respondToInspectImage(exchange, imageMatcher.group(1));
+            return;
+        }
+        if (path.equals("/containers/json") && method.equals("GET")) {
+            respondToList(exchange);
+            return;
+        }
+        if (path.equals("/containers/create") && method.equals("POST")) {
+            respondToCreate(exchange);
+            return;
+        }
+        if (path.equals("/networks/create") && method.equals("POST")) {
+            respondToCreateNetwork(exchange);
+            return;
+        }
+        final Matcher networkMatcher = NETWORK_PATH.matcher(path);
+        if (networkMatcher.matches()) {
+            respondToNetwork(exchange, method, networkMatcher.group(1));
+            return;
+        }
+
+        final Matcher containerMatcher = CONTAINER_PATH.matcher(path);
+        if (containerMatcher.matches()) {
+            final Container container = containers.get(containerMatcher.group(1));
+            if (container == null) {
+                sendJson(exchange, 404, Collections.singletonMap("message", "No such container"));
+                return;
+            }
+            final String action = containerMatcher.group(2);
+            if (action == null && method.equals("DELETE")) {
+                delay(Operation.REMOVE);
+                containers.remove(container.id);
+                container.stopped.countDown();
+                sendEmpty(exchange, 204);
+                return;
+            } else if ("/start".equals(action)) {
+                delay(Operation.START);
+                container.running = true;
+                publish(container, "start", Collections.emptyMap());
+                sendEmpty(exchange, 204);
+                return;
+            } else if ("/kill".equals(action)) {
+                delay(Operation.KILL);
+                if (container.running) {
+                    container.running = false;
+                    publish(container, "die", Collections.singletonMap("exitCode", "137"));
+                }
+                container.stopped.countDown();
+                sendEmpty(exchange, 204);
+                return;
+            } else if ("/archive".equals(action) && method.equals("PUT")) {
+                respondToCopy(exchange, container);
+                return;
+            } else if ("/archive".equals(action)) {
+                respondToArchive(exchange);
+                return;
+            } else if ("/exec".equals(action)) {
+                delay(Operation.EXEC);
+                final List<String> command = (List<String>) objectMapper.readValue(
+                        exchange.getRequestBody(), Map.class).get("Cmd");
+                final String execId = UUID.randomUUID().toString().replace("-", "");
+                execs.put(execId, command);
+                execCommands.add(String.join(" ", command));
+                sendJson(exchange, 201, Collections.singletonMap("Id", execId));
+                return;
+            } else if ("/pause".equals(action) || "/unpause".equals(action)) {
+                delay(action.equals("/pause") ? Operation.PAUSE : Operation.UNPAUSE);
+                container.paused = action.equals("/pause");
+                sendEmpty(exchange, 204);
+                return;
+            } else if ("/rename".equals(action) && method.equals("POST")) {
+                container.name = URLDecoder.decode(
+                        exchange.getRequestURI().getRawQuery().replaceFirst(".*(^|&)name=([^&]*).*", "$2"), "UTF-8");
+                sendEmpty(exchange, 204);
+                return;
+            } else if ("/json".equals(action)) {
+                respondToInspect(exchange, container);
+                return;
+            } else if ("/logs".equals(action)) {
+                respondToLogs(exchange, container);
+                return;
+            }
+        }
+
+        sendJson(exchange, 404, Collections.singletonMap("message", "Unsupported " + method + " " + path));
+    }
+
+    private void respondToEvents(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.EVENTS);
+        if (!eventsSupported) {
+            sendJson(exchange, 404, Collections.singletonMap("message", "page not found"));
+            return;
+        }
+
+        final BlockingQueue<Map<String, Object>> events = new LinkedBlockingQueue<>();
+        eventSubscribers.add(events);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            final OutputStream out = exchange.getResponseBody();
+            out.flush();
+            while (true) {
+                final Map<String, Object> event = events.take();
+                if (event.isEmpty()) {
+                    return;
+                }
+                out.write(objectMapper.writeValueAsBytes(event));
+                out.write('\n');
+                out.flush();
+            }
+        } finally {
+            eventSubscribers.remove(events);
+        }
+    }
+
+    private void publish(Container container, String action, Map<String, String> attributes) {
+        final Map<String, String> actorAttributes = new HashMap<>(container.labels());
+        actorAttributes.putAll(attributes);
+        final Map<String, Object> actor = new LinkedHashMap<>();
+        actor.put("ID", container.id);
+        actor.put("Attributes", actorAttributes);
+
+        final long now = System.currentTimeMillis();
+        final Map<String, Object> event = new LinkedHashMap<>();
+        event.put("status", action);
+        event.put("id", container.id);
+        event.put("from", container.image);
+        event.put("Type", "container");
+        event.put("Action", action);
+        event.put("Actor", actor);
+        event.put("time", now / 1000);
+        event.put("timeNano", now * 1000000);
+        for (BlockingQueue<Map<String, Object>> subscriber : eventSubscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private void respondToInfo(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.INFO);
+        final Map<String, Object> info = new LinkedHashMap<>();
+        final Map<String, Object> registryConfig = new LinkedHashMap<>();
+        registryConfig.put("IndexConfigs", Collections.emptyMap());
+        registryConfig.put("InsecureRegistryCIDRs", Collections.emptyList());
+
+        info.put("ID", "FAKE");
+        info.put("Name", "fake-docker-daemon");
+        info.put("Containers", containers.size());
+        info.put("Images", 0);
+        info.put("Debug", false);
+        info.put("DockerRootDir", "/var/lib/docker");
+        info.put("Driver", "overlay2");
+        info.put("DriverStatus", Collections.emptyList());
+        info.put("IPv4Forwarding", true);
+        info.put("IndexServerAddress", "https://index.docker.io/v1/");
+        info.put("KernelVersion", System.getProperty("os.version"));
+        info.put("Labels", Collections.emptyList());
+        info.put("MemTotal", Runtime.getRuntime().maxMemory());
+        info.put("MemoryLimit", true);
+        info.put("NCPU", Runtime.getRuntime().availableProcessors());
+        info.put("NEventsListener", 0);
+        info.put("NFd", 0);
+        info.put("NGoroutines", 0);
+        info.put("OperatingSystem", "fake");
+        info.put("RegistryConfig", registryConfig);
+        info.put("ServerVersion", "1.12.0");
+        info.put("SwapLimit", true);
+        info.put("SystemTime", "2017-01-01T00:00:00Z");
+        sendJson(exchange, 200, info);
+    }
+
+    private void respondToPull(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.PULL);
+        String image = null;
+        String tag = null;
+        final String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                if (param.startsWith("fromImage=")) {
+                    image = URLDecoder.decode(param.substring(10), "UTF-8");
+                } else if (param.startsWith("tag=")) {
+                    tag = URLDecoder.decode(param.substring(4), "UTF-8");
+                }
+            }
+        }
+        if (image != null) {
+            missingImages.remove(tag != null && !image.contains(":") ? image + ":" + tag : image);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(objectMapper.writeValueAsBytes(Collections.singletonMap("status", "Pulling fs layer")));
+            out.write('\n');
+            out.write(objectMapper.writeValueAsBytes(Collections.singletonMap("status", "Status: Image is up to date")));
+            out.write('\n');
+        }
+    }
+
+    private void respondToVersion(HttpExchange exchange) throws IOException {
+        final Map<String, Object> version = new LinkedHashMap<>();
+        version.put("ApiVersion", "1.24");
+        version.put("Arch", "amd64");
+        version.put("BuildTime", "2017-01-01T00:00:00Z");
+        version.put("GitCommit", "fake");
+        version.put("GoVersion", "go1.7");
+        version.put("KernelVersion", System.getProperty("os.version"));
+        version.put("Os", "linux");
+        version.put("Version", "1.12.0");
+        sendJson(exchange, 200, version);
+    }
+
+    private void respondToBuild(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.BUILD);
+        String tag = null;
+        final String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                if (param.startsWith("t=")) {
+                    tag = URLDecoder.decode(param.substring(2), "UTF-8");
+                }
+            }
+        }
+        drain(exchange.getRequestBody());
+        builtImages.add(tag);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(objectMapper.writeValueAsBytes(Collections.singletonMap("stream", "Step 1/1 : FROM fake\n")));
+            out.write('\n');
+            out.write(objectMapper.writeValueAsBytes(Collections.singletonMap("stream", "Successfully built 0123456789ab\n")));
+            out.write('\n');
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondToCommit(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.COMMIT);
+        final Map<String, String> query = new HashMap<>();
+        final String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                final int eq = param.indexOf('=');
+                if (eq > 0) {
+                    query.put(param.substring(0, eq), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+                }
+            }
+        }
+        if (!containers.containsKey(query.get("container"))) {
+            sendJson(exchange, 404, Collections.singletonMap("message", "No such container: " + query.get("container")));
+            return;
+        }
+        final String image = query.get("repo") + ":" + query.get("tag");
+        committedImages.put(image, objectMapper.readValue(exchange.getRequestBody(), Map.class));
+        sendJson(exchange, 201, Collections.singletonMap("Id", "sha256:" +
+                UUID.nameUUIDFromBytes(image.getBytes(StandardCharsets.UTF_8)).toString().replace("-", "")));
+    }
+
+    private void respondToExec(HttpExchange exchange, String execId, String action) throws IOException {
+        final List<String> command = execs.get(execId);
+        if (command == null) {
+            sendJson(exchange, 404, Collections.singletonMap("message", "No such exec instance"));
+            return;
+        }
+        if (action.equals("start")) {
+            exchange.getResponseHeaders().set("Content-Type", "application/vnd.docker.raw-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                final String output = execOutput != null ? execOutput : "executed " + String.join(" ", command) + "\n";
+                final byte[] content = output.getBytes(StandardCharsets.UTF_8);
+                out.write(ByteBuffer.allocate(8).put((byte) 1).putInt(4, content.length).array());
+                out.write(content);
+            }
+            return;
+        }
+
+        final Map<String, Object> processConfig = new LinkedHashMap<>();
+        processConfig.put("privileged", false);
+        processConfig.put("tty", false);
+        processConfig.put("entrypoint", command.get(0));
+        processConfig.put("arguments", command.subList(1, command.size()));
+        final Map<String, Object> state = new LinkedHashMap<>();
+        state.put("ID", execId);
+        state.put("Running", false);
+        state.put("ExitCode", execExitCode);
+        state.put("ProcessConfig", processConfig);
+        state.put("OpenStdin", false);
+        state.put("OpenStdout", true);
+        state.put("OpenStderr", true);
+        sendJson(exchange, 200, state);
+    }
+
+    /**
+     * Responds with a tar of the requested directory, containing a single <code>state</code> file.
+     */
+    private void respondToArchive(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.ARCHIVE);
+        final String path = URLDecoder.decode(
+                exchange.getRequestURI().getRawQuery().replaceFirst(".*(^|&)path=([^&]*).*", "$2"), "UTF-8");
+        final String directory = path.replaceAll("/+$", "");
+        final String name = directory.substring(directory.lastIndexOf('/') + 1);
+        final byte[] content = "baseline".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-tar");
+        exchange.sendResponseHeaders(200, 0);
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(exchange.getResponseBody())) {
+            tar.putArchiveEntry(new TarArchiveEntry(name + "/"));
+            tar.closeArchiveEntry();
+            final TarArchiveEntry entry = new TarArchiveEntry(name + "/state");
+            entry.setSize(content.length);
+            tar.putArchiveEntry(entry);
+            tar.write(content);
+            tar.closeArchiveEntry();
+        }
+    }
+
+    private void respondToCopy(HttpExchange exchange, Container container) throws IOException, InterruptedException {
+        delay(Operation.COPY);
+        final String path = URLDecoder.decode(
+                exchange.getRequestURI().getRawQuery().replaceFirst(".*(^|&)path=([^&]*).*", "$2"), "UTF-8");
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(
+                new GzipCompressorInputStream(exchange.getRequestBody()))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                if (entry.isFile()) {
+                    copiedFiles.add((container.paused ? "paused:" : container.running ? "running:" : "") + path + "/" + entry.getName());
+                }
+            }
+        }
+        sendEmpty(exchange, 200);
+    }
+
+    private void respondToInspectImage(HttpExchange exchange, String image) throws IOException, InterruptedException {
+        delay(Operation.INSPECT_IMAGE);
+        if (image.startsWith(DockerfileImage.DEFAULT_REPOSITORY + ":") && !builtImages.contains(image)) {
+            sendJson(exchange, 404, Collections.singletonMap("message", "No such image: " + image));
+            return;
+        }
+        if (missingImages.contains(image)
+                || image.startsWith(WarmSnapshots.REPOSITORY + ":") && !committedImages.containsKey(image)) {
+            sendJson(exchange, 404, Collections.singletonMap("message", "No such image: " + image));
+            return;
+        }
+        final Map<String, Object> info = new LinkedHashMap<>();
+        info.put("Id", "sha256:" + UUID.nameUUIDFromBytes(image.getBytes(StandardCharsets.UTF_8)).toString().replace("-", ""));
+        info.put("Parent", "");
+        info.put("Comment", "");
+        info.put("Created", "2017-01-01T00:00:00Z");
+        info.put("Container", "");
+        info.put("ContainerConfig", Collections.emptyMap());
+        info.put("Author", "");
+        info.put("Config", Collections.emptyMap());
+        info.put("DockerVersion", "1.12.0");
+        info.put("Architecture", "amd64");
+        info.put("Os", "linux");
+        info.put("Size", 0);
+        info.put("VirtualSize", 0);
+        sendJson(exchange, 200, info);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondToList(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.LIST);
+        final Map<String, String> query = new HashMap<>();
+        final String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                final int eq = param.indexOf('=');
+                if (eq > 0) {
+                    query.put(param.substring(0, eq), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+                }
+            }
+        }
+        final boolean all = "1".equals(query.get("all")) || "true".equals(query.get("all"));
+        final List<String> labelFilters = query.containsKey("filters") ?
+                (List<String>) objectMapper.readValue(query.get("filters"), Map.class).get("label") : null;
+
+        final List<Map<String, Object>> result = new ArrayList<>();
+        for (Container container : containers.values()) {
+            if (!all && !container.running) {
+                continue;
+            }
+            final Map<String, String> labels = container.labels();
+            if (labelFilters != null && !matchesLabels(labels, labelFilters)) {
+                continue;
+            }
+            final Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("Id", container.id);
+            summary.put("Names", Collections.singletonList("/fake_" + container.id.substring(0, 12)));
+            summary.put("Image", container.image);
+            summary.put("Command", "/bin/sh");
+            summary.put("Created", container.created);
+            summary.put("State", container.running ? "running" : "created");
+            summary.put("Status", container.running ? "Up" : "Created");
+            summary.put("Ports", Collections.emptyList());
+            summary.put("Labels", labels);
+            result.add(summary);
+        }
+        sendJson(exchange, 200, result);
+    }
+
+    private static boolean matchesLabels(Map<String, String> labels, List<String> filters) {
+        for (String filter : filters) {
+            final int eq = filter.indexOf('=');
+            final String name = eq < 0 ? filter : filter.substring(0, eq);
+            if (!labels.containsKey(name) || (eq >= 0 && !filter.substring(eq + 1).equals(labels.get(name)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondToCreate(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.CREATE);
+        final Map<String, Object> config = objectMapper.readValue(exchange.getRequestBody(), Map.class);
+        final String rawQuery = exchange.getRequestURI().getRawQuery();
+        final String name = rawQuery != null && rawQuery.matches("(.*&)?name=.*") ?
+                URLDecoder.decode(rawQuery.replaceFirst(".*(^|&)name=([^&]*).*", "$2"), "UTF-8") : null;
+        for (Container existing : containers.values()) {
+            if (name != null && name.equals(existing.name)) {
+                sendJson(exchange, 409, Collections.singletonMap("message", "Conflict. The name is already in use"));
+                return;
+            }
+        }
+        final String id = UUID.randomUUID().toString().replace("-", "") + UUID.randomUUID().toString().replace("-", "");
+        containers.put(id, new Container(id, String.valueOf(config.get("Image")), config, name,
+                "172.18.0." + (2 + addresses.getAndIncrement() % 250)));
+        sendJson(exchange, 201, Collections.singletonMap("Id", id));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondToCreateNetwork(HttpExchange exchange) throws IOException, InterruptedException {
+        delay(Operation.NETWORK);
+        final String name = String.valueOf(objectMapper.readValue(exchange.getRequestBody(), Map.class).get("Name"));
+        final String id = UUID.randomUUID().toString().replace("-", "");
+        if (networks.putIfAbsent(name, id) != null) {
+            sendJson(exchange, 409, Collections.singletonMap("message", "network with name " + name + " already exists"));
+            return;
+        }
+        final Map<String, Object> creation = new LinkedHashMap<>();
+        creation.put("Id", id);
+        creation.put("Warning", "");
+        sendJson(exchange, 201, creation);
+    }
+
+    private void respondToNetwork(HttpExchange exchange, String method, String nameOrId)
+            throws IOException, InterruptedException {
+        delay(Operation.NETWORK);
+        String name = null;
+        for (Map.Entry<String, String> entry : networks.entrySet()) {
+            if (entry.getKey().equals(nameOrId) || entry.getValue().equals(nameOrId)) {
+                name = entry.getKey();
+            }
+        }
+        if (name == null) {
+            sendJson(exchange, 404, Collections.singletonMap("message", "network " + nameOrId + " not found"));
+            return;
+        }
+        if (method.equals("DELETE")) {
+            networks.remove(name);
+            sendEmpty(exchange, 204);
+            return;
+        }
+
+        final Map<String, Object> ipam = new LinkedHashMap<>();
+        ipam.put("Driver", "default");
+        ipam.put("Config", Collections.emptyList());
+        final Map<String, Object> network = new LinkedHashMap<>();
+        network.put("Name", name);
+        network.put("Id", networks.get(name));
+        network.put("Scope", "local");
+        network.put("Driver", "bridge");
+        network.put("IPAM", ipam);
+        network.put("Containers", Collections.emptyMap());
+        network.put("Options", Collections.emptyMap());
+        sendJson(exchange, 200, network);
+    }
+
+    private void respondToInspect(HttpExchange exchange, Container container) throws IOException, InterruptedException {
+        delay(Operation.INSPECT);
+        final boolean publishAllPorts = Boolean.TRUE.equals(container.hostConfig().get("PublishAllPorts"));
+        final Map<String, Object> ports = new HashMap<>();
+        final Map<String, Object> exposed = new HashMap<>();
+        for (int port : exposedPorts) {
+            final Map<String, String> binding = new LinkedHashMap<>();
+            binding.put("HostIp", "0.0.0.0");
+            binding.put("HostPort", String.valueOf(30000 + port));
+            ports.put(port + "/tcp", publishAllPorts ? Collections.singletonList(binding) : null);
+            exposed.put(port + "/tcp", Collections.emptyMap());
+        }
+        final Object networkMode = container.hostConfig().get("NetworkMode");
+        final String networkName = networkMode != null && !networkMode.equals("default") ?
+                String.valueOf(networkMode) : "bridge";
+        final Map<String, Object> attached = new LinkedHashMap<>();
+        attached.put("NetworkID", networks.getOrDefault(networkName, "bridge"));
+        attached.put("EndpointID", "");
+        attached.put("Gateway", networkName.equals("bridge") ? "172.17.0.1" : "172.18.0.1");
+        attached.put("IPAddress", networkName.equals("bridge") ? "172.17.0.2" : container.ipAddress);
+        attached.put("IPPrefixLen", 16);
+        attached.put("IPv6Gateway", "");
+        attached.put("GlobalIPv6Address", "");
+        attached.put("GlobalIPv6PrefixLen", 0);
+        attached.put("MacAddress", "02:42:ac:11:00:02");
+        final Map<String, Object> networkSettings = new LinkedHashMap<>();
+        networkSettings.put("IPAddress", networkName.equals("bridge") ? "172.17.0.2" : "");
+        networkSettings.put("Ports", ports);
+        networkSettings.put("Networks", Collections.singletonMap(networkName, attached));
+
+        final Map<String, Object> config = new LinkedHashMap<>(container.config);
+        config.put("ExposedPorts", exposed);
+
+        final Map<String, Object> state = new LinkedHashMap<>();
+        state.put("Status", container.running ? "running" : "created");
+        state.put("Running", container.running);
+        state.put("Paused", false);
+        state.put("Restarting", false);
+        state.put("Pid", container.running ? 1 : 0);
+        state.put("ExitCode", 0);
+        state.put("StartedAt", "2017-01-01T00:00:00Z");
+        state.put("FinishedAt", "0001-01-01T00:00:00Z");
+        state.put("Error", "");
+        state.put("OOMKilled", false);
+        if (healthcheck) {
+            final Map<String, Object> health = new LinkedHashMap<>();
+            health.put("Status", container.health);
+            health.put("FailingStreak", 0);
+            health.put("Log", Collections.emptyList());
+            state.put("Health", health);
+        }
+
+        final Map<String, Object> info = new LinkedHashMap<>();
+        info.put("Id", container.id);
+        info.put("Created", "2017-01-01T00:00:00Z");
+        info.put("Path", "/bin/sh");
+        info.put("Args", Collections.emptyList());
+        info.put("Config", config);
+        info.put("State", state);
+        info.put("Image", container.image);
+        info.put("NetworkSettings", networkSettings);
+        info.put("Name", "/" + (container.name != null ? container.name : "fake_" + container.id.substring(0, 12)));
+        info.put("ResolvConfPath", "/etc/resolv.conf");
+        info.put("HostnamePath", "/etc/hostname");
+        info.put("HostsPath", "/etc/hosts");
+        info.put("LogPath", "");
+        info.put("Driver", "overlay2");
+        info.put("ProcessLabel", "");
+        info.put("MountLabel", "");
+        info.put("AppArmorProfile", "");
+        info.put("RestartCount", 0);
+        sendJson(exchange, 200, info);
+    }
+
+    private void respondToLogs(HttpExchange exchange, Container container) throws IOException, InterruptedException {
+        delay(Operation.LOGS);
+        final boolean follow = String.valueOf(exchange.getRequestURI().getQuery()).matches(".*follow=(1|true).*");
+
+        exchange.getResponseHeaders().set("Content-Type", "application/vnd.docker.raw-stream");
+        exchange.sendResponseHeaders(200, 0);
+        final OutputStream out = exchange.getResponseBody();
+        for (String line : logLines) {
+            if (logLineInterval > 0) {
+                Thread.sleep(logLineInterval);
+            }
+            final byte[] content = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            // multiplexed frame: stream type, three zero bytes, big-endian length
+            out.write(ByteBuffer.allocate(8).put((byte) 1).putInt(4, content.length).array());
+            out.write(content);
+            out.flush();
+        }
+        if (follow) {
+            container.stopped.await(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private void delay(Operation operation) throws InterruptedException {
+        counts.get(operation).incrementAndGet();
+        final long millis = latencies.get(operation);
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        final byte[] content = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, content.length);
+        exchange.getResponseBody().write(content);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        final byte[] buffer = new byte[8192];
+        while (in.read(buffer) >= 0) {
+            // discard
+        }
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FixtureTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().logLines("ready");
+
+    @Test
+    public void testArchiveIsExtractedOnce() throws Exception {
+        final Path archive = temp.getRoot().toPath().resolve("seed.tar.gz");
+        writeArchive(archive, "data/users.sql", "init.sh");
+
+        final Fixture fixture = Fixture.archive(archive);
+        final Path directory = fixture.directory();
+        assertTrue(Files.isRegularFile(directory.resolve("data/users.sql")));
+        assertTrue(Files.isExecutable(directory.resolve("init.sh")));
+        assertThat(fixture.directory(), sameInstance(directory));
+    }
+
+    @Test
+    public void testArchiveEntriesMustStayInside() throws Exception {
+        final Path archive = temp.getRoot().toPath().resolve("evil.tar.gz");
+        writeArchive(archive, "../outside.sql");
+
+        try {
+            Fixture.archive(archive).directory();
+            fail("expected the entry to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), equalTo("Entry ../outside.sql is outside of the fixture"));
+        }
+    }
+
+    @Test
+    public void testClasspathResources() throws Exception {
+        final Path file = Fixture.classpath("me/itzg/testing/FixtureTest.class").directory();
+        assertTrue(Files.isRegularFile(file.resolve("FixtureTest.class")));
+
+        final Path inJar = Fixture.classpath("/org/junit/rules").directory();
+        assertTrue(Files.isRegularFile(inJar.resolve("TemporaryFolder.class")));
+    }
+
+    @Test
+    public void testCopiedBeforeStart() throws Throwable {
+        final Path directory = temp.newFolder("initdb").toPath();
+        Files.write(directory.resolve("01-schema.sql"), "create table users;".getBytes(StandardCharsets.UTF_8));
+        final Path archive = temp.getRoot().toPath().resolve("seed.tgz");
+        writeArchive(archive, "02-users.sql");
+
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .fixture(Fixture.directory(directory), "/docker-entrypoint-initdb.d")
+                .fixture(Fixture.archive(archive), "/docker-entrypoint-initdb.d")
+                .waitForLog("ready");
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+            }
+        }, Description.createTestDescription(FixtureTest.class, "testCopiedBeforeStart")).evaluate();
+
+        assertThat(daemon.getCopiedFiles(), hasItems(
+                "/docker-entrypoint-initdb.d/01-schema.sql", "/docker-entrypoint-initdb.d/02-users.sql"));
+        assertThat(daemon.getCopiedFiles().size(), equalTo(2));
+    }
+
+    private static void writeArchive(Path archive, String... names) throws IOException {
+        try (OutputStream out = Files.newOutputStream(archive);
+             TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(out))) {
+            for (String name : names) {
+                final byte[] content = ("-- " + name).getBytes(StandardCharsets.UTF_8);
+                final TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setSize(content.length);
+                entry.setMode(name.endsWith(".sh") ? 0100755 : 0100644);
+                tar.putArchiveEntry(entry);
+                tar.write(content);
+                tar.closeArchiveEntry();
+            }
+        }
+    }
+}
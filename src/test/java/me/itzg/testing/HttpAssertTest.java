@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpAssertTest {
+
+    private HttpServer server;
+    private final AtomicInteger warmingRequests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/warming", exchange -> {
+            // unavailable for the first two requests
+            exchange.sendResponseHeaders(warmingRequests.incrementAndGet() > 2 ? 200 : 503, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    @Test
+    public void testWaitForEndpoint() throws Exception {
+        HttpAssert.waitForEndpoint(url("/ok"), 100, 3, 200);
+    }
+
+    @Test
+    public void testWaitForEndpointByHostName() throws Exception {
+        HttpAssert.waitForEndpoint(new URL("http", "localhost", server.getAddress().getPort(), "/ok"), 100, 3, 200);
+    }
+
+    @Test
+    public void testWaitForAllEndpoints() throws Exception {
+        final List<EndpointStatus> statuses = HttpAssert.waitForAllEndpoints(
+                new EndpointWaitOptions().initialBackoff(10).timeout(5000),
+                url("/ok"), url("/warming"))
+                .get(10, TimeUnit.SECONDS);
+
+        assertThat(statuses.size(), equalTo(2));
+        assertTrue(statuses.get(0).isReady());
+        assertThat(statuses.get(0).getAttempts(), equalTo(1));
+        assertTrue(statuses.get(1).isReady());
+        assertThat(statuses.get(1).getAttempts(), equalTo(3));
+        assertThat(statuses.get(1).getLastResponseCode(), equalTo(200));
+    }
+
+    @Test
+    public void testWaitForAnyEndpoint() throws Exception {
+        final URL unreachable = new URL("http", "127.0.0.1", unusedPort(), "/");
+
+        final EndpointStatus status = HttpAssert.waitForAnyEndpoint(
+                new EndpointWaitOptions().timeout(5000),
+                unreachable, url("/ok"))
+                .get(10, TimeUnit.SECONDS);
+
+        assertThat(status.getUrl(), equalTo(url("/ok")));
+        assertTrue(status.isReady());
+    }
+
+    @Test
+    public void testNotReadyWithinTimeout() throws Exception {
+        final URL unreachable = new URL("http", "127.0.0.1", unusedPort(), "/");
+
+        try {
+            HttpAssert.waitForAllEndpoints(
+                    new EndpointWaitOptions().initialBackoff(10).maxBackoff(50).timeout(300),
+                    url("/ok"), unreachable)
+                    .get(10, TimeUnit.SECONDS);
+            fail("Expected endpoints to not be ready");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(EndpointNotReadyException.class));
+            final List<EndpointStatus> statuses = ((EndpointNotReadyException) e.getCause()).getStatuses();
+            assertTrue(statuses.get(0).isReady());
+            assertFalse(statuses.get(1).isReady());
+            assertTrue(statuses.get(1).getAttempts() > 1);
+        }
+    }
+
+    private URL url(String path) throws Exception {
+        return new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+    }
+
+    private static int unusedPort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
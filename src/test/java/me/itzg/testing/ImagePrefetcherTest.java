@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class ImagePrefetcherTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().logLines("ready");
+
+    private static String daemonUri;
+
+    public static class Fixture {
+        @ClassRule
+        public static DockerRule classRule = new DockerRule("alpine:3.5");
+
+        public static DockerRule notARule = new DockerRule("ignored:latest");
+
+        @Rule
+        public DockerRuleGroup group = new DockerRuleGroup()
+                .add("db", new DockerRule("postgres:9.6"))
+                .add("cache", new DockerRule("redis:3"), "db");
+    }
+
+    public static class AgainstFakeDaemon {
+        @Rule
+        public DockerRule rule = new DockerRule("prefetched:latest").uri(daemonUri);
+    }
+
+    public static class NoDefaultConstructor {
+        @Rule
+        public DockerRule rule = new DockerRule("alpine:3.5");
+
+        public NoDefaultConstructor(String ignored) {
+        }
+    }
+
+    @Test
+    public void testFindsClassAndInstanceRules() throws Exception {
+        final List<String> images = new ArrayList<>();
+        for (DockerRule rule : ImagePrefetcher.findRules(Fixture.class)) {
+            images.add(rule.getImage());
+        }
+
+        assertEquals(3, images.size());
+        assertThat(images, hasItems("alpine:3.5", "postgres:9.6", "redis:3"));
+    }
+
+    @Test
+    public void testAlwaysPolicySkipsPrefetchedImage() throws Throwable {
+        daemonUri = daemon.getUri();
+        new ImagePrefetcher().prefetch(Collections.singletonList(AgainstFakeDaemon.class));
+        assertEquals(1, daemon.getCount(FakeDockerDaemon.Operation.PULL));
+        // prefetching only pulls, without checking the daemon or reaping its containers
+        assertEquals(0, daemon.getCount(FakeDockerDaemon.Operation.INFO));
+        assertEquals(0, daemon.getCount(FakeDockerDaemon.Operation.LIST));
+
+        new DockerRule("prefetched:latest")
+                .uri(daemon.getUri())
+                .waitForLog("ready")
+                .apply(new Statement() {
+                    @Override
+                    public void evaluate() {
+                    }
+                }, Description.createTestDescription(ImagePrefetcherTest.class, "prefetched")).evaluate();
+        assertEquals(1, daemon.getCount(FakeDockerDaemon.Operation.PULL));
+    }
+
+    @Test
+    public void testSkipsInstanceRulesWithoutDefaultConstructor() throws Exception {
+        assertEquals(0, ImagePrefetcher.findRules(NoDefaultConstructor.class).size());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.itzg.testing;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ImagePullerTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().missingImages("fake-missing:1");
+
+    @Rule
+    public TestName testName = new TestName();
+
+    private DockerClient dockerClient;
+    private String daemonKey;
+
+    @Before
+    public void setUp() throws Exception {
+        dockerClient = DockerClientFactory.obtain(DockerEndpoint.of(daemon.getUri(), null));
+        // presence is cached for the life of the JVM, so keep each test on its own daemon key
+        daemonKey = daemon.getUri() + "#" + testName.getMethodName();
+    }
+
+    @Test
+    public void testNeverFailsWhenMissing() throws Exception {
+        try {
+            ImagePuller.ensureImage(dockerClient, daemonKey, "fake-missing:1", PullPolicy.NEVER);
+            fail("expected the missing image to fail");
+        } catch (ImageNotFoundException e) {
+            // expected
+        }
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.INSPECT_IMAGE), equalTo(1L));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(0L));
+    }
+
+    @Test
+    public void testNeverUsesPresentImage() throws Exception {
+        ImagePuller.ensureImage(dockerClient, daemonKey, "fake:latest", PullPolicy.NEVER);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.INSPECT_IMAGE), equalTo(1L));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(0L));
+    }
+
+    @Test
+    public void testIfNotPresentPullsOnce() throws Exception {
+        ImagePuller.ensureImage(dockerClient, daemonKey, "fake-missing:1", PullPolicy.IF_NOT_PRESENT);
+        ImagePuller.ensureImage(dockerClient, daemonKey, "fake-missing:1", PullPolicy.IF_NOT_PRESENT);
+        ImagePuller.ensureImage(dockerClient, daemonKey, "fake-missing:1", PullPolicy.NEVER);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.INSPECT_IMAGE), equalTo(1L));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(1L));
+    }
+
+    @Test
+    public void testIfNotPresentSkipsPresentImage() throws Exception {
+        ImagePuller.ensureImage(dockerClient, daemonKey, "fake:latest", PullPolicy.IF_NOT_PRESENT);
+        ImagePuller.ensureImage(dockerClient, daemonKey, "fake:latest", PullPolicy.IF_NOT_PRESENT);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.INSPECT_IMAGE), equalTo(1L));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(0L));
+    }
+
+    @Test
+    public void testAlwaysPullsEachTime() throws Exception {
+        ImagePuller.ensureImage(dockerClient, daemonKey, "fake:latest", PullPolicy.ALWAYS);
+        ImagePuller.ensureImage(dockerClient, daemonKey, "fake:latest", PullPolicy.ALWAYS);
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.INSPECT_IMAGE), equalTo(0L));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(2L));
+    }
+
+    @Test
+    public void testConcurrentPullsShareOne() throws Exception {
+        daemon.latency(FakeDockerDaemon.Operation.PULL, 500);
+        final int threads = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit((Callable<Void>) () -> {
+                    barrier.await();
+                    ImagePuller.ensureImage(dockerClient, daemonKey, "fake:latest", PullPolicy.ALWAYS);
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.PULL), equalTo(1L));
+    }
+}
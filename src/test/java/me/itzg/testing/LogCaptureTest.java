@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LogCaptureTest {
+
+    private static final byte STDOUT = 1;
+    private static final byte STDERR = 2;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testLinesSpanningMessages() throws Exception {
+        final LogCapture capture = new LogCapture(1024);
+        write(capture, STDOUT, "first li");
+        write(capture, STDOUT, "ne\r\nsecond line\nthi");
+        write(capture, STDERR, "oops\n");
+        capture.close();
+
+        assertThat(capture.tail(10), equalTo(Arrays.asList("first line", "second line", "oops", "thi")));
+        assertThat(capture.tail(2), equalTo(Arrays.asList("oops", "thi")));
+    }
+
+    @Test
+    public void testDiscardsOldestWhenFull() throws Exception {
+        // each line uses 13 bytes of header plus 6 of content
+        final LogCapture capture = new LogCapture(19 * 3 + 5);
+        for (int i = 0; i < 10; ++i) {
+            write(capture, STDOUT, "line-" + i + "\n");
+        }
+
+        assertThat(capture.tail(10), equalTo(Arrays.asList("line-7", "line-8", "line-9")));
+        assertThat(capture.getDiscardedLines(), equalTo(7L));
+    }
+
+    @Test
+    public void testGrep() throws Exception {
+        final LogCapture capture = new LogCapture(1024);
+        write(capture, STDOUT, "GET /a 200\nGET /b 500\nGET /c 503\n");
+
+        assertThat(capture.grep(Pattern.compile(" 5\\d\\d$"), 0),
+                equalTo(Arrays.asList("GET /b 500", "GET /c 503")));
+        assertThat(capture.grep(Pattern.compile("GET"), Long.MAX_VALUE), equalTo(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void testAwaitAfterPosition() throws Exception {
+        final LogCapture capture = new LogCapture(1024);
+        write(capture, STDOUT, "ready\n");
+        final long mark = capture.position();
+
+        assertFalse(capture.await(LogCondition.contains("ready"), mark, 10));
+
+        new Thread(() -> write(capture, STDOUT, "reloaded and ready\n")).start();
+        assertTrue(capture.await(LogCondition.contains("reloaded"), mark, 5000));
+    }
+
+    @Test
+    public void testAwaitEndsWhenClosed() throws Exception {
+        final LogCapture capture = new LogCapture(1024);
+        capture.close();
+
+        final long started = System.currentTimeMillis();
+        assertFalse(capture.await(LogCondition.contains("ready"), 0, 5000));
+        assertTrue(System.currentTimeMillis() - started < 5000);
+    }
+
+    @Test
+    public void testDump() throws Exception {
+        final LogCapture capture = new LogCapture(1024);
+        write(capture, STDOUT, "hello\n");
+        write(capture, STDERR, "failed\n");
+
+        final Path file = temp.getRoot().toPath().resolve("logs/container.log");
+        capture.dump(file);
+
+        final List<String> lines = Files.readAllLines(file);
+        assertThat(lines.size(), equalTo(2));
+        assertThat(lines.get(0), containsString(" stdout: hello"));
+        assertThat(lines.get(1), containsString(" stderr: failed"));
+    }
+
+    private static void write(LogCapture capture, byte stream, String content) {
+        capture.write(stream, ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
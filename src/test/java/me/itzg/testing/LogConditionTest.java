@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogConditionTest {
+
+    @Test
+    public void testSnippetSplitAcrossFrames() throws Exception {
+        final LogMatcher matcher = LogCondition.contains("started").newMatcher();
+
+        assertFalse(matcher.feed(frame("[node-1] sta")));
+        assertTrue(matcher.feed(frame("rted\n")));
+    }
+
+    @Test
+    public void testFeedLeavesFramePositionAlone() throws Exception {
+        final LogMatcher matcher = LogCondition.contains("started").newMatcher();
+        final ByteBuffer frame = frame("started");
+
+        matcher.feed(frame);
+
+        assertEquals(0, frame.position());
+    }
+
+    @Test
+    public void testAllOf() throws Exception {
+        final LogMatcher matcher = LogCondition.allOf("database ready", "listening").newMatcher();
+
+        assertFalse(matcher.feed(frame("listening on 5432\n")));
+        assertFalse(matcher.feed(frame("listening on ::1\n")));
+        assertTrue(matcher.feed(frame("database ready\n")));
+    }
+
+    @Test
+    public void testAnyOf() throws Exception {
+        final LogMatcher matcher = LogCondition.anyOf("started", "recovered").newMatcher();
+
+        assertFalse(matcher.feed(frame("starting\n")));
+        assertTrue(matcher.feed(frame("recovered\n")));
+    }
+
+    @Test
+    public void testOverlappingSnippets() throws Exception {
+        final LogMatcher matcher = LogCondition.allOf("she", "he", "hers").newMatcher();
+
+        assertFalse(matcher.feed(frame("ushe")));
+        assertTrue(matcher.feed(frame("rs")));
+    }
+
+    @Test
+    public void testTimes() throws Exception {
+        final LogMatcher matcher = LogCondition.contains("started").times(2).newMatcher();
+
+        assertFalse(matcher.feed(frame("[node-1] started\n")));
+        assertFalse(matcher.feed(frame("[node-2] starting\n")));
+        assertTrue(matcher.feed(frame("[node-2] started\n")));
+    }
+
+    @Test
+    public void testAllOfTimesRequiresEach() throws Exception {
+        final LogMatcher matcher = LogCondition.allOf("a1", "b2").times(2).newMatcher();
+
+        assertFalse(matcher.feed(frame("a1 a1 a1 b2")));
+        assertTrue(matcher.feed(frame(" b2")));
+    }
+
+    @Test
+    public void testMultiByteSnippet() throws Exception {
+        final byte[] bytes = "d\u00e9marr\u00e9\n".getBytes(StandardCharsets.UTF_8);
+        final LogMatcher matcher = LogCondition.contains("d\u00e9marr\u00e9").newMatcher();
+
+        // split in the middle of the two-byte e-acute
+        assertFalse(matcher.feed(ByteBuffer.wrap(bytes, 0, 2)));
+        assertTrue(matcher.feed(ByteBuffer.wrap(bytes, 2, bytes.length - 2)));
+    }
+
+    @Test
+    public void testRegexAcrossFrames() throws Exception {
+        final LogMatcher matcher = LogCondition.matches("started in \\d+ms").newMatcher();
+
+        assertFalse(matcher.feed(frame("server started in 12")));
+        assertFalse(matcher.feed(frame("34ms")));
+        assertTrue(matcher.feed(frame("\r\n")));
+    }
+
+    @Test
+    public void testRegexTimes() throws Exception {
+        final LogMatcher matcher = LogCondition.matches("node-\\d started").times(2).newMatcher();
+
+        assertFalse(matcher.feed(frame("node-1 started\nnode-2 starting\n")));
+        assertTrue(matcher.feed(frame("node-2 started\n")));
+    }
+
+    @Test
+    public void testRegexLongLine() throws Exception {
+        final LogMatcher matcher = LogCondition.matches("ready$").newMatcher();
+        final StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longLine.append("0123456789");
+        }
+
+        assertFalse(matcher.feed(frame(longLine.toString())));
+        assertTrue(matcher.feed(frame(" ready\n")));
+    }
+
+    @Test
+    public void testRegexFinalLineWithoutNewline() throws Exception {
+        final LogMatcher matcher = LogCondition.matches("ready$").newMatcher();
+
+        assertFalse(matcher.feed(frame("starting\nready")));
+        assertTrue(matcher.finish());
+    }
+
+    @Test
+    public void testFinishWithoutPendingLine() throws Exception {
+        final LogMatcher matcher = LogCondition.matches("ready").newMatcher();
+
+        assertFalse(matcher.feed(frame("starting\n")));
+        assertFalse(matcher.finish());
+    }
+
+    @Test
+    public void testRegexDescriptionIncludesFlags() throws Exception {
+        assertEquals("matches(ready)", LogCondition.matches("ready").toString());
+        assertEquals("matches(ready, CASE_INSENSITIVE|MULTILINE).times(2)", LogCondition.matches(
+                Pattern.compile("ready", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE)).times(2).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySnippetRejected() throws Exception {
+        LogCondition.contains("");
+    }
+
+    private static ByteBuffer frame(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
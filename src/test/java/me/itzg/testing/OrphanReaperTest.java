@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.ContainerConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class OrphanReaperTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon();
+
+    private DockerClient dockerClient;
+
+    @Before
+    public void setUp() throws Exception {
+        dockerClient = DefaultDockerClient.builder().uri(daemon.getUri()).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dockerClient.close();
+    }
+
+    @Test
+    public void testRemovesOnlyStaleContainersOfExitedSessions() throws Exception {
+        final long old = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+        final String exited = exitedSession();
+        final String orphan = create(labels(exited, old));
+        create(labels(exited, System.currentTimeMillis()));
+        create(labels(ContainerLabels.SESSION_ID, old));
+        create(labels("unknown-" + UUID.randomUUID(), old));
+        create(new HashMap<>());
+
+        final String running = "running-" + UUID.randomUUID();
+        final Path runningFile = SessionLocks.lockFile(running);
+        Files.createDirectories(runningFile.getParent());
+        try (FileLocks.Lock ignored = FileLocks.lock(runningFile, StandardOpenOption.CREATE)) {
+            create(labels(running, old));
+
+            assertThat(OrphanReaper.reap(dockerClient, TimeUnit.HOURS.toMillis(1), 2), equalTo(1));
+        } finally {
+            Files.deleteIfExists(runningFile);
+        }
+
+        assertThat(daemon.getContainerCount(), equalTo(5));
+        assertThat(dockerClient.listContainers(DockerClient.ListContainersParam.allContainers()).stream()
+                .noneMatch(container -> container.id().equals(orphan)), equalTo(true));
+        // kept, since the exited session still has a container
+        assertThat(Files.exists(SessionLocks.lockFile(exited)), equalTo(true));
+        Files.deleteIfExists(SessionLocks.lockFile(exited));
+    }
+
+    @Test
+    public void testForgetsSessionOnceItsContainersAreRemoved() throws Exception {
+        final String exited = exitedSession();
+        create(labels(exited, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+        assertThat(OrphanReaper.reap(dockerClient, TimeUnit.HOURS.toMillis(1), 2), equalTo(1));
+        assertThat(Files.exists(SessionLocks.lockFile(exited)), equalTo(false));
+    }
+
+    @Test
+    public void testKeepsSharedContainerWhileReferenced() throws Exception {
+        System.setProperty(CrossJvmContainers.SESSION_PROPERTY, "build-" + UUID.randomUUID());
+        try {
+            final String key = UUID.randomUUID().toString();
+            final Map<String, String> labels = labels(exitedSession(),
+                    System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+            labels.putAll(CrossJvmContainers.labelsFor(key));
+            final CrossJvmContainers.Lease lease = CrossJvmContainers.acquire(key, dockerClient, () -> create(labels));
+
+            assertThat(OrphanReaper.reap(dockerClient, TimeUnit.HOURS.toMillis(1), 2), equalTo(0));
+
+            CrossJvmContainers.release(lease, dockerClient, true);
+            assertThat(daemon.getContainerCount(), equalTo(1));
+            assertThat(OrphanReaper.reap(dockerClient, TimeUnit.HOURS.toMillis(1), 2), equalTo(1));
+            assertThat(daemon.getContainerCount(), equalTo(0));
+        } finally {
+            System.clearProperty(CrossJvmContainers.SESSION_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testCheckingKeepsOwnSession() throws Exception {
+        SessionLocks.holdCurrent();
+
+        // the reaper checking this JVM's own session must not open, and so release, its file
+        assertThat(SessionLocks.hasExited(ContainerLabels.SESSION_ID), equalTo(false));
+        assertThat(CrossJvmContainersTest.probe(Collections.singletonList(
+                SessionLocks.lockFile(ContainerLabels.SESSION_ID).toString())),
+                equalTo(Collections.singletonList("held")));
+    }
+
+    /**
+     * @return a session whose file exists and is not locked, as left by a JVM that exited
+     */
+    private static String exitedSession() throws Exception {
+        final String session = "exited-" + UUID.randomUUID();
+        final Path file = SessionLocks.lockFile(session);
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+        return session;
+    }
+
+    private static Map<String, String> labels(String session, long created) {
+        final Map<String, String> labels = new HashMap<>();
+        labels.put(ContainerLabels.LIBRARY, "true");
+        labels.put(ContainerLabels.SESSION, session);
+        labels.put(ContainerLabels.CREATED, String.valueOf(created));
+        return labels;
+    }
+
+    private String create(Map<String, String> labels) throws Exception {
+        return dockerClient.createContainer(ContainerConfig.builder()
+                .image("fake:latest")
+                .labels(labels)
+                .build()).id();
+    }
+}
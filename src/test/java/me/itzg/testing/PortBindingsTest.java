@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.docker.client.messages.PortBinding;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PortBindingsTest {
+
+    @Test
+    public void testResolvesTcpAndUdp() throws Exception {
+        final Map<String, List<PortBinding>> ports = ImmutableMap.of(
+                "9300/tcp", Collections.singletonList(PortBinding.of("0.0.0.0", 32770)),
+                "80/tcp", Collections.singletonList(PortBinding.of("0.0.0.0", 32768)),
+                "53/udp", Collections.singletonList(PortBinding.of("0.0.0.0", 32769)),
+                "9200/tcp", Collections.singletonList(PortBinding.of("0.0.0.0", 32771))
+        );
+
+        final PortBindings bindings = PortBindings.from("127.0.0.1", ports);
+
+        assertThat(bindings.tcp(80), equalTo(new InetSocketAddress("127.0.0.1", 32768)));
+        assertThat(bindings.tcp(9200).getPort(), equalTo(32771));
+        assertThat(bindings.tcp(9300).getPort(), equalTo(32770));
+        assertThat(bindings.udp(53).getPort(), equalTo(32769));
+        assertThat(bindings.tcp(53), nullValue());
+        assertThat(bindings.udp(80), nullValue());
+    }
+
+    @Test
+    public void testUnpublishedPortsAreAbsent() throws Exception {
+        final Map<String, List<PortBinding>> ports = Collections.singletonMap("8080/tcp", null);
+
+        final PortBindings bindings = PortBindings.from("127.0.0.1", ports);
+
+        assertThat(bindings.tcp(8080), nullValue());
+        assertThat(PortBindings.from("127.0.0.1", null).tcp(8080), nullValue());
+    }
+
+    @Test
+    public void testDirectUsesContainerPorts() throws Exception {
+        final PortBindings bindings = PortBindings.direct("172.18.0.2", ImmutableSet.of("9200/tcp", "80/tcp", "53/udp"));
+
+        assertThat(bindings.tcp(80), equalTo(new InetSocketAddress("172.18.0.2", 80)));
+        assertThat(bindings.tcp(9200), equalTo(new InetSocketAddress("172.18.0.2", 9200)));
+        assertThat(bindings.udp(53), equalTo(new InetSocketAddress("172.18.0.2", 53)));
+        assertThat(bindings.tcp(53), nullValue());
+        assertThat(PortBindings.direct("172.18.0.2", null).tcp(80), nullValue());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ReadinessProbesTest {
+
+    @Test
+    public void testAllOfRunsConcurrently() throws Exception {
+        final ReadinessContext context = new ReadinessContext(null, "test", PortBindings.EMPTY);
+        final ReadinessProbe probe = ReadinessProbes.allOf(
+                new SleepingProbe("first", 400, true),
+                new SleepingProbe("second", 400, true),
+                new SleepingProbe("third", 400, true));
+
+        final long start = System.nanoTime();
+        assertTrue(context.run(probe, deadlineIn(5000)));
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("took " + elapsed + " ms", elapsed < 1000);
+    }
+
+    @Test
+    public void testAnyOfCompletesWithFirstReady() throws Exception {
+        final ReadinessContext context = new ReadinessContext(null, "test", PortBindings.EMPTY);
+        final ReadinessProbe probe = ReadinessProbes.anyOf(
+                new SleepingProbe("slow", 10000, true),
+                new SleepingProbe("fast", 50, true));
+
+        final long start = System.nanoTime();
+        assertTrue(context.run(probe, deadlineIn(5000)));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    @Test
+    public void testTimeoutReportsEachProbe() throws Exception {
+        final ReadinessContext context = new ReadinessContext(null, "test", PortBindings.EMPTY);
+        final ReadinessProbe probe = ReadinessProbes.allOf(
+                new SleepingProbe("quick", 10, true),
+                new SleepingProbe("stuck", 10000, true));
+
+        assertFalse(context.run(probe, deadlineIn(300)));
+
+        final String report = context.report();
+        assertThat(report, containsString("quick: ready after"));
+        assertThat(report, containsString("stuck: "));
+        assertThat(report, containsString("allOf[quick, stuck]: timed out after"));
+    }
+
+    @Test
+    public void testAllOfFailsWhenAnyFails() throws Exception {
+        final ReadinessContext context = new ReadinessContext(null, "test", PortBindings.EMPTY);
+        final ReadinessProbe probe = ReadinessProbes.allOf(
+                new SleepingProbe("never", 10, false),
+                new SleepingProbe("stuck", 10000, true));
+
+        final long start = System.nanoTime();
+        assertFalse(context.run(probe, deadlineIn(5000)));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    private static long deadlineIn(long millis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static class SleepingProbe implements ReadinessProbe {
+        private final String name;
+        private final long sleep;
+        private final boolean result;
+
+        SleepingProbe(String name, long sleep, boolean result) {
+            this.name = name;
+            this.sleep = sleep;
+            this.result = result;
+        }
+
+        @Override
+        public boolean await(ReadinessContext context, long deadlineNanos) throws Exception {
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (sleep > remaining) {
+                Thread.sleep(Math.max(0, remaining));
+                return false;
+            }
+            Thread.sleep(sleep);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.spotify.docker.client.messages.HostConfig;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ResourceProfileTest {
+
+    @Test
+    public void testAppliesToHostConfig() throws Exception {
+        final HostConfig.Builder builder = HostConfig.builder();
+        new ResourceProfile()
+                .tmpfs("/var/lib/postgresql/data")
+                .tmpfs("/tmp", "rw,size=64m")
+                .memory(512L * 1024 * 1024)
+                .cpus(1.5)
+                .ulimit("nofile", 65536, 65536)
+                .shmSize(256L * 1024 * 1024)
+                .applyTo(builder);
+
+        final HostConfig hostConfig = builder.build();
+        assertThat(hostConfig.tmpfs().get("/var/lib/postgresql/data"), equalTo(""));
+        assertThat(hostConfig.tmpfs().get("/tmp"), equalTo("rw,size=64m"));
+        assertThat(hostConfig.memory(), equalTo(512L * 1024 * 1024));
+        assertThat(hostConfig.cpuPeriod(), equalTo(100000L));
+        assertThat(hostConfig.cpuQuota(), equalTo(150000L));
+        assertThat(hostConfig.ulimits().get(0).name(), equalTo("nofile"));
+        assertThat(hostConfig.shmSize(), equalTo(256L * 1024 * 1024));
+        assertThat(hostConfig.cpuShares(), nullValue());
+    }
+
+    @Test
+    public void testAdmissionCostDefaultsToLimits() throws Exception {
+        final ResourceProfile limited = new ResourceProfile().memory(512L * 1024 * 1024).cpus(1.5);
+        assertThat(limited.admissionMemory(), equalTo(512L * 1024 * 1024));
+        assertThat(limited.admissionCpus(), equalTo(1.5));
+
+        limited.expectedMemory(256L * 1024 * 1024).expectedCpus(0.5);
+        assertThat(limited.admissionMemory(), equalTo(256L * 1024 * 1024));
+        assertThat(limited.admissionCpus(), equalTo(0.5));
+
+        assertThat(new ResourceProfile().admissionMemory(), equalTo(0L));
+        assertThat(new ResourceProfile().admissionCpus(), equalTo(0.0));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.itzg.testing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimingReportTest {
+
+    @Test
+    public void testPercentile() throws Exception {
+        final long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(5, TimingReport.percentile(values, 50));
+        assertEquals(10, TimingReport.percentile(values, 95));
+        assertEquals(1, TimingReport.percentile(new long[]{1}, 95));
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        final TimingReport report = createReport();
+
+        final StringWriter writer = new StringWriter();
+        report.writeCsv(writer);
+
+        final String[] lines = writer.toString().split("\\R");
+        assertEquals(3, lines.length);
+        assertEquals("image,phase,count,failures,p50_ms,p95_ms,max_ms", lines[0]);
+        assertEquals("alpine:3.5,PULL,1,0,250.000,250.000,250.000", lines[1]);
+        assertEquals("alpine:3.5,START,3,1,20.000,30.000,30.000", lines[2]);
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        final TimingReport report = createReport();
+
+        final StringWriter writer = new StringWriter();
+        report.writeJson(writer);
+
+        final JsonNode phases = new ObjectMapper().readTree(writer.toString()).get("phases");
+        assertEquals(2, phases.size());
+        assertEquals("START", phases.get(1).get("phase").asText());
+        assertEquals(3, phases.get(1).get("count").asInt());
+        assertEquals(30.0, phases.get(1).get("maxMillis").asDouble(), 0.0);
+    }
+
+    private static TimingReport createReport() {
+        final TimingReport report = new TimingReport();
+        report.phaseCompleted(event(LifecyclePhase.START, 30, true));
+        report.phaseCompleted(event(LifecyclePhase.START, 10, false));
+        report.phaseCompleted(event(LifecyclePhase.PULL, 250, true));
+        report.phaseCompleted(event(LifecyclePhase.START, 20, true));
+        return report;
+    }
+
+    private static LifecycleEvent event(LifecyclePhase phase, long millis, boolean successful) {
+        return new LifecycleEvent(phase, "alpine:3.5", "abc123", "SomeTest",
+                TimeUnit.MILLISECONDS.toNanos(millis), successful);
+    }
+}
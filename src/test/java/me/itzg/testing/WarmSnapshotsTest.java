@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 by Geoff Bourne <itzgeoff@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.itzg.testing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+
+public class WarmSnapshotsTest {
+
+    @Rule
+    public FakeDockerDaemon daemon = new FakeDockerDaemon().logLines("ready");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testCommitsOnceAndReuses() throws Throwable {
+        final AtomicInteger initialized = new AtomicInteger();
+
+        final String first = run("1", initialized);
+        assertThat(first, equalTo("fake:latest"));
+        assertThat(initialized.get(), equalTo(1));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.COMMIT), equalTo(1L));
+
+        final String second = run("1", initialized);
+        assertThat(second, startsWith(WarmSnapshots.REPOSITORY + ":"));
+        assertThat(initialized.get(), equalTo(1));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.COMMIT), equalTo(1L));
+    }
+
+    @Test
+    public void testInitVersionInvalidatesSnapshot() throws Throwable {
+        final AtomicInteger initialized = new AtomicInteger();
+        run("1", initialized);
+        final String reused = run("1", initialized);
+
+        final String changed = run("2", initialized);
+        assertThat(changed, equalTo("fake:latest"));
+        assertThat(initialized.get(), equalTo(2));
+        assertThat(daemon.getCount(FakeDockerDaemon.Operation.COMMIT), equalTo(2L));
+
+        assertThat(run("2", initialized), not(equalTo(reused)));
+        assertThat(initialized.get(), equalTo(2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSnapshotExcludesRuleLabels() throws Throwable {
+        run("1", new AtomicInteger());
+        final String snapshot = run("1", new AtomicInteger());
+
+        final Map<String, Object> config = daemon.getCommittedConfig(snapshot);
+        assertNotNull(config);
+        final Map<String, String> labels = (Map<String, String>) config.get("Labels");
+        if (labels != null) {
+            for (String label : labels.keySet()) {
+                assertFalse(label, label.startsWith(ContainerLabels.PREFIX));
+            }
+        }
+    }
+
+    @Test
+    public void testFixtureContentInvalidatesSnapshot() throws Throwable {
+        final Path directory = temp.newFolder("seed").toPath();
+        Files.write(directory.resolve("data.sql"), "insert 1;".getBytes(StandardCharsets.UTF_8));
+        final Fixture fixture = Fixture.directory(directory);
+        final AtomicInteger initialized = new AtomicInteger();
+        run("1", initialized, fixture);
+        final String reused = run("1", initialized, fixture);
+        assertThat(reused, startsWith(WarmSnapshots.REPOSITORY + ":"));
+
+        Files.write(directory.resolve("data.sql"), "insert 2;".getBytes(StandardCharsets.UTF_8));
+        assertThat(run("1", initialized, fixture), equalTo("fake:latest"));
+        assertThat(initialized.get(), equalTo(2));
+        assertThat(run("1", initialized, fixture), not(equalTo(reused)));
+    }
+
+    @Test
+    public void testTagCoversFixturesAndResources() throws Exception {
+        final String[] env = {"A=1"};
+        final String[] cmd = {"run"};
+        final String tag = WarmSnapshots.tagFor("sha256:abc", env, cmd, new String[0], null, "1");
+
+        assertThat(WarmSnapshots.tagFor("sha256:abc", env, cmd, new String[0], null, "1"), equalTo(tag));
+        assertThat(WarmSnapshots.tagFor("sha256:abc", env, cmd, new String[]{"/seed -> /data"}, null, "1"),
+                not(equalTo(tag)));
+        assertThat(WarmSnapshots.tagFor("sha256:abc", env, cmd, new String[0],
+                new ResourceProfile().memory(256 * 1024 * 1024).toString(), "1"),
+                not(equalTo(tag)));
+    }
+
+    /**
+     * @return the image the container was created from
+     */
+    private String run(String initVersion, AtomicInteger initialized) throws Throwable {
+        return run(initVersion, initialized, null);
+    }
+
+    /**
+     * @param fixture a fixture copied to <code>/seed</code> or null for none
+     * @return the image the container was created from
+     */
+    private String run(String initVersion, AtomicInteger initialized, Fixture fixture) throws Throwable {
+        final String[] image = new String[1];
+        final DockerRule rule = new DockerRule("fake:latest")
+                .uri(daemon.getUri())
+                .waitForLog("ready")
+                .initializeWith(r -> initialized.incrementAndGet())
+                .warmSnapshot(initVersion);
+        if (fixture != null) {
+            rule.fixture(fixture, "/seed");
+        }
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+                image[0] = daemon.getContainerImage(rule.getContainerId());
+            }
+        }, Description.createTestDescription(WarmSnapshotsTest.class, "run")).evaluate();
+        return image[0];
+    }
+}